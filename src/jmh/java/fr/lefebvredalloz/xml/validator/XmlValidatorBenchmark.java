@@ -0,0 +1,120 @@
+package eu.els.sie.xml.validation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of the validation for every grammar type, on the sample documents
+ * and on synthetic large documents made of the sample pages repeated.
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec}, the GC profiler reports the allocation rate.
+ * JMH options can be given with {@code -Djmh.args="..."}, for instance {@code -Djmh.args="-p grammar=RNG -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlValidatorBenchmark {
+
+	private static final String GRAMMARS = "cp:/xml-multi-models-sample/main/grammars/";
+	private static final String TEST_DOCUMENTS = "sample/models/test/";
+
+	public enum Grammar {
+		XSD("xsd/book/book.xsd", "xsd/book-valid-xsd.xml"),
+		DTD("dtd/book/book.dtd", "dtd/book-valid-dtd.xml"),
+		RNG("rng/book/book.rng", "rng/book-valid-rng.xml"),
+		RNC("rnc/simple-book.rnc", "rnc/simple-book-valid-rnc.xml"),
+		SCHEMATRON_1_5("sch/book-sch1.5.sch", "sch/book-invalid-sch.xml"),
+		ISO_SCHEMATRON("sch/book-no-xslt.sch", "sch/book-valid-sch.xml"),
+		NVDL("nvdl/book-and-schematron.nvdl", "nvdl/book-valid-nvdl.xml");
+
+		private final String schemaUri;
+		private final String documentPath;
+
+		Grammar(String schemaPath, String documentPath) {
+			this.schemaUri = GRAMMARS + schemaPath;
+			this.documentPath = TEST_DOCUMENTS + documentPath;
+		}
+	}
+
+	@Param
+	public Grammar grammar;
+
+	/**
+	 * Number of times the pages of the sample document are repeated, 1 for the sample document itself
+	 */
+	@Param({"1", "10000"})
+	public int pages;
+
+	private XmlValidator validator;
+	private byte[] xml;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, XmlValidationException {
+		validator = XmlValidator.forSchema(grammar.schemaUri).build();
+		xml = repeatPages(readResource(grammar.documentPath), pages);
+	}
+
+	/**
+	 * Validation with a validator built once
+	 */
+	@Benchmark
+	public void validateWithReusableValidator(Blackhole blackhole) {
+		try {
+			blackhole.consume(validator.validate(xml));
+		} catch (XmlValidationException e) {
+			blackhole.consume(e);
+		}
+	}
+
+	/**
+	 * Validation with the static method, the validator is built for each document
+	 */
+	@Benchmark
+	public void validateWithStaticMethod(Blackhole blackhole) {
+		try {
+			blackhole.consume(XmlValidator.validate(xml, grammar.schemaUri, null));
+		} catch (XmlValidationException e) {
+			blackhole.consume(e);
+		}
+	}
+
+	private static String readResource(String resourcePath) throws IOException {
+		try (InputStream in = XmlValidatorBenchmark.class.getClassLoader().getResourceAsStream(resourcePath)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Build a large document by repeating the pages of a sample document
+	 */
+	static byte[] repeatPages(String document, int times) {
+		int pagesStart = document.indexOf("<page");
+		int pagesEnd = document.lastIndexOf("</page>") + "</page>".length();
+		StringBuilder xml = new StringBuilder(document.length() + (pagesEnd - pagesStart) * (times - 1));
+		xml.append(document, 0, pagesStart);
+		for (int i = 0; i < times; i++) {
+			xml.append(document, pagesStart, pagesEnd);
+		}
+		xml.append(document, pagesEnd, document.length());
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,305 @@
+package eu.els.sie.xml.validation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.lang.String.format;
+
+/**
+ * Validation of many documents in parallel.
+ * Each document is validated by its own {@link XmlValidator}, the validators (and so the compiled schemas)
+ * are shared by all the workers. The results are streamed in completion order : the documents are only submitted
+ * when the number of documents in flight (being validated or waiting to be consumed) is below the configured limit,
+ * so a slow consumer slows down the validation instead of accumulating results in memory.
+ * <pre>
+ * XmlValidator validator = XmlValidator.forSchema("cp:/path/to/model.rng").build();
+ * BatchValidator.builder().maxInFlight(64).build()
+ *         .validate(files, validator)
+ *         .filter(result -&gt; !result.isValid())
+ *         .forEach(...);
+ * </pre>
+ */
+public class BatchValidator {
+
+	private final Executor executor;
+	private final int maxInFlight;
+
+	private BatchValidator(Executor executor, int maxInFlight) {
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Validate files against the same schema
+	 * @param files paths of the XML documents, the path is used as document identifier
+	 * @param validator validator shared by all the documents
+	 * @return the results in completion order
+	 */
+	public Stream<Result> validate(Collection<Path> files, XmlValidator validator) {
+		return validate(files.stream().map(file -> Document.of(file, validator)).iterator());
+	}
+
+	/**
+	 * Validate documents, each against its own validator
+	 * @param documents documents to validate, consumed lazily by the thread reading the results
+	 * @return the results in completion order
+	 */
+	public Stream<Result> validate(Iterator<Document> documents) {
+		ResultIterator results = new ResultIterator(documents);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.NONNULL), false);
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	private Result validate(Document document) {
+		try {
+			return new Result(document, document.content.validate(document.validator), null);
+		} catch (XmlValidationException e) {
+			return new Result(document, null, e);
+		} catch (RuntimeException e) {
+			return failure(document, e);
+		}
+	}
+
+	private static Result failure(Document document, Throwable e) {
+		return new Result(document, null, new XmlValidationException(format("Unexpected error while validating %s: %s", document.id, e)));
+	}
+
+	/**
+	 * Submit the documents while the in flight limit allows it, and hand out the results as they complete
+	 */
+	private class ResultIterator implements Iterator<Result> {
+		private final Iterator<Document> documents;
+		private final BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+
+		// documents submitted whose result has not been consumed yet
+		private int inFlight;
+
+		ResultIterator(Iterator<Document> documents) {
+			this.documents = documents;
+		}
+
+		private void submit() {
+			while (inFlight < maxInFlight && documents.hasNext()) {
+				Document document = documents.next();
+				inFlight++;
+				try {
+					executor.execute(() -> run(document));
+				} catch (RejectedExecutionException e) {
+					inFlight--;
+					throw e;
+				}
+			}
+		}
+
+		/**
+		 * Validate a document on a worker, a result is always added to the completed ones so that the consumer waiting for it
+		 * is never blocked, even when the validation fails with an error
+		 */
+		private void run(Document document) {
+			Result result = null;
+			try {
+				result = validate(document);
+			} catch (Throwable e) {
+				result = failure(document, e);
+				throw e;
+			} finally {
+				completed.add(result != null ? result : new Result(document, null,
+						new XmlValidationException(format("Unexpected error while validating %s", document.id))));
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			submit();
+			return inFlight > 0;
+		}
+
+		@Override
+		public Result next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			try {
+				Result result = completed.take();
+				inFlight--;
+				submit();
+				return result;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for validation results", e);
+			}
+		}
+	}
+
+	/**
+	 * Content of a document, read by the worker validating it
+	 */
+	@FunctionalInterface
+	public interface Content {
+		ValidationResult validate(XmlValidator validator) throws XmlValidationException;
+	}
+
+	/**
+	 * Source of a document content as a stream, opened by the worker validating it
+	 */
+	@FunctionalInterface
+	public interface InputStreamSupplier {
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * A document to validate, with the validator to use
+	 */
+	public static class Document {
+		private final String id;
+		private final XmlValidator validator;
+		private final Content content;
+
+		private Document(String id, XmlValidator validator, Content content) {
+			this.id = Objects.requireNonNull(id, "id");
+			this.validator = Objects.requireNonNull(validator, "validator");
+			this.content = content;
+		}
+
+		public static Document of(Path file, XmlValidator validator) {
+			return new Document(file.toString(), validator, v -> v.check(file));
+		}
+
+		public static Document of(String id, byte[] xml, XmlValidator validator) {
+			return new Document(id, validator, v -> v.check(xml));
+		}
+
+		/**
+		 * @param xml supplier of the document stream, the stream is closed once the document is validated
+		 */
+		public static Document of(String id, InputStreamSupplier xml, XmlValidator validator) {
+			return new Document(id, validator, v -> {
+				try (InputStream inputStream = xml.open()) {
+					return v.check(inputStream);
+				} catch (IOException e) {
+					throw new XmlValidationException(format("Error while reading input stream: %s", e));
+				}
+			});
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public XmlValidator getValidator() {
+			return validator;
+		}
+	}
+
+	/**
+	 * Result of the validation of one document
+	 */
+	public static class Result {
+		private final String id;
+		private final String schemaUri;
+		private final ValidationResult validationResult;
+		private final XmlValidationException failure;
+
+		private Result(Document document, ValidationResult validationResult, XmlValidationException failure) {
+			this.id = document.id;
+			this.schemaUri = document.validator.getSchemaUri();
+			this.validationResult = validationResult;
+			this.failure = failure;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getSchemaUri() {
+			return schemaUri;
+		}
+
+		public boolean isValid() {
+			return validationResult != null && validationResult.isValid();
+		}
+
+		/**
+		 * @return the result of the validation, null if the document could not be validated
+		 * @see #getFailure()
+		 */
+		public ValidationResult getValidationResult() {
+			return validationResult;
+		}
+
+		/**
+		 * @return the error which prevented the validation (I/O, unexpected error), null if the document was validated
+		 */
+		public XmlValidationException getFailure() {
+			return failure;
+		}
+
+		/**
+		 * @return the validation error, either the failure or the invalid result as an exception, null if the document is valid
+		 */
+		public XmlValidationException getException() {
+			return failure != null ? failure : validationResult.toException();
+		}
+	}
+
+	/**
+	 * Configuration of a {@link BatchValidator}
+	 */
+	public static class Builder {
+		private Executor executor = ForkJoinPool.commonPool();
+		private int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+
+		private Builder() {
+		}
+
+		/**
+		 * @param executor executor running the validations, the common fork-join pool if not set.
+		 * On recent JDKs a virtual thread per task executor can be used.
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = Objects.requireNonNull(executor, "executor");
+			return this;
+		}
+
+		/**
+		 * @param maxInFlight maximum number of documents being validated or waiting for their result to be consumed,
+		 * twice the number of processors if not set
+		 */
+		public Builder maxInFlight(int maxInFlight) {
+			if (maxInFlight < 1) {
+				throw new IllegalArgumentException("At least one document must be in flight");
+			}
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		public BatchValidator build() {
+			return new BatchValidator(executor, maxInFlight);
+		}
+	}
+}
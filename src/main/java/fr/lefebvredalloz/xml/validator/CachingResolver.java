@@ -0,0 +1,125 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.resolver.BasicResolver;
+import com.thaiopensource.resolver.Identifier;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.Resolver;
+import com.thaiopensource.resolver.ResolverException;
+import com.thaiopensource.resolver.xml.ExternalIdentifier;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * jing resolver memoizing the URIs resolved by the catalogs and reading the resources through a {@link ResourceCache}.
+ * One instance is shared by all the validators using the same catalog list (see {@link XmlValidator#createPropertyMap}),
+ * so the catalogs are parsed once and each identifier is only looked up in the catalogs the first time it is met.
+ */
+class CachingResolver implements Resolver {
+
+	static final int MAX_RESOLVED_URIS = 4096;
+
+	// catalog resolver, null to resolve the identifiers against their base only
+	private final Resolver catalogResolver;
+
+	private final ResourceCache resourceCache;
+
+	// access-ordered map of the resolved URIs, the document base URIs make the identifiers unbounded
+	private final Map<ResolutionKey, String> resolvedUris = new LinkedHashMap<>(64, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ResolutionKey, String> eldest) {
+			return size() > MAX_RESOLVED_URIS;
+		}
+	};
+
+	CachingResolver(Resolver catalogResolver, ResourceCache resourceCache) {
+		this.catalogResolver = catalogResolver;
+		this.resourceCache = resourceCache;
+	}
+
+	@Override
+	public void resolve(Identifier id, Input input) throws IOException, ResolverException {
+		if (input.isResolved()) {
+			return;
+		}
+		ResolutionKey key = new ResolutionKey(id);
+		String uri;
+		synchronized (resolvedUris) {
+			uri = resolvedUris.get(key);
+		}
+		if (uri == null) {
+			if (catalogResolver != null) {
+				catalogResolver.resolve(id, input);
+				if (input.isOpen()) {
+					// the catalog resolver provided the content itself, nothing to memoize
+					return;
+				}
+			}
+			uri = input.isResolved() ? input.getUri() : BasicResolver.resolveUri(id);
+			synchronized (resolvedUris) {
+				resolvedUris.put(key, uri);
+			}
+		}
+		// the parsers may read the resolved resource themselves, without opening it through this resolver
+		ResourceCache.record(uri);
+		input.setUri(uri);
+	}
+
+	@Override
+	public void open(Input input) throws IOException, ResolverException {
+		if (!input.isUriDefinitive() || !isAbsolute(input.getUri())) {
+			// already open, or a relative URI reported by the next resolver
+			return;
+		}
+		input.setByteStream(resourceCache.open(input.getUri()));
+	}
+
+	private static boolean isAbsolute(String uri) {
+		try {
+			return new URI(uri).isAbsolute();
+		} catch (URISyntaxException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Identity of a resolution : the catalogs resolve an identifier from its kind, URI reference, base and public id
+	 */
+	private static final class ResolutionKey {
+		private final Class<?> identifierType;
+		private final String uriReference;
+		private final String base;
+		private final String publicId;
+
+		ResolutionKey(Identifier id) {
+			this.identifierType = id.getClass();
+			this.uriReference = id.getUriReference();
+			this.base = id.getBase();
+			this.publicId = id instanceof ExternalIdentifier ? ((ExternalIdentifier) id).getPublicId() : null;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof ResolutionKey)) {
+				return false;
+			}
+			ResolutionKey other = (ResolutionKey) o;
+			return identifierType.equals(other.identifierType)
+					&& Objects.equals(uriReference, other.uriReference)
+					&& Objects.equals(base, other.base)
+					&& Objects.equals(publicId, other.publicId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(identifierType, uriReference, base, publicId);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.resolver.Identifier;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.Resolver;
+import com.thaiopensource.resolver.ResolverException;
+import com.thaiopensource.resolver.xml.ExternalEntityIdentifier;
+import org.apache.xerces.dom.DOMInputImpl;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+import javax.xml.XMLConstants;
+import java.io.IOException;
+
+/**
+ * Resolution of the resources read by JAXP validation (schema includes and imports, DTD and entities of the documents)
+ * with the jing catalog resolver, so that the XSD validated with JAXP use the same catalogs and resource cache
+ * as the other grammars
+ */
+class CatalogResourceResolver implements LSResourceResolver {
+
+	private final Resolver resolver;
+
+	CatalogResourceResolver(Resolver resolver) {
+		this.resolver = resolver;
+	}
+
+	@Override
+	public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+		if (systemId == null) {
+			// import without schema location, nothing to resolve
+			return null;
+		}
+		// schema documents are resolved as URIs, DTD and entities as external entities (whose name is not known here)
+		Identifier identifier = XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(type)
+				? new Identifier(systemId, baseURI)
+				: new ExternalEntityIdentifier(systemId, baseURI, publicId, null);
+		Input input = new Input();
+		try {
+			resolver.resolve(identifier, input);
+			if (input.isResolved() && !input.isOpen()) {
+				resolver.open(input);
+			}
+		} catch (IOException | ResolverException e) {
+			// default resolution of the resource, the parser reports the error if it cannot be read
+			return null;
+		}
+		if (!input.isResolved()) {
+			return null;
+		}
+		LSInput lsInput = new DOMInputImpl(publicId, input.getUri(), baseURI);
+		lsInput.setByteStream(input.getByteStream());
+		lsInput.setCharacterStream(input.getCharacterStream());
+		lsInput.setEncoding(input.getEncoding());
+		return lsInput;
+	}
+}
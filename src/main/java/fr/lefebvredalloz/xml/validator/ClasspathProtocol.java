@@ -0,0 +1,24 @@
+package eu.els.sie.xml.validation;
+
+/**
+ * Declare handler for classpath protocol ({@code cp:/path/to/model.rng}, see {@link eu.els.sie.xml.validation.cp.Handler}).
+ * Classpath protocol is needed to resolve schema import within a schema included as maven dependency,
+ * every entry point reading a schema calls {@link #register()} before its first {@code cp:} URI.
+ */
+final class ClasspathProtocol {
+
+	static {
+		System.setProperty("java.protocol.handler.pkgs", "eu.els.sie.xml.validation");
+	}
+
+	private ClasspathProtocol() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Declare the handler, only once : the declaration is done when this class is initialized
+	 */
+	static void register() {
+		// nothing more to do, see the static initializer
+	}
+}
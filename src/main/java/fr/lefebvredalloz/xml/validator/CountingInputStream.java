@@ -0,0 +1,53 @@
+package eu.els.sie.xml.validation;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream counting the bytes read, to record the size of the streamed documents in the {@link ValidationMetrics}.
+ * Only used by a single parse, the count is not synchronized.
+ */
+class CountingInputStream extends FilterInputStream {
+
+	private long count;
+
+	CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			count++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			count += n;
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		// a reset would count the same bytes twice
+		return false;
+	}
+}
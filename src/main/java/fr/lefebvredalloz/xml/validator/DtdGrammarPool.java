@@ -0,0 +1,222 @@
+package eu.els.sie.xml.validation;
+
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLEntityDecl;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.parsers.XMLGrammarPreparser;
+import org.apache.xerces.util.EntityResolver2Wrapper;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.SynchronizedSymbolTable;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.EntityResolver2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.String.format;
+
+/**
+ * Pool of compiled DTD grammars (the DTD and every entity or module it includes) shared by the Xerces parsers.
+ * Once a DTD has been read by a validation, or {@link #preload(String) preloaded}, the next validations reuse the
+ * compiled grammar instead of reading and parsing the DTD again.
+ * A DTD declaring general entities is not pooled : Xerces does not declare the entities of a reused grammar,
+ * such a DTD is read again by every validation.
+ * <p>
+ * A pool is shared by every validation using the same forced doctype and catalogs (see {@link #forDoctype(String, List)}),
+ * the grammars are then identified by the system identifier of the DTD. The Xerces pool and symbol table are synchronized,
+ * a pool can be used by several threads.
+ */
+public class DtdGrammarPool {
+
+	private static final String VALIDATION = "http://xml.org/sax/features/validation";
+	private static final String NAMESPACES = "http://xml.org/sax/features/namespaces";
+
+	private static final Map<PoolKey, DtdGrammarPool> POOLS = new ConcurrentHashMap<>();
+
+	private final SymbolTable symbolTable = new SynchronizedSymbolTable();
+	private final XMLGrammarPoolImpl grammarPool = new EntityFreeGrammarPool();
+
+	// catalog resolution of the entities, null if there is no catalog
+	private final EntityResolver2 entityResolver;
+
+	// validating parsers using this pool, shared by the engines with the same forced doctype and catalogs
+	private XMLReaderPool readerPool;
+
+	DtdGrammarPool(EntityResolver2 entityResolver) {
+		this.entityResolver = entityResolver;
+	}
+
+	/**
+	 * Get the pool shared by the validations with a given forced doctype and catalogs
+	 * @param doctypeSystem DTD forced on the documents, null when the documents are validated with their own doctype
+	 * @param catalogPaths list of catalogs to be loaded with classLoader, may be null
+	 */
+	public static DtdGrammarPool forDoctype(String doctypeSystem, List<String> catalogPaths) throws XmlValidationException {
+		PoolKey key = new PoolKey(doctypeSystem, catalogPaths);
+		DtdGrammarPool pool = POOLS.get(key);
+		if (pool == null) {
+			EntityResolver2 entityResolver = XmlValidator.createEntityResolver(catalogPaths);
+			pool = POOLS.computeIfAbsent(key, k -> new DtdGrammarPool(entityResolver));
+		}
+		return pool;
+	}
+
+	/**
+	 * Drop every shared pool, the DTDs will be read again by the next validations
+	 */
+	public static void evictAll() {
+		for (DtdGrammarPool pool : POOLS.values()) {
+			pool.clear();
+		}
+		POOLS.clear();
+	}
+
+	/**
+	 * Read and compile a DTD, and add it to the pool unless it declares general entities
+	 * @param systemId URI of the DTD, it might use cp protocol
+	 * @throws XmlValidationException if the DTD cannot be read or is not correct
+	 */
+	public void preload(String systemId) throws XmlValidationException {
+		XMLGrammarPreparser preparser = new XMLGrammarPreparser(symbolTable);
+		preparser.registerPreparser(XMLGrammarDescription.XML_DTD, null);
+		preparser.setGrammarPool(grammarPool);
+		if (entityResolver != null) {
+			preparser.setEntityResolver(new EntityResolver2Wrapper(entityResolver));
+		}
+		try {
+			long start = System.nanoTime();
+			Grammar grammar = preparser.preparseGrammar(XMLGrammarDescription.XML_DTD, new XMLInputSource(null, systemId, null));
+			grammarPool.putGrammar(grammar);
+			XmlValidator.getMetrics().schemaLoaded(systemId, XmlValidator.getGrammar(systemId), System.nanoTime() - start);
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while loading DTD: %s", systemId));
+		} catch (XNIException e) {
+			throw new XmlValidationException(format("Error while parsing DTD: %s", e));
+		}
+	}
+
+	/**
+	 * Remove a DTD from the pool, it will be read again by the next validation using it
+	 * @param systemId URI of the DTD, as declared or expanded
+	 * @return true if a grammar has been removed
+	 */
+	public boolean evict(String systemId) {
+		boolean evicted = false;
+		for (Grammar grammar : grammarPool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_DTD)) {
+			XMLGrammarDescription description = grammar.getGrammarDescription();
+			if (systemId.equals(description.getExpandedSystemId()) || systemId.equals(description.getLiteralSystemId())) {
+				evicted |= grammarPool.removeGrammar(description) != null;
+			}
+		}
+		return evicted;
+	}
+
+	public void clear() {
+		grammarPool.clear();
+	}
+
+	/**
+	 * @return the system identifiers of the cached DTDs
+	 */
+	public List<String> getSystemIds() {
+		List<String> systemIds = new ArrayList<>();
+		for (Grammar grammar : grammarPool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_DTD)) {
+			systemIds.add(grammar.getGrammarDescription().getExpandedSystemId());
+		}
+		return Collections.unmodifiableList(systemIds);
+	}
+
+	XMLGrammarPool getGrammarPool() {
+		return grammarPool;
+	}
+
+	EntityResolver2 getEntityResolver() {
+		return entityResolver;
+	}
+
+	/**
+	 * Get the pool of the validating parsers using this grammar pool, the parsers are dropped with the grammar pool
+	 * @param factory configuration of the parsers, used when the pool is first requested
+	 */
+	synchronized XMLReaderPool getReaderPool(XMLReaderPool.ReaderFactory factory) {
+		if (readerPool == null) {
+			readerPool = new XMLReaderPool(factory);
+		}
+		return readerPool;
+	}
+
+	/**
+	 * @return a new validating parser using the pool
+	 */
+	XMLReader createXMLReader() throws SAXException {
+		SAXParser reader = new SAXParser(symbolTable, grammarPool);
+		reader.setFeature(VALIDATION, true);
+		reader.setFeature(NAMESPACES, true);
+		return reader;
+	}
+
+	/**
+	 * Xerces pool keeping only the grammars without general entities : the entities of a pooled grammar are not declared
+	 * again when the grammar is reused, the documents referencing them would not be well-formed
+	 */
+	private static final class EntityFreeGrammarPool extends XMLGrammarPoolImpl {
+
+		@Override
+		public void putGrammar(Grammar grammar) {
+			if (!declaresGeneralEntities(grammar)) {
+				super.putGrammar(grammar);
+			}
+		}
+
+		private static boolean declaresGeneralEntities(Grammar grammar) {
+			if (grammar instanceof DTDGrammar) {
+				XMLEntityDecl entityDecl = new XMLEntityDecl();
+				for (int i = 0; ((DTDGrammar) grammar).getEntityDecl(i, entityDecl); i++) {
+					if (!entityDecl.isPE) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class PoolKey {
+		private final String doctypeSystem;
+		private final List<String> catalogPaths;
+
+		PoolKey(String doctypeSystem, List<String> catalogPaths) {
+			this.doctypeSystem = doctypeSystem;
+			this.catalogPaths = catalogPaths == null ? Collections.emptyList() : List.copyOf(catalogPaths);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof PoolKey)) {
+				return false;
+			}
+			PoolKey other = (PoolKey) o;
+			return Objects.equals(doctypeSystem, other.doctypeSystem) && catalogPaths.equals(other.catalogPaths);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(doctypeSystem, catalogPaths);
+		}
+	}
+}
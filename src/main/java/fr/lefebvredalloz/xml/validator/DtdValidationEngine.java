@@ -0,0 +1,142 @@
+package eu.els.sie.xml.validation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.EntityResolver2;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Validation with a DTD, the validating parser stops at the first error unless another {@link ErrorPolicy} is configured
+ * The compiled DTDs are reused from one validation to another thanks to a shared {@link DtdGrammarPool}
+ */
+class DtdValidationEngine implements ValidationEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger(XmlValidator.class);
+
+	private static final String USE_ENTITY_RESOLVER2 = "http://xml.org/sax/features/use-entity-resolver2";
+
+	// name given by SAX to the external DTD subset when it is resolved
+	private static final String EXTERNAL_SUBSET_NAME = "[dtd]";
+
+	// validating parsers using the grammar pool, kept by the pool so that they are dropped with it
+	private final XMLReaderPool readers;
+
+	/**
+	 * @param doctypeSystem DTD forced on the documents, null to validate with the document's own doctype
+	 * @param catalogPaths list of catalogs to be loaded with classLoader, may be null
+	 */
+	DtdValidationEngine(String doctypeSystem, List<String> catalogPaths) throws XmlValidationException {
+		DtdGrammarPool grammarPool = DtdGrammarPool.forDoctype(doctypeSystem, catalogPaths);
+		this.readers = grammarPool.getReaderPool(() -> createXMLReader(grammarPool, doctypeSystem));
+	}
+
+	private static XMLReader createXMLReader(DtdGrammarPool grammarPool, String doctypeSystem) throws SAXException {
+		XMLReader reader = grammarPool.createXMLReader();
+		reader.setFeature(USE_ENTITY_RESOLVER2, true);
+		if (doctypeSystem != null) {
+			reader.setEntityResolver(new DoctypeSystemResolver(doctypeSystem, grammarPool.getEntityResolver()));
+		}
+		else if (grammarPool.getEntityResolver() != null) {
+			reader.setEntityResolver(grammarPool.getEntityResolver());
+		}
+		return reader;
+	}
+
+	@Override
+	public boolean validate(InputSource xml, XmlValidationErrorHandler errorHandler) throws IOException, SAXException {
+		XMLReader reader = readers.borrow();
+		// the validation is done by the parser itself, the errors after the error budget are ignored
+		errorHandler.continueParsingOnAbort(reader);
+		try {
+			reader.setErrorHandler(new ErrorHandlerImpl(errorHandler));
+			reader.parse(xml);
+		} finally {
+			readers.release(reader);
+		}
+		return errorHandler.getCount(XmlValidationErrorHandler.LEVEL.ERROR) == 0;
+	}
+
+	/**
+	 * Make the parser read the forced DTD as external subset, in the same streaming pass as the document :
+	 * it is provided as external subset of documents without doctype and replaces the external subset
+	 * declared by the doctype of the other documents
+	 */
+	private static class DoctypeSystemResolver implements EntityResolver2 {
+		private final String doctypeSystem;
+
+		// catalog resolution of the other entities, may be null
+		private final EntityResolver2 entityResolver;
+
+		DoctypeSystemResolver(String doctypeSystem, EntityResolver2 entityResolver) {
+			this.doctypeSystem = doctypeSystem;
+			this.entityResolver = entityResolver;
+		}
+
+		@Override
+		public InputSource getExternalSubset(String name, String baseURI) {
+			return new InputSource(doctypeSystem);
+		}
+
+		@Override
+		public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) throws SAXException, IOException {
+			if (EXTERNAL_SUBSET_NAME.equals(name)) {
+				return new InputSource(doctypeSystem);
+			}
+			// catalog or default resolution for the other entities
+			return entityResolver == null ? null : entityResolver.resolveEntity(name, publicId, baseURI, systemId);
+		}
+
+		@Override
+		public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+			return entityResolver == null ? null : entityResolver.resolveEntity(publicId, systemId);
+		}
+	}
+
+	/**
+	 * Log the messages and record them in the report, the report stops the validation when its error budget is used up
+	 */
+	private static class ErrorHandlerImpl implements ErrorHandler {
+		private final XmlValidationErrorHandler report;
+
+		// the messages are not logged when the policy does not keep them
+		private final boolean log;
+
+		ErrorHandlerImpl(XmlValidationErrorHandler report) {
+			this.report = report;
+			this.log = report.getErrorPolicy().isRetainMessages();
+		}
+
+		@Override
+		public void warning(SAXParseException exception) {
+			// the messages are ignored once the validation is stopped
+			if (log && !report.isAborted()) {
+				logger.warn(exception.getMessage()); // do nothing
+			}
+			report.warning(exception);
+		}
+
+		@Override
+		public void error(SAXParseException exception) throws SAXException {
+			if (log && !report.isAborted()) {
+				logger.error(exception.getMessage());
+			}
+			report.error(exception);
+		}
+
+		@Override
+		public void fatalError(SAXParseException exception) throws SAXException {
+			if (log) {
+				logger.error(exception.getMessage());
+			}
+			report.fatalError(exception);
+			throw exception;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package eu.els.sie.xml.validation;
+
+/**
+ * How the validation errors of a document are handled : how many errors are accepted before the validation is
+ * stopped, and whether the messages are kept in the report or only counted.
+ * Stopping early avoids spending time and memory on badly broken documents whose errors are not all needed.
+ * Warnings never stop the validation, fatal errors always do. Once the validation of an {@link XmlValidator} or a
+ * {@link MultiSchemaValidator} is stopped, the rest of the document is still parsed, without validation, so that a document
+ * which is not well formed is reported as such.
+ */
+public final class ErrorPolicy {
+
+	private static final ErrorPolicy COLLECT_ALL = new ErrorPolicy(Integer.MAX_VALUE, true);
+	private static final ErrorPolicy FAIL_FAST = new ErrorPolicy(1, true);
+	private static final ErrorPolicy COUNT_ONLY = new ErrorPolicy(Integer.MAX_VALUE, false);
+
+	private final int maxErrors;
+	private final boolean retainMessages;
+
+	private ErrorPolicy(int maxErrors, boolean retainMessages) {
+		this.maxErrors = maxErrors;
+		this.retainMessages = retainMessages;
+	}
+
+	/**
+	 * Validate the whole document and keep every message, the default for all grammars but DTD
+	 */
+	public static ErrorPolicy collectAll() {
+		return COLLECT_ALL;
+	}
+
+	/**
+	 * Stop the validation at the first error, the default for DTD
+	 */
+	public static ErrorPolicy failFast() {
+		return FAIL_FAST;
+	}
+
+	/**
+	 * Stop the validation once the given number of errors has been reported
+	 * @param maxErrors number of errors kept in the report, at least 1
+	 */
+	public static ErrorPolicy maxErrors(int maxErrors) {
+		if (maxErrors < 1) {
+			throw new IllegalArgumentException("The error budget must be at least 1");
+		}
+		return new ErrorPolicy(maxErrors, true);
+	}
+
+	/**
+	 * Validate the whole document and only count the messages, the report lists stay empty
+	 */
+	public static ErrorPolicy countOnly() {
+		return COUNT_ONLY;
+	}
+
+	/**
+	 * @return the number of errors after which the validation is stopped
+	 */
+	public int getMaxErrors() {
+		return maxErrors;
+	}
+
+	public boolean isRetainMessages() {
+		return retainMessages;
+	}
+
+	@Override
+	public String toString() {
+		if (!retainMessages) {
+			return "count only";
+		}
+		return maxErrors == Integer.MAX_VALUE ? "collect all" : "max " + maxErrors + " errors";
+	}
+}
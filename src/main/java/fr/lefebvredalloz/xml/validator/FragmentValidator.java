@@ -0,0 +1,624 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.datatype.DatatypeLibraryLoader;
+import com.thaiopensource.relaxng.match.IncorrectSchemaException;
+import com.thaiopensource.relaxng.match.MatchablePattern;
+import com.thaiopensource.relaxng.match.MatchablePatternLoader;
+import com.thaiopensource.relaxng.match.Matcher;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.xml.sax.SAXResolver;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.xml.util.Name;
+import eu.els.sie.xml.validation.SchemaCache.SchemaKey;
+import eu.els.sie.xml.validation.XmlValidationErrorHandler.LEVEL;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.String.format;
+
+/**
+ * Incremental validation with a RELAX NG schema (XML or compact syntax), for the editors which validate the same document
+ * again after each change :
+ * <ul>
+ * <li>a fragment, e.g. one chapter, can be validated alone against the pattern of its element in the context
+ * of its ancestors, see {@link #check(byte[], List)}</li>
+ * <li>the result of each subtree at the {@link Builder#cacheDepth(int) cache depth} (the children of the document element
+ * by default) is cached by the hash of its content and the validation state before it : when the document is validated again,
+ * the unchanged subtrees are only parsed and hashed, their validation is skipped</li>
+ * </ul>
+ * The validation state is the one of jing's RELAX NG matcher, the ID/IDREF checks of the DTD compatibility annotations are not done.
+ * The subtree results are cached for each thread.
+ * <pre>
+ * FragmentValidator validator = FragmentValidator.forSchema("cp:/path/to/book.rng").build();
+ * ValidationResult result = validator.check(chapter, "book");
+ * </pre>
+ */
+public class FragmentValidator {
+
+	public static final int DEFAULT_CACHE_DEPTH = 2;
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+
+	private static final String RNG_EXTENSION = ".rng";
+	private static final String RNC_EXTENSION = ".rnc";
+
+	private final String schemaUri;
+	private final ErrorPolicy errorPolicy;
+	private final int cacheDepth;
+
+	// document parsers with the catalog resolver
+	private final XMLReaderPool readers;
+
+	// the matcher states created by the same matcher share their memo tables : they can only be compared, cached
+	// and used on the thread which created them
+	private final ThreadLocal<ThreadState> threadStates;
+
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+
+	private FragmentValidator(String schemaUri, MatchablePattern pattern, PropertyMap propertyMap, ErrorPolicy errorPolicy, int cacheDepth, int cacheSize) {
+		this.schemaUri = schemaUri;
+		this.errorPolicy = errorPolicy;
+		this.cacheDepth = cacheDepth;
+		this.readers = XMLReaderPool.forProperties(propertyMap);
+		this.threadStates = ThreadLocal.withInitial(() -> new ThreadState(pattern.createMatcher(), cacheSize));
+	}
+
+	/**
+	 * Start the configuration of a fragment validator
+	 * @param schemaUri URI of a RELAX NG schema, {@code .rng} or {@code .rnc}, it might use cp protocol
+	 */
+	public static Builder forSchema(String schemaUri) {
+		return new Builder(schemaUri);
+	}
+
+	public String getSchemaUri() {
+		return schemaUri;
+	}
+
+	/**
+	 * Validate a whole document, the unchanged subtrees since a previous validation on the same thread are not validated again
+	 * @param xml XML document as a byte array
+	 * @return the result, with the validation report
+	 * @throws XmlValidationException if the document cannot be read
+	 */
+	public ValidationResult check(byte[] xml) throws XmlValidationException {
+		return check(xml, List.of());
+	}
+
+	/**
+	 * @param context names of the ancestors of the fragment element, the document element first
+	 * @see #check(byte[], List)
+	 */
+	public ValidationResult check(byte[] fragment, String... context) throws XmlValidationException {
+		return check(fragment, Arrays.asList(context));
+	}
+
+	/**
+	 * Validate a fragment in the context of its ancestors : the fragment element is validated against the pattern
+	 * it gets inside these ancestors. The ancestors and the siblings of the fragment are not known,
+	 * so the attributes and the content of the ancestors, and the position of the fragment among its siblings, are not checked.
+	 * The fragment element must still be allowed at some position in the content of its parent.
+	 * @param fragment XML fragment with a single root element, the namespaces of the ancestors must be declared again
+	 * @param context names of the ancestors of the fragment element, the document element first, as {@code local}
+	 * or {@code {namespace}local}, an empty context validates a whole document
+	 * @return the result, with the validation report
+	 * @throws XmlValidationException if the fragment cannot be read
+	 */
+	public ValidationResult check(byte[] fragment, List<String> context) throws XmlValidationException {
+		List<Name> ancestors = new ArrayList<>();
+		for (String ancestor : context) {
+			ancestors.add(parseName(ancestor));
+		}
+		String grammar = XmlValidator.getGrammar(schemaUri);
+		ValidationMetrics metrics = XmlValidator.getMetrics();
+		metrics.validationStarted(schemaUri, grammar);
+		long start = System.nanoTime();
+		ValidationResult result = null;
+		try {
+			result = check(new InputSource(new ByteArrayInputStream(fragment)), ancestors);
+			return result;
+		} finally {
+			long nanos = System.nanoTime() - start;
+			if (result != null) {
+				metrics.validationCompleted(schemaUri, grammar, result, nanos, fragment.length);
+			}
+			else {
+				metrics.validationFailed(schemaUri, grammar, nanos);
+			}
+		}
+	}
+
+	private ValidationResult check(InputSource xml, List<Name> ancestors) throws XmlValidationException {
+		XmlValidationErrorHandler errorHandler = new XmlValidationErrorHandler(errorPolicy, schemaUri);
+		ThreadState threadState = threadStates.get();
+		MatcherHandler matcherHandler = new MatcherHandler(threadState.matcher.start(), errorHandler, xml.getSystemId());
+		XMLReader reader = null;
+		try {
+			reader = readers.borrow();
+			reader.setContentHandler(new SubtreeHandler(matcherHandler, ancestors, threadState));
+			reader.setDTDHandler(matcherHandler);
+			reader.setErrorHandler(errorHandler);
+			reader.parse(xml);
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while reading input stream: %s", e), errorHandler.getValidationReport());
+		} catch (SAXException e) {
+			if (errorHandler.getCount(LEVEL.FATAL) > 0 || (e instanceof SAXParseException && !errorHandler.isAborted())) {
+				return ValidationResult.notWellFormed(schemaUri, format("XML is not well formed: %s", e), errorHandler.getValidationReport());
+			}
+			// validation stopped by the error policy
+			return ValidationResult.invalid(schemaUri, format("XML is not valid: %s", e), errorHandler.getValidationReport());
+		} finally {
+			if (reader != null) {
+				readers.release(reader);
+			}
+		}
+		if (errorHandler.getCount(LEVEL.ERROR) > 0) {
+			return ValidationResult.invalid(schemaUri, format("XML is not valid against model: %s", schemaUri), errorHandler.getValidationReport());
+		}
+		return ValidationResult.valid(schemaUri, errorHandler.getValidationReport());
+	}
+
+	/**
+	 * Drop the subtree results cached by the current thread
+	 */
+	public void clearCache() {
+		threadStates.get().subtrees.clear();
+	}
+
+	/**
+	 * @return the number of subtrees whose validation was skipped, on every thread
+	 */
+	public long getCacheHitCount() {
+		return cacheHits.sum();
+	}
+
+	/**
+	 * @return the number of subtrees validated and cached, on every thread
+	 */
+	public long getCacheMissCount() {
+		return cacheMisses.sum();
+	}
+
+	/**
+	 * @param name {@code local} or {@code {namespace}local}
+	 */
+	static Name parseName(String name) {
+		if (name.startsWith("{")) {
+			int end = name.indexOf('}');
+			if (end > 0) {
+				return new Name(name.substring(1, end), name.substring(end + 1));
+			}
+		}
+		return new Name("", name);
+	}
+
+	/**
+	 * Compile a RELAX NG schema into a pattern whose matchers can be copied and compared
+	 */
+	static MatchablePattern loadPattern(String schemaUri, PropertyMap propertyMap) throws XmlValidationException {
+		XmlValidationErrorHandler errorHandler = new XmlValidationErrorHandler();
+		Input input = new Input();
+		input.setUri(schemaUri);
+		int flags = schemaUri.toLowerCase().endsWith(RNC_EXTENSION) ? MatchablePatternLoader.COMPACT_SYNTAX_FLAG : 0;
+		try {
+			return new MatchablePatternLoader().load(input, new SAXResolver(propertyMap.get(ValidateProperty.RESOLVER)),
+					errorHandler, new DatatypeLibraryLoader(), flags);
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while loading schema: %s", schemaUri), errorHandler.getValidationReport());
+		} catch (SAXException | IncorrectSchemaException e) {
+			throw new XmlValidationException(format("Error while parsing schema: %s", schemaUri), errorHandler.getValidationReport());
+		}
+	}
+
+	/**
+	 * Matcher and subtree results of one thread
+	 */
+	private static class ThreadState {
+		private final Matcher matcher;
+		private final Map<SubtreeKey, SubtreeResult> subtrees;
+
+		ThreadState(Matcher matcher, int cacheSize) {
+			this.matcher = matcher;
+			// access-ordered map, the eldest entry is the least recently used one
+			this.subtrees = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<SubtreeKey, SubtreeResult> eldest) {
+					return size() > cacheSize;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Identity of the validation of a subtree : matcher state before the subtree and hash of its content with its namespace context
+	 */
+	private static final class SubtreeKey {
+		private final Matcher before;
+		private final byte[] digest;
+
+		SubtreeKey(Matcher before, byte[] digest) {
+			this.before = before;
+			this.digest = digest;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof SubtreeKey)) {
+				return false;
+			}
+			SubtreeKey other = (SubtreeKey) o;
+			return Arrays.equals(digest, other.digest) && before.equals(other.before);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Arrays.hashCode(digest) + before.hashCode();
+		}
+	}
+
+	/**
+	 * Matcher state after a subtree and its errors, located relatively to the start of the subtree
+	 */
+	private static final class SubtreeResult {
+		private final Matcher after;
+		private final List<SubtreeError> errors;
+
+		SubtreeResult(Matcher after, List<SubtreeError> errors) {
+			this.after = after;
+			this.errors = errors;
+		}
+	}
+
+	private static final class SubtreeError {
+		private final String message;
+		// line relative to the first line of the subtree, column relative to its first column on this first line
+		private final int line;
+		private final int column;
+
+		SubtreeError(String message, int line, int column) {
+			this.message = message;
+			this.line = line;
+			this.column = column;
+		}
+	}
+
+	/**
+	 * Collect the errors of a subtree instead of reporting them, so that they can be cached before the error policy stops the validation
+	 */
+	private static final class ErrorCollector implements ErrorHandler {
+		private final List<SAXParseException> errors = new ArrayList<>();
+
+		@Override
+		public void warning(SAXParseException exception) {
+		}
+
+		@Override
+		public void error(SAXParseException exception) {
+			errors.add(exception);
+		}
+
+		@Override
+		public void fatalError(SAXParseException exception) {
+			errors.add(exception);
+		}
+	}
+
+	/**
+	 * Send the events of the document to the matcher, except the events of the subtrees at the cache depth :
+	 * a subtree is recorded, then taken from the cache or replayed to the matcher
+	 */
+	private class SubtreeHandler implements ContentHandler {
+		private final MatcherHandler matcherHandler;
+		private final List<Name> ancestors;
+		private final ThreadState threadState;
+
+		private Locator locator;
+		private int depth;
+		// prefix mappings in scope, the namespace context of the subtrees
+		private final List<String> prefixMappings = new ArrayList<>();
+		// events of the current subtree, null when no subtree is recorded
+		private List<SaxEvent> events;
+
+		SubtreeHandler(MatcherHandler matcherHandler, List<Name> ancestors, ThreadState threadState) {
+			this.matcherHandler = matcherHandler;
+			this.ancestors = ancestors;
+			this.threadState = threadState;
+		}
+
+		private int getLine() {
+			return locator == null ? -1 : locator.getLineNumber();
+		}
+
+		private int getColumn() {
+			return locator == null ? -1 : locator.getColumnNumber();
+		}
+
+		private void locate() {
+			matcherHandler.setLocation(getLine(), getColumn());
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			locate();
+			if (ancestors.isEmpty()) {
+				matcherHandler.startDocument();
+			}
+			else {
+				matcherHandler.openContext(ancestors, true);
+			}
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			locate();
+			// the ancestors of a fragment are not closed, their content is not known
+			if (ancestors.isEmpty()) {
+				matcherHandler.endDocument();
+			}
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			prefixMappings.add(prefix + '=' + uri);
+			if (events != null) {
+				events.add(new SaxEvent(SaxEvent.START_PREFIX_MAPPING, uri, prefix, null, null, null, getLine(), getColumn()));
+			}
+			else {
+				locate();
+				matcherHandler.startPrefixMapping(prefix, uri);
+			}
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			for (int i = prefixMappings.size() - 1; i >= 0; i--) {
+				if (prefixMappings.get(i).startsWith(prefix + '=')) {
+					prefixMappings.remove(i);
+					break;
+				}
+			}
+			if (events != null) {
+				events.add(new SaxEvent(SaxEvent.END_PREFIX_MAPPING, null, prefix, null, null, null, getLine(), getColumn()));
+			}
+			else {
+				locate();
+				matcherHandler.endPrefixMapping(prefix);
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			depth++;
+			if (events == null && depth == cacheDepth) {
+				events = new ArrayList<>();
+			}
+			if (events != null) {
+				events.add(new SaxEvent(SaxEvent.START_ELEMENT, uri, localName, qName, new AttributesImpl(attributes), null, getLine(), getColumn()));
+			}
+			else {
+				locate();
+				matcherHandler.startElement(uri, localName, qName, attributes);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (events != null) {
+				events.add(new SaxEvent(SaxEvent.END_ELEMENT, uri, localName, qName, null, null, getLine(), getColumn()));
+				if (depth == cacheDepth) {
+					List<SaxEvent> subtree = events;
+					events = null;
+					endSubtree(subtree);
+				}
+			}
+			else {
+				locate();
+				matcherHandler.endElement(uri, localName, qName);
+			}
+			depth--;
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (events != null) {
+				// the parser may split a text anywhere, the text events are merged so that the hash only depends on the content
+				SaxEvent last = events.get(events.size() - 1);
+				if (last.type == SaxEvent.CHARACTERS) {
+					last.text.append(ch, start, length);
+				}
+				else {
+					events.add(new SaxEvent(SaxEvent.CHARACTERS, null, null, null, null, new StringBuilder().append(ch, start, length), getLine(), getColumn()));
+				}
+			}
+			else {
+				locate();
+				matcherHandler.characters(ch, start, length);
+			}
+		}
+
+		/**
+		 * Validate a recorded subtree, or take its result from the cache
+		 */
+		private void endSubtree(List<SaxEvent> subtree) throws SAXException {
+			SaxEvent first = subtree.get(0);
+			matcherHandler.setLocation(first.line, first.column);
+			matcherHandler.flushCharacters();
+			Matcher before = matcherHandler.getMatcher().copy();
+			SubtreeKey key = new SubtreeKey(before, digest(subtree));
+			SubtreeResult result = threadState.subtrees.get(key);
+			if (result != null) {
+				cacheHits.increment();
+				matcherHandler.setMatcher(result.after.copy());
+			}
+			else {
+				cacheMisses.increment();
+				result = validate(subtree, first, key);
+			}
+			for (SubtreeError error : result.errors) {
+				int line = first.line < 0 || error.line < 0 ? -1 : first.line + error.line;
+				int column = error.line == 0 && first.column >= 0 ? first.column + error.column : error.column;
+				matcherHandler.reportError(error.message, line, column);
+			}
+		}
+
+		private SubtreeResult validate(List<SaxEvent> subtree, SaxEvent first, SubtreeKey key) throws SAXException {
+			ErrorHandler errorHandler = matcherHandler.getErrorHandler();
+			ErrorCollector collector = new ErrorCollector();
+			matcherHandler.setErrorHandler(collector);
+			try {
+				for (SaxEvent event : subtree) {
+					matcherHandler.setLocation(event.line, event.column);
+					event.replay(matcherHandler);
+				}
+			} finally {
+				matcherHandler.setErrorHandler(errorHandler);
+			}
+			List<SubtreeError> errors = new ArrayList<>();
+			for (SAXParseException error : collector.errors) {
+				int line = error.getLineNumber() < 0 || first.line < 0 ? -1 : error.getLineNumber() - first.line;
+				int column = line == 0 ? error.getColumnNumber() - first.column : error.getColumnNumber();
+				errors.add(new SubtreeError(error.getMessage(), line, column));
+			}
+			SubtreeResult result = new SubtreeResult(matcherHandler.getMatcher().copy(), errors);
+			threadState.subtrees.put(key, result);
+			return result;
+		}
+
+		private byte[] digest(List<SaxEvent> subtree) {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			for (String prefixMapping : prefixMappings) {
+				SaxEvent.update(digest, prefixMapping);
+			}
+			for (SaxEvent event : subtree) {
+				event.digest(digest);
+			}
+			return digest.digest();
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) {
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) {
+		}
+
+		@Override
+		public void skippedEntity(String name) {
+		}
+	}
+
+	/**
+	 * Configuration of a {@link FragmentValidator}
+	 */
+	public static class Builder {
+		private final String schemaUri;
+		private List<String> catalogPaths;
+		private SchemaCache schemaCache = SchemaCache.getDefault();
+		private ErrorPolicy errorPolicy = ErrorPolicy.collectAll();
+		private int cacheDepth = DEFAULT_CACHE_DEPTH;
+		private int cacheSize = DEFAULT_CACHE_SIZE;
+
+		private Builder(String schemaUri) {
+			this.schemaUri = Objects.requireNonNull(schemaUri, "schemaUri");
+		}
+
+		/**
+		 * @param catalogPaths list of catalogs without protocol, to be loaded with classLoader, may be null
+		 */
+		public Builder catalogs(List<String> catalogPaths) {
+			this.catalogPaths = catalogPaths == null ? null : List.copyOf(catalogPaths);
+			return this;
+		}
+
+		public Builder catalogs(String... catalogPaths) {
+			return catalogs(Arrays.asList(catalogPaths));
+		}
+
+		/**
+		 * @param schemaCache cache of compiled schemas, the {@link SchemaCache#getDefault() default cache} if not set
+		 */
+		public Builder schemaCache(SchemaCache schemaCache) {
+			this.schemaCache = Objects.requireNonNull(schemaCache, "schemaCache");
+			return this;
+		}
+
+		/**
+		 * @param errorPolicy handling of the validation errors, {@link ErrorPolicy#collectAll()} if not set
+		 */
+		public Builder errorPolicy(ErrorPolicy errorPolicy) {
+			this.errorPolicy = Objects.requireNonNull(errorPolicy, "errorPolicy");
+			return this;
+		}
+
+		/**
+		 * @param cacheDepth depth of the cached subtrees, 2 for the children of the validated element, 0 to cache nothing
+		 */
+		public Builder cacheDepth(int cacheDepth) {
+			if (cacheDepth == 1 || cacheDepth < 0) {
+				throw new IllegalArgumentException("The cache depth must be 0 or at least 2");
+			}
+			this.cacheDepth = cacheDepth;
+			return this;
+		}
+
+		/**
+		 * @param cacheSize maximum number of subtree results cached by each thread, {@link #DEFAULT_CACHE_SIZE} if not set
+		 */
+		public Builder cacheSize(int cacheSize) {
+			if (cacheSize < 1) {
+				throw new IllegalArgumentException("Subtree cache size must be at least 1");
+			}
+			this.cacheSize = cacheSize;
+			return this;
+		}
+
+		/**
+		 * Resolve the catalogs and compile the schema
+		 * @throws XmlValidationException if the schema is not a RELAX NG schema or cannot be loaded
+		 */
+		public FragmentValidator build() throws XmlValidationException {
+			String lowerCaseUri = schemaUri.toLowerCase();
+			if (!lowerCaseUri.endsWith(RNG_EXTENSION) && !lowerCaseUri.endsWith(RNC_EXTENSION)) {
+				throw new XmlValidationException(format("Fragment validation is only supported with RELAX NG schemas: %s", schemaUri));
+			}
+			PropertyMap propertyMap = XmlValidator.createPropertyMap(catalogPaths);
+			MatchablePattern pattern = schemaCache.getSchema(new SchemaKey(MatchablePattern.class, schemaUri, catalogPaths, propertyMap),
+					key -> loadPattern(key.getSchemaUri(), propertyMap));
+			return new FragmentValidator(schemaUri, pattern, propertyMap, errorPolicy, cacheDepth, cacheSize);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package eu.els.sie.xml.validation;
+
+import eu.els.sie.xml.validation.XmlValidationErrorHandler.LEVEL;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ValidationMetrics} recorded as JDK Flight Recorder events, with no dependency :
+ * one event per schema compilation and per validation, and a periodic event with the cache counters
+ * and the number of validations in flight. The events are only written while a recording is running,
+ * e.g. {@code -XX:StartFlightRecording}, and are visible in JDK Mission Control under the "XML Validation" category.
+ * <pre>
+ * XmlValidator.setMetrics(new JfrValidationMetrics());
+ * </pre>
+ * {@link #close()} stops the periodic event once the metrics are not used anymore.
+ */
+public class JfrValidationMetrics implements ValidationMetrics, AutoCloseable {
+
+	private static final String CATEGORY = "XML Validation";
+
+	private final LongAdder schemaCacheHits = new LongAdder();
+	private final LongAdder schemaCacheMisses = new LongAdder();
+	private final LongAdder schemaCacheEvictions = new LongAdder();
+	private final LongAdder resourceCacheHits = new LongAdder();
+	private final LongAdder resourceCacheMisses = new LongAdder();
+	private final LongAdder resourceCacheEvictions = new LongAdder();
+	private final LongAdder inFlight = new LongAdder();
+
+	private final Runnable statisticsHook = this::emitStatistics;
+
+	public JfrValidationMetrics() {
+		FlightRecorder.addPeriodicEvent(StatisticsEvent.class, statisticsHook);
+	}
+
+	@Override
+	public void schemaLoaded(String schemaUri, String grammar, long nanos) {
+		SchemaLoadEvent event = new SchemaLoadEvent();
+		if (event.isEnabled()) {
+			event.schemaUri = schemaUri;
+			event.grammar = grammar;
+			event.loadTime = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void schemaCacheHit(String schemaUri, String grammar) {
+		schemaCacheHits.increment();
+	}
+
+	@Override
+	public void schemaCacheMiss(String schemaUri, String grammar) {
+		schemaCacheMisses.increment();
+	}
+
+	@Override
+	public void schemaCacheEviction(String schemaUri, String grammar) {
+		schemaCacheEvictions.increment();
+	}
+
+	@Override
+	public void resourceCacheHit(String uri) {
+		resourceCacheHits.increment();
+	}
+
+	@Override
+	public void resourceCacheMiss(String uri) {
+		resourceCacheMisses.increment();
+	}
+
+	@Override
+	public void resourceCacheEviction(String uri) {
+		resourceCacheEvictions.increment();
+	}
+
+	@Override
+	public void validationStarted(String schemaUri, String grammar) {
+		inFlight.increment();
+	}
+
+	@Override
+	public void validationCompleted(String schemaUri, String grammar, ValidationResult result, long nanos, long documentBytes) {
+		inFlight.decrement();
+		ValidationEvent event = new ValidationEvent();
+		if (event.isEnabled()) {
+			ValidationReport report = result.getValidationReport();
+			event.schemaUri = schemaUri;
+			event.grammar = grammar;
+			event.status = result.getStatus().name();
+			event.errors = report.getCount(LEVEL.ERROR) + report.getCount(LEVEL.FATAL);
+			event.warnings = report.getCount(LEVEL.WARN);
+			event.documentSize = documentBytes;
+			event.validationTime = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void validationFailed(String schemaUri, String grammar, long nanos) {
+		inFlight.decrement();
+		ValidationEvent event = new ValidationEvent();
+		if (event.isEnabled()) {
+			event.schemaUri = schemaUri;
+			event.grammar = grammar;
+			event.status = "FAILED";
+			event.documentSize = -1;
+			event.validationTime = nanos;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return the number of validations started and not completed yet
+	 */
+	public long getInFlight() {
+		return inFlight.sum();
+	}
+
+	private void emitStatistics() {
+		StatisticsEvent event = new StatisticsEvent();
+		event.schemaCacheHits = schemaCacheHits.sum();
+		event.schemaCacheMisses = schemaCacheMisses.sum();
+		event.schemaCacheEvictions = schemaCacheEvictions.sum();
+		event.resourceCacheHits = resourceCacheHits.sum();
+		event.resourceCacheMisses = resourceCacheMisses.sum();
+		event.resourceCacheEvictions = resourceCacheEvictions.sum();
+		event.inFlight = inFlight.sum();
+		event.commit();
+	}
+
+	@Override
+	public void close() {
+		FlightRecorder.removePeriodicEvent(statisticsHook);
+	}
+
+	@Name("eu.els.sie.xml.validation.SchemaLoad")
+	@Label("Schema Load")
+	@Category(CATEGORY)
+	static final class SchemaLoadEvent extends Event {
+		@Label("Schema")
+		String schemaUri;
+		@Label("Grammar")
+		String grammar;
+		@Label("Load Time")
+		@Timespan
+		long loadTime;
+	}
+
+	@Name("eu.els.sie.xml.validation.Validation")
+	@Label("Validation")
+	@Description("Parse and validation of a document")
+	@Category(CATEGORY)
+	static final class ValidationEvent extends Event {
+		@Label("Schema")
+		String schemaUri;
+		@Label("Grammar")
+		String grammar;
+		@Label("Status")
+		String status;
+		@Label("Errors")
+		int errors;
+		@Label("Warnings")
+		int warnings;
+		@Label("Document Size")
+		@DataAmount
+		long documentSize;
+		@Label("Validation Time")
+		@Timespan
+		long validationTime;
+	}
+
+	@Name("eu.els.sie.xml.validation.Statistics")
+	@Label("Validation Statistics")
+	@Description("Cache counters since the metrics were installed, and validations in flight")
+	@Category(CATEGORY)
+	@Period("1 s")
+	static final class StatisticsEvent extends Event {
+		@Label("Schema Cache Hits")
+		long schemaCacheHits;
+		@Label("Schema Cache Misses")
+		long schemaCacheMisses;
+		@Label("Schema Cache Evictions")
+		long schemaCacheEvictions;
+		@Label("Resource Cache Hits")
+		long resourceCacheHits;
+		@Label("Resource Cache Misses")
+		long resourceCacheMisses;
+		@Label("Resource Cache Evictions")
+		long resourceCacheEvictions;
+		@Label("Validations In Flight")
+		long inFlight;
+	}
+}
@@ -0,0 +1,136 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.IncorrectSchemaException;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.SchemaReader;
+import com.thaiopensource.validate.ValidationDriver;
+import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.auto.AutoSchemaReader;
+import com.thaiopensource.validate.rng.CompactSchemaReader;
+import com.thaiopensource.xml.sax.CountingErrorHandler;
+import eu.els.sie.xml.validation.SchemaCache.SchemaKey;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.transform.sax.SAXSource;
+import java.io.IOException;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Validation with a jing compiled schema : RNG, RNC, Schematron1.5, Iso-Schematron, NVDL,
+ * and XSD when forced by {@link XmlValidator#validateXmlWithSchema(byte[], String, List)}
+ */
+class JingValidationEngine implements ValidationEngine {
+
+	private static final String RNC_EXTENSION = ".rnc";
+
+	private final Schema schema;
+
+	// resources read to compile the schema
+	private final SchemaDependencies dependencies;
+
+	// schema properties without error handler, the error handler is set for each validation
+	private final PropertyMap propertyMap;
+
+	// document parsers with the catalog resolver
+	private final XMLReaderPool readers;
+
+	private JingValidationEngine(Schema schema, SchemaDependencies dependencies, PropertyMap propertyMap) {
+		this.schema = schema;
+		this.dependencies = dependencies;
+		this.propertyMap = propertyMap;
+		this.readers = XMLReaderPool.forProperties(propertyMap);
+	}
+
+	/**
+	 * Create an engine for the schema, the compiled schema is taken from the cache when available
+	 * @param schemaUri URI of the schema
+	 * @param catalogPaths list of catalogs to be loaded with classLoader
+	 * @param schemaCache cache of compiled schemas
+	 */
+	static JingValidationEngine create(String schemaUri, List<String> catalogPaths, SchemaCache schemaCache) throws XmlValidationException {
+		PropertyMap propertyMap = XmlValidator.createPropertyMap(catalogPaths);
+		SchemaCache.CompiledSchema compiledSchema = schemaCache.getCompiledSchema(new SchemaKey(schemaUri, catalogPaths, propertyMap),
+				key -> loadSchema(key.getSchemaUri(), propertyMap));
+		return new JingValidationEngine(compiledSchema.getSchema(), compiledSchema.getDependencies(), propertyMap);
+	}
+
+	/**
+	 * Compile a schema with jing, the grammar type is detected from the schema document,
+	 * except for RELAX NG compact syntax (not XML) which is detected from the {@code .rnc} extension
+	 * @param schemaUri URI of the schema
+	 * @param propertyMap properties used for the compilation (resolver)
+	 * @return the compiled schema
+	 * @throws XmlValidationException if the schema cannot be read or is incorrect
+	 */
+	static Schema loadSchema(String schemaUri, PropertyMap propertyMap) throws XmlValidationException {
+		SchemaReader schemaReader = schemaUri.toLowerCase().endsWith(RNC_EXTENSION) ? CompactSchemaReader.getInstance() : new AutoSchemaReader();
+		return loadSchema(schemaUri, schemaReader, propertyMap);
+	}
+
+	/**
+	 * Compile a schema with the given jing schema reader
+	 * @see #loadSchema(String, PropertyMap)
+	 */
+	static Schema loadSchema(String schemaUri, SchemaReader schemaReader, PropertyMap propertyMap) throws XmlValidationException {
+		XmlValidationErrorHandler errorHandler = new XmlValidationErrorHandler();
+		PropertyMapBuilder schemaPropertyMapBuilder = new PropertyMapBuilder(propertyMap);
+		schemaPropertyMapBuilder.put(ValidateProperty.ERROR_HANDLER, errorHandler);
+		try {
+			return schemaReader.createSchema(new SAXSource(new InputSource(schemaUri)), schemaPropertyMapBuilder.toPropertyMap());
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while loading schema: %s", schemaUri), errorHandler.getValidationReport());
+		} catch (SAXException | IncorrectSchemaException e) {
+			throw new XmlValidationException(format("Error while parsing schema: %s", schemaUri), errorHandler.getValidationReport());
+		}
+	}
+
+	@Override
+	public SchemaDependencies getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * Validate a document with the compiled schema, as {@link ValidationDriver#validate(InputSource)} does
+	 * but with a new validator instead of the one owned by the driver
+	 * @return true if no error nor fatal error has been reported
+	 */
+	@Override
+	public boolean validate(InputSource xml, XmlValidationErrorHandler errorHandler) throws IOException, SAXException {
+		CountingErrorHandler countingErrorHandler = new CountingErrorHandler(errorHandler);
+		PropertyMapBuilder instancePropertyMapBuilder = new PropertyMapBuilder(propertyMap);
+		instancePropertyMapBuilder.put(ValidateProperty.ERROR_HANDLER, countingErrorHandler);
+		PropertyMap instanceProperties = instancePropertyMapBuilder.toPropertyMap();
+
+		Validator validator = schema.createValidator(instanceProperties);
+		XMLReader reader = readers.borrow();
+		errorHandler.continueParsingOnAbort(reader);
+		try {
+			reader.setErrorHandler(countingErrorHandler);
+			reader.setContentHandler(validator.getContentHandler());
+			DTDHandler dtdHandler = validator.getDTDHandler();
+			if (dtdHandler != null) {
+				reader.setDTDHandler(dtdHandler);
+			}
+			reader.parse(xml);
+		} finally {
+			readers.release(reader);
+		}
+		return !countingErrorHandler.getHadErrorOrFatalError();
+	}
+
+	@Override
+	public ValidationHandler createHandler(String systemId, XmlValidationErrorHandler errorHandler) {
+		PropertyMapBuilder instancePropertyMapBuilder = new PropertyMapBuilder(propertyMap);
+		instancePropertyMapBuilder.put(ValidateProperty.ERROR_HANDLER, errorHandler);
+		Validator validator = schema.createValidator(instancePropertyMapBuilder.toPropertyMap());
+		return new ValidationHandler(validator.getContentHandler(), validator.getDTDHandler(), null);
+	}
+}
@@ -3,26 +3,264 @@ package eu.els.sie.xml.validation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.lang.String.format;
 
 public class Main {
 	private static final Logger logger = LoggerFactory.getLogger(XmlValidator.class);
 
+	private static final String USAGE = "Usage: [--threads N] [--max-errors N] [--catalog <catalog path>]... <xml file|directory|glob|->... <schema path>\n"
+			+ "  directories are scanned recursively for *.xml files, - reads the list of XML files from the standard input\n"
+			+ "   or: --server [--port N] [--threads N] [--preload <schema path>]...\n"
+			+ "  validation server on the loopback interface, --threads limits the number of concurrent validations\n"
+			+ "   or: --preload <schema path>... [--catalog <catalog path>]... [--warmup-sample <xml file>]... [--warmup-iterations N]\n"
+			+ "  compile and warm up the schemas, before the server reports ready or the files are validated, or alone for a training run\n"
+			+ "   or: --precompile <schematron path> <target.sch.xsl>\n"
+			+ "  compile a Schematron schema into a validation XSLT, to be used as schema path instead of the Schematron";
+
+	private static final String STDIN = "-";
+	private static final String XML_EXTENSION = ".xml";
+	private static final String GLOB_CHARACTERS = "*?[{";
+
 	public static void main(String[] args) throws XmlValidationException, IOException {
-		if (args.length != 2) {
-			logger.error("Please supply exactly two argument, the path to the XML file and the path to the validation schema.");
+		ClasspathProtocol.register();
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean server = false;
+		boolean precompile = false;
+		ErrorPolicy errorPolicy = null;
+		int port = ValidationServer.DEFAULT_PORT;
+		List<String> catalogPaths = null;
+		List<String> preloadSchemas = new ArrayList<>();
+		List<Path> warmupSamples = new ArrayList<>();
+		int warmupIterations = SchemaWarmup.DEFAULT_ITERATIONS;
+		List<String> arguments = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if ("--threads".equals(args[i])) {
+					threads = parseNumber(args, ++i);
+				}
+				else if ("--max-errors".equals(args[i])) {
+					errorPolicy = ErrorPolicy.maxErrors(parseNumber(args, ++i));
+				}
+				else if ("--port".equals(args[i])) {
+					port = parseNumber(args, ++i);
+				}
+				else if ("--server".equals(args[i])) {
+					server = true;
+				}
+				else if ("--precompile".equals(args[i])) {
+					precompile = true;
+				}
+				else if ("--preload".equals(args[i])) {
+					preloadSchemas.add(value(args, ++i));
+				}
+				else if ("--warmup-sample".equals(args[i])) {
+					warmupSamples.add(Paths.get(value(args, ++i)));
+				}
+				else if ("--warmup-iterations".equals(args[i])) {
+					warmupIterations = parseNumber(args, ++i);
+				}
+				else if ("--catalog".equals(args[i])) {
+					if (catalogPaths == null) {
+						catalogPaths = new ArrayList<>();
+					}
+					catalogPaths.add(value(args, ++i));
+				}
+				else {
+					arguments.add(args[i]);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			logger.error(e.getMessage());
+			logger.error(USAGE);
+			return;
+		}
+		if (threads < 1) {
+			logger.error(format("The number of threads must be at least 1: %d", threads));
+			logger.error(USAGE);
+			return;
+		}
+		SchemaWarmup warmup = null;
+		if (!preloadSchemas.isEmpty()) {
+			SchemaWarmup.Builder warmupBuilder = SchemaWarmup.forSchemas(preloadSchemas).catalogs(catalogPaths).iterations(warmupIterations);
+			for (Path sample : warmupSamples) {
+				warmupBuilder.sample(sample);
+			}
+			warmup = warmupBuilder.build();
+		}
+		if (server) {
+			// the HTTP threads keep the JVM running until the process is stopped
+			if (warmup != null) {
+				ValidationServer.start(port, threads, warmup);
+			}
+			else {
+				ValidationServer.start(port, threads);
+			}
+			return;
+		}
+		if (warmup != null) {
+			warmup.run();
+			if (arguments.isEmpty()) {
+				// training run, e.g. to record the classes of a CDS archive
+				return;
+			}
+		}
+		if (precompile) {
+			if (arguments.size() != 2) {
+				logger.error("Please supply two arguments to --precompile, the path to the Schematron and the path to the target XSLT.");
+				logger.error(USAGE);
+				return;
+			}
+			SchematronCompiler.precompile(arguments.get(0), Paths.get(arguments.get(1)));
+			logger.info(format("Schematron %s compiled to %s", arguments.get(0), arguments.get(1)));
 			return;
 		}
-		final byte[] xmlContent = new FileInputStream(args[0]).readAllBytes();
+		if (arguments.size() < 2) {
+			logger.error("Please supply at least two arguments, the path to the XML files and the path to the validation schema.");
+			logger.error(USAGE);
+			return;
+		}
+
+		String schemaPath = arguments.get(arguments.size() - 1);
+		List<Path> files = new ArrayList<>();
+		for (String input : arguments.subList(0, arguments.size() - 1)) {
+			List<Path> inputFiles = expand(input);
+			if (inputFiles.isEmpty()) {
+				// a mistyped glob or directory must not pass as a successful run
+				throw new XmlValidationException(format("No XML file found for %s", input));
+			}
+			files.addAll(inputFiles);
+		}
+
+		// the schema is compiled once for all the files
+		XmlValidator.Builder builder = XmlValidator.forSchema(schemaPath).catalogs(catalogPaths);
+		if (errorPolicy != null) {
+			builder.errorPolicy(errorPolicy);
+		}
+		XmlValidator validator = builder.build();
+		if (files.size() == 1) {
+			validateFile(files.get(0), schemaPath, validator);
+		}
+		else {
+			validateFiles(files, schemaPath, validator, threads);
+		}
+	}
+
+	/**
+	 * Value of the option at index {@code i - 1}
+	 * @throws IllegalArgumentException when the option is the last argument
+	 */
+	private static String value(String[] args, int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException(format("Missing value for option %s", args[i - 1]));
+		}
+		return args[i];
+	}
+
+	private static int parseNumber(String[] args, int i) {
+		String value = value(args, i);
 		try {
-			if (XmlValidator.validate(xmlContent, args[1], null)) {
-				logger.info(format("XML %s is valid against schema %s", args[0], args[1]));
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(format("Invalid number for option %s: %s", args[i - 1], value), e);
+		}
+	}
+
+	private static void validateFile(Path file, String schemaPath, XmlValidator validator) throws XmlValidationException {
+		try {
+			// the file is streamed to the parser, it is never loaded in memory
+			if (validator.validate(file)) {
+				logger.info(format("XML %s is valid against schema %s", file, schemaPath));
 			}
 		} catch (XmlValidationException e) {
 			throw new XmlValidationException(e.getMessage());
 		}
 	}
+
+	private static void validateFiles(List<Path> files, String schemaPath, XmlValidator validator, int threads) throws XmlValidationException {
+		AtomicInteger valid = new AtomicInteger();
+		AtomicInteger invalid = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		try {
+			BatchValidator.builder().executor(executor).maxInFlight(2 * threads).build()
+					.validate(files, validator)
+					.forEach(result -> {
+						if (result.isValid()) {
+							valid.incrementAndGet();
+						}
+						else {
+							invalid.incrementAndGet();
+							logger.error(format("XML %s is not valid against schema %s: %s", result.getId(), schemaPath, result.getException().getMessage()));
+						}
+					});
+		} finally {
+			executor.shutdown();
+		}
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+		logger.info(format(Locale.ROOT, "%d XML files validated against schema %s in %.3f s (%.1f docs/s) with %d threads: %d valid, %d invalid",
+				files.size(), schemaPath, elapsedSeconds, files.size() / Math.max(elapsedSeconds, 1e-9), threads, valid.get(), invalid.get()));
+		if (invalid.get() > 0) {
+			throw new XmlValidationException(format("%d of %d XML files are not valid against schema %s", invalid.get(), files.size(), schemaPath));
+		}
+	}
+
+	/**
+	 * Expand a command line input into the XML files to validate
+	 * @param input a file, a directory, a glob pattern or - for a list of files on the standard input
+	 */
+	private static List<Path> expand(String input) throws IOException {
+		if (STDIN.equals(input)) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+			return reader.lines().map(String::trim).filter(line -> !line.isEmpty()).map(Paths::get).collect(Collectors.toList());
+		}
+		int globStart = indexOfGlobCharacter(input);
+		if (globStart >= 0) {
+			// walk from the deepest directory without glob character
+			int baseEnd = Math.max(input.lastIndexOf('/', globStart), input.lastIndexOf('\\', globStart));
+			Path base = baseEnd < 0 ? Paths.get("") : Paths.get(input.substring(0, baseEnd + 1));
+			if (!Files.isDirectory(base)) {
+				return List.of();
+			}
+			PathMatcher matcher = base.getFileSystem().getPathMatcher("glob:" + input);
+			try (Stream<Path> paths = Files.walk(base)) {
+				return paths.filter(Files::isRegularFile).filter(matcher::matches).sorted().collect(Collectors.toList());
+			}
+		}
+		Path path = Paths.get(input);
+		if (Files.isDirectory(path)) {
+			try (Stream<Path> paths = Files.walk(path)) {
+				return paths.filter(Files::isRegularFile)
+						.filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(XML_EXTENSION))
+						.sorted()
+						.collect(Collectors.toList());
+			}
+		}
+		return List.of(path);
+	}
+
+	private static int indexOfGlobCharacter(String input) {
+		for (int i = 0; i < input.length(); i++) {
+			if (GLOB_CHARACTERS.indexOf(input.charAt(i)) >= 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
 }
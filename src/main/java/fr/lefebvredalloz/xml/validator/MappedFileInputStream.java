@@ -0,0 +1,122 @@
+package eu.els.sie.xml.validation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stream over a memory-mapped file, the file is read by the parser from the page cache without being copied in the heap.
+ * The file is mapped by windows of {@link #WINDOW_SIZE} bytes, so that files larger than 2 GB can be read and
+ * the address space used at any time stays bounded.
+ */
+class MappedFileInputStream extends InputStream {
+
+	static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+	// below this size mapping the file costs more than reading it
+	static final long MAPPING_THRESHOLD = 1024L * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private final long windowSize;
+
+	// current window and its position in the file, null before the first read
+	private MappedByteBuffer window;
+	private long windowStart;
+
+	/**
+	 * @param channel channel of the file, closed with the stream
+	 * @param windowSize size of the mapped windows
+	 */
+	MappedFileInputStream(FileChannel channel, long windowSize) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Open a file, memory-mapped if it is large enough
+	 * @param file path of the file
+	 * @return a stream on the file content
+	 */
+	static InputStream open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			if (channel.size() < MAPPING_THRESHOLD) {
+				channel.close();
+				return Files.newInputStream(file);
+			}
+			return new MappedFileInputStream(channel, WINDOW_SIZE);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Map the next window once the current one has been read
+	 * @return false at the end of the file
+	 */
+	private boolean nextWindow() throws IOException {
+		if (window != null && window.hasRemaining()) {
+			return true;
+		}
+		long next = window == null ? 0 : windowStart + window.capacity();
+		if (next >= size) {
+			return false;
+		}
+		window = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(windowSize, size - next));
+		windowStart = next;
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return nextWindow() ? window.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextWindow()) {
+			return -1;
+		}
+		int count = Math.min(len, window.remaining());
+		window.get(b, off, count);
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long position = window == null ? 0 : windowStart + window.position();
+		long skipped = Math.max(0, Math.min(n, size - position));
+		if (window != null && skipped <= window.remaining()) {
+			window.position(window.position() + (int) skipped);
+		}
+		else if (skipped > 0) {
+			// map the window starting at the new position on the next read
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position + skipped, 0);
+			windowStart = position + skipped;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		long position = window == null ? 0 : windowStart + window.position();
+		return (int) Math.min(Integer.MAX_VALUE, size - position);
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the mapping is released when the buffer is collected
+		window = null;
+		channel.close();
+	}
+}
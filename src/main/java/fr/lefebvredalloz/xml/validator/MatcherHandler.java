@@ -0,0 +1,234 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.relaxng.match.Matcher;
+import com.thaiopensource.relaxng.match.NameClass;
+import com.thaiopensource.relaxng.sax.Context;
+import com.thaiopensource.xml.util.Name;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Validation of SAX events with a RELAX NG {@link Matcher}, as jing's own validator does, but with a matcher whose state
+ * can be copied and replaced between two events, and a location set by the caller so that recorded events can be replayed.
+ * It can also start inside an element context, to validate a fragment.
+ */
+class MatcherHandler extends Context implements ContentHandler {
+
+	// states of a content model walked to find if an element is allowed in it, the element is accepted beyond
+	private static final int MAX_CONTENT_STATES = 1000;
+
+	private Matcher matcher;
+	private ErrorHandler errorHandler;
+	private final String systemId;
+
+	private int lineNumber = -1;
+	private int columnNumber = -1;
+
+	// the text of an element whose content is a datatype is checked as a whole before its end tag
+	private boolean bufferingCharacters;
+	private final StringBuilder charBuffer = new StringBuilder();
+
+	// the element of a fragment is validated against its pattern, its position among its unknown siblings is not checked
+	private boolean ignoreNextStartTagOpen;
+	// the element of a fragment must still be allowed somewhere in the content of its parent
+	private boolean checkNextStartTagInContent;
+
+	MatcherHandler(Matcher matcher, ErrorHandler errorHandler, String systemId) {
+		this.matcher = matcher;
+		this.errorHandler = errorHandler;
+		this.systemId = systemId;
+	}
+
+	Matcher getMatcher() {
+		return matcher;
+	}
+
+	void setMatcher(Matcher matcher) {
+		this.matcher = matcher;
+	}
+
+	ErrorHandler getErrorHandler() {
+		return errorHandler;
+	}
+
+	void setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Set the location of the next event, reported with its errors
+	 */
+	void setLocation(int lineNumber, int columnNumber) {
+		this.lineNumber = lineNumber;
+		this.columnNumber = columnNumber;
+	}
+
+	/**
+	 * Start the validation inside the given elements, without their attributes : the errors of the context are not reported
+	 * @param ancestors names of the elements, the document element first
+	 * @param checkInContent true to report the next element when its parent does not allow it at any position,
+	 * false when its start tag has already been checked in the whole document
+	 */
+	void openContext(List<Name> ancestors, boolean checkInContent) {
+		matcher.matchStartDocument();
+		for (Name ancestor : ancestors) {
+			matcher.matchStartTagOpen(ancestor, ancestor.getLocalName(), this);
+			matcher.matchStartTagClose(ancestor, ancestor.getLocalName(), this);
+		}
+		ignoreNextStartTagOpen = !ancestors.isEmpty();
+		checkNextStartTagInContent = ignoreNextStartTagOpen && checkInContent;
+	}
+
+	/**
+	 * Walk the content model from the given state, following the elements it accepts, to find if the element is allowed
+	 * at any position. The elements matched by wildcards only are not followed.
+	 */
+	private boolean isAllowedInContent(Matcher start, Name name) {
+		Set<Matcher> visited = new HashSet<>();
+		Deque<Matcher> pending = new ArrayDeque<>();
+		visited.add(start);
+		pending.add(start);
+		while (!pending.isEmpty()) {
+			Matcher state = pending.remove();
+			NameClass names = state.possibleStartTagNames();
+			if (names.contains(name)) {
+				return true;
+			}
+			for (Name next : names.getIncludedNames()) {
+				// the element content is not known, the matcher recovers after its end tag
+				Matcher nextState = state.copy();
+				nextState.matchStartTagOpen(next, next.getLocalName(), this);
+				nextState.matchStartTagClose(next, next.getLocalName(), this);
+				nextState.matchEndTag(next, next.getLocalName(), this);
+				if (visited.add(nextState)) {
+					if (visited.size() > MAX_CONTENT_STATES) {
+						return true;
+					}
+					pending.add(nextState);
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check the buffered text before a start tag, so that the matcher state does not depend on pending text
+	 */
+	void flushCharacters() throws SAXException {
+		if (bufferingCharacters) {
+			bufferingCharacters = false;
+			check(matcher.matchTextBeforeStartTag(charBuffer.toString(), this));
+		}
+	}
+
+	private void check(boolean matched) throws SAXException {
+		if (!matched) {
+			reportError(matcher.getErrorMessage(), lineNumber, columnNumber);
+		}
+	}
+
+	/**
+	 * Report a validation error of the document at the given location
+	 */
+	void reportError(String message, int lineNumber, int columnNumber) throws SAXException {
+		errorHandler.error(new SAXParseException(message, null, systemId, lineNumber, columnNumber));
+	}
+
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		// the location is set by the caller for each event
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		check(matcher.matchStartDocument());
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		check(matcher.matchEndDocument());
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {
+		flushCharacters();
+		super.startPrefixMapping(prefix, uri);
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		flushCharacters();
+		Name name = new Name(uri, localName);
+		Matcher content = checkNextStartTagInContent ? matcher.copy() : null;
+		boolean matched = matcher.matchStartTagOpen(name, qName, this);
+		if (!ignoreNextStartTagOpen || (content != null && !matched && !isAllowedInContent(content, name))) {
+			check(matched);
+		}
+		ignoreNextStartTagOpen = false;
+		checkNextStartTagInContent = false;
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Name attributeName = new Name(attributes.getURI(i), attributes.getLocalName(i));
+			String attributeQName = attributes.getQName(i);
+			check(matcher.matchAttributeName(attributeName, attributeQName, this));
+			check(matcher.matchAttributeValue(attributes.getValue(i), attributeName, attributeQName, this));
+		}
+		check(matcher.matchStartTagClose(name, qName, this));
+		if (matcher.isTextTyped()) {
+			bufferingCharacters = true;
+			charBuffer.setLength(0);
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (bufferingCharacters) {
+			bufferingCharacters = false;
+			if (charBuffer.length() > 0) {
+				check(matcher.matchTextBeforeEndTag(charBuffer.toString(), new Name(uri, localName), qName, this));
+			}
+		}
+		check(matcher.matchEndTag(new Name(uri, localName), qName, this));
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (bufferingCharacters) {
+			charBuffer.append(ch, start, length);
+			return;
+		}
+		for (int i = start; i < start + length; i++) {
+			switch (ch[i]) {
+				case ' ':
+				case '\t':
+				case '\n':
+				case '\r':
+					break;
+				default:
+					check(matcher.matchUntypedText(this));
+					return;
+			}
+		}
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) {
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) {
+	}
+
+	@Override
+	public void skippedEntity(String name) {
+	}
+}
@@ -0,0 +1,64 @@
+package eu.els.sie.xml.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of the validation of one document against several schemas, one {@link ValidationResult} per schema
+ * in the order the schemas were given to the {@link MultiSchemaValidator}
+ */
+public final class MultiSchemaResult {
+
+	private final List<ValidationResult> results;
+
+	MultiSchemaResult(List<ValidationResult> results) {
+		this.results = Collections.unmodifiableList(results);
+	}
+
+	/**
+	 * @return true if the document is valid against every schema
+	 */
+	public boolean isValid() {
+		for (ValidationResult result : results) {
+			if (!result.isValid()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public List<ValidationResult> getResults() {
+		return results;
+	}
+
+	/**
+	 * @return the result for the given schema, null if the document was not validated against it
+	 */
+	public ValidationResult getResult(String schemaUri) {
+		for (ValidationResult result : results) {
+			if (schemaUri.equals(result.getSchemaUri())) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the results of the schemas the document is not valid against
+	 */
+	public List<ValidationResult> getFailures() {
+		List<ValidationResult> failures = new ArrayList<>();
+		for (ValidationResult result : results) {
+			if (!result.isValid()) {
+				failures.add(result);
+			}
+		}
+		return failures;
+	}
+
+	@Override
+	public String toString() {
+		return results.toString();
+	}
+}
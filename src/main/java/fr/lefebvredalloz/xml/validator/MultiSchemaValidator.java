@@ -0,0 +1,437 @@
+package eu.els.sie.xml.validation;
+
+import eu.els.sie.xml.validation.XmlValidationErrorHandler.LEVEL;
+import org.xml.sax.Attributes;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/**
+ * Validation of a document against several schemas in a single parse : the SAX events of the document
+ * are sent to the validators of all the schemas at once, so the cost is one parse plus the validators instead of one parse per schema.
+ * RNG, RNC, NVDL, Schematron, precompiled Schematron and XSD can be combined, DTD cannot as the DTD validation is done by the parser itself.
+ * Each schema keeps its own error policy : a schema whose error budget is used up stops receiving events, the others go on.
+ * <pre>
+ * MultiSchemaValidator validator = MultiSchemaValidator.forSchemas("cp:/path/to/model.rng", "cp:/path/to/rules.sch").build();
+ * MultiSchemaResult result = validator.check(xml);
+ * </pre>
+ */
+public class MultiSchemaValidator {
+
+	private final List<XmlValidator> validators;
+
+	// document parsers with the catalog resolver shared by the schemas
+	private final XMLReaderPool readers;
+
+	private MultiSchemaValidator(List<XmlValidator> validators, XMLReaderPool readers) {
+		this.validators = validators;
+		this.readers = readers;
+	}
+
+	/**
+	 * Start the configuration of a validator for several schemas
+	 * @param schemaUris URI of the schemas, they might use cp protocol
+	 */
+	public static Builder forSchemas(String... schemaUris) {
+		return forSchemas(Arrays.asList(schemaUris));
+	}
+
+	public static Builder forSchemas(List<String> schemaUris) {
+		return new Builder(schemaUris);
+	}
+
+	public List<String> getSchemaUris() {
+		List<String> schemaUris = new ArrayList<>();
+		for (XmlValidator validator : validators) {
+			schemaUris.add(validator.getSchemaUri());
+		}
+		return schemaUris;
+	}
+
+	/**
+	 * Validate a document against every schema in a single parse
+	 * @param xml XML document as a byte array
+	 * @return one result per schema
+	 * @throws XmlValidationException if the document cannot be read
+	 */
+	public MultiSchemaResult check(byte[] xml) throws XmlValidationException {
+		return check(new InputSource(new ByteArrayInputStream(xml)));
+	}
+
+	/**
+	 * @param xml XML document as a stream, it is not closed
+	 * @see #check(byte[])
+	 */
+	public MultiSchemaResult check(InputStream xml) throws XmlValidationException {
+		return check(new InputSource(xml));
+	}
+
+	/**
+	 * @param xml path of the XML document, memory-mapped when large
+	 * @see #check(byte[])
+	 */
+	public MultiSchemaResult check(Path xml) throws XmlValidationException {
+		try (InputStream inputStream = MappedFileInputStream.open(xml)) {
+			return check(XmlValidator.createInputSource(inputStream, xml));
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while reading input stream: %s", e));
+		}
+	}
+
+	private MultiSchemaResult check(InputSource xml) throws XmlValidationException {
+		List<Branch> branches = new ArrayList<>();
+		for (XmlValidator validator : validators) {
+			XmlValidationErrorHandler errorHandler = new XmlValidationErrorHandler(validator.getErrorPolicy(), validator.getSchemaUri());
+			try {
+				branches.add(new Branch(validator.getSchemaUri(), errorHandler, validator.getEngine().createHandler(xml.getSystemId(), errorHandler)));
+			} catch (SAXException e) {
+				throw new XmlValidationException(format("Error while creating validator for schema %s: %s", validator.getSchemaUri(), e));
+			}
+		}
+		TeeHandler tee = new TeeHandler(branches);
+		ValidationMetrics metrics = XmlValidator.getMetrics();
+		CountingInputStream counter = null;
+		if (metrics != ValidationMetrics.NOOP && xml.getByteStream() != null) {
+			counter = new CountingInputStream(xml.getByteStream());
+			xml.setByteStream(counter);
+		}
+		for (Branch branch : branches) {
+			metrics.validationStarted(branch.schemaUri, branch.grammar);
+		}
+		long start = System.nanoTime();
+		SAXException parseException = null;
+		XMLReader reader = null;
+		try {
+			reader = readers.borrow();
+			reader.setContentHandler(tee);
+			reader.setDTDHandler(tee);
+			reader.setErrorHandler(tee);
+			reader.setProperty(XMLReaderPool.LEXICAL_HANDLER, tee);
+			reader.parse(xml);
+		} catch (IOException e) {
+			long nanos = System.nanoTime() - start;
+			for (Branch branch : branches) {
+				metrics.validationFailed(branch.schemaUri, branch.grammar, nanos);
+			}
+			throw new XmlValidationException(format("Error while reading input stream: %s", e));
+		} catch (SAXException e) {
+			// not well formed document
+			parseException = e;
+		} finally {
+			if (reader != null) {
+				readers.release(reader);
+			}
+		}
+		// the schemas are validated by the same parse, they share its time
+		long nanos = System.nanoTime() - start;
+		List<ValidationResult> results = new ArrayList<>();
+		for (Branch branch : branches) {
+			ValidationResult result = branch.toResult(parseException);
+			metrics.validationCompleted(branch.schemaUri, branch.grammar, result, nanos, counter == null ? -1 : counter.getCount());
+			results.add(result);
+		}
+		return new MultiSchemaResult(results);
+	}
+
+	/**
+	 * Validation of the document against one of the schemas
+	 */
+	private static class Branch {
+		private final String schemaUri;
+		private final String grammar;
+		private final XmlValidationErrorHandler errorHandler;
+		private final ValidationHandler handler;
+
+		// exception which stopped this validation, null while it goes on
+		private SAXException stopped;
+
+		Branch(String schemaUri, XmlValidationErrorHandler errorHandler, ValidationHandler handler) {
+			this.schemaUri = schemaUri;
+			this.grammar = XmlValidator.getGrammar(schemaUri);
+			this.errorHandler = errorHandler;
+			this.handler = handler;
+		}
+
+		boolean isActive() {
+			return stopped == null;
+		}
+
+		ValidationResult toResult(SAXException parseException) {
+			ValidationReport report = errorHandler.getValidationReport();
+			if (errorHandler.getCount(LEVEL.FATAL) > 0) {
+				return ValidationResult.notWellFormed(schemaUri, format("XML is not well formed: %s", parseException), report);
+			}
+			if (stopped != null) {
+				return ValidationResult.invalid(schemaUri, format("XML is not valid: %s", stopped), report);
+			}
+			if (errorHandler.getCount(LEVEL.ERROR) > 0) {
+				return ValidationResult.invalid(schemaUri, format("XML is not valid against model: %s", schemaUri), report);
+			}
+			return ValidationResult.valid(schemaUri, report);
+		}
+	}
+
+	/**
+	 * Send a SAX event to the handlers of one validation
+	 */
+	@FunctionalInterface
+	private interface Event {
+		void send(Branch branch) throws SAXException;
+	}
+
+	/**
+	 * Send the events of the parser to every validation still going on, and the parser messages to all their reports
+	 */
+	private static class TeeHandler extends DefaultHandler2 {
+		private final List<Branch> branches;
+
+		TeeHandler(List<Branch> branches) {
+			this.branches = branches;
+		}
+
+		/**
+		 * The parse goes on once every validation is stopped, to tell a document which is not well formed from an invalid one
+		 */
+		private void send(Event event) {
+			for (Branch branch : branches) {
+				if (branch.isActive()) {
+					try {
+						event.send(branch);
+					} catch (SAXException e) {
+						branch.stopped = e;
+					}
+				}
+			}
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			for (Branch branch : branches) {
+				branch.handler.getContentHandler().setDocumentLocator(locator);
+			}
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			send(branch -> branch.handler.getContentHandler().startDocument());
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			send(branch -> branch.handler.getContentHandler().endDocument());
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			send(branch -> branch.handler.getContentHandler().startPrefixMapping(prefix, uri));
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			send(branch -> branch.handler.getContentHandler().endPrefixMapping(prefix));
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			send(branch -> branch.handler.getContentHandler().startElement(uri, localName, qName, attributes));
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			send(branch -> branch.handler.getContentHandler().endElement(uri, localName, qName));
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			send(branch -> branch.handler.getContentHandler().characters(ch, start, length));
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			send(branch -> branch.handler.getContentHandler().ignorableWhitespace(ch, start, length));
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) throws SAXException {
+			send(branch -> branch.handler.getContentHandler().processingInstruction(target, data));
+		}
+
+		@Override
+		public void skippedEntity(String name) throws SAXException {
+			send(branch -> branch.handler.getContentHandler().skippedEntity(name));
+		}
+
+		@Override
+		public void notationDecl(String name, String publicId, String systemId) throws SAXException {
+			send(branch -> {
+				DTDHandler dtdHandler = branch.handler.getDTDHandler();
+				if (dtdHandler != null) {
+					dtdHandler.notationDecl(name, publicId, systemId);
+				}
+			});
+		}
+
+		@Override
+		public void unparsedEntityDecl(String name, String publicId, String systemId, String notationName) throws SAXException {
+			send(branch -> {
+				DTDHandler dtdHandler = branch.handler.getDTDHandler();
+				if (dtdHandler != null) {
+					dtdHandler.unparsedEntityDecl(name, publicId, systemId, notationName);
+				}
+			});
+		}
+
+		@Override
+		public void startDTD(String name, String publicId, String systemId) throws SAXException {
+			sendLexical(lexicalHandler -> lexicalHandler.startDTD(name, publicId, systemId));
+		}
+
+		@Override
+		public void endDTD() throws SAXException {
+			sendLexical(LexicalHandler::endDTD);
+		}
+
+		@Override
+		public void startEntity(String name) throws SAXException {
+			sendLexical(lexicalHandler -> lexicalHandler.startEntity(name));
+		}
+
+		@Override
+		public void endEntity(String name) throws SAXException {
+			sendLexical(lexicalHandler -> lexicalHandler.endEntity(name));
+		}
+
+		@Override
+		public void startCDATA() throws SAXException {
+			sendLexical(LexicalHandler::startCDATA);
+		}
+
+		@Override
+		public void endCDATA() throws SAXException {
+			sendLexical(LexicalHandler::endCDATA);
+		}
+
+		@Override
+		public void comment(char[] ch, int start, int length) throws SAXException {
+			sendLexical(lexicalHandler -> lexicalHandler.comment(ch, start, length));
+		}
+
+		private void sendLexical(LexicalEvent event) throws SAXException {
+			send(branch -> {
+				LexicalHandler lexicalHandler = branch.handler.getLexicalHandler();
+				if (lexicalHandler != null) {
+					event.send(lexicalHandler);
+				}
+			});
+		}
+
+		@Override
+		public void warning(SAXParseException exception) throws SAXException {
+			for (Branch branch : branches) {
+				branch.errorHandler.warning(exception);
+			}
+		}
+
+		@Override
+		public void error(SAXParseException exception) throws SAXException {
+			send(branch -> branch.errorHandler.error(exception));
+		}
+
+		@Override
+		public void fatalError(SAXParseException exception) throws SAXException {
+			for (Branch branch : branches) {
+				branch.errorHandler.fatalError(exception);
+			}
+			throw exception;
+		}
+	}
+
+	@FunctionalInterface
+	private interface LexicalEvent {
+		void send(LexicalHandler lexicalHandler) throws SAXException;
+	}
+
+	/**
+	 * Configuration of a {@link MultiSchemaValidator}
+	 */
+	public static class Builder {
+		private final List<String> schemaUris;
+		private List<String> catalogPaths;
+		private SchemaCache schemaCache = SchemaCache.getDefault();
+		private ErrorPolicy errorPolicy;
+
+		private Builder(List<String> schemaUris) {
+			if (schemaUris.isEmpty()) {
+				throw new IllegalArgumentException("At least one schema is needed");
+			}
+			this.schemaUris = List.copyOf(schemaUris);
+		}
+
+		/**
+		 * @param catalogPaths list of catalogs without protocol, to be loaded with classLoader, used for all the schemas, may be null
+		 */
+		public Builder catalogs(List<String> catalogPaths) {
+			this.catalogPaths = catalogPaths == null ? null : List.copyOf(catalogPaths);
+			return this;
+		}
+
+		public Builder catalogs(String... catalogPaths) {
+			return catalogs(Arrays.asList(catalogPaths));
+		}
+
+		/**
+		 * @param schemaCache cache of compiled schemas, the {@link SchemaCache#getDefault() default cache} if not set
+		 */
+		public Builder schemaCache(SchemaCache schemaCache) {
+			this.schemaCache = Objects.requireNonNull(schemaCache, "schemaCache");
+			return this;
+		}
+
+		/**
+		 * @param errorPolicy handling of the validation errors of each schema, {@link ErrorPolicy#collectAll()} if not set
+		 */
+		public Builder errorPolicy(ErrorPolicy errorPolicy) {
+			this.errorPolicy = Objects.requireNonNull(errorPolicy, "errorPolicy");
+			return this;
+		}
+
+		/**
+		 * Resolve the catalogs and compile the schemas
+		 * @return an immutable validator that can be shared between threads
+		 * @throws XmlValidationException if a schema cannot be loaded or is a DTD
+		 */
+		public MultiSchemaValidator build() throws XmlValidationException {
+			List<XmlValidator> validators = new ArrayList<>();
+			for (String schemaUri : schemaUris) {
+				XmlValidator validator = XmlValidator.forSchema(schemaUri)
+						.catalogs(catalogPaths)
+						.schemaCache(schemaCache)
+						.errorPolicy(errorPolicy != null ? errorPolicy : ErrorPolicy.collectAll())
+						.build();
+				if (validator.getEngine() instanceof DtdValidationEngine) {
+					throw new XmlValidationException(format("DTD %s cannot share the parse of the document, it must be validated separately", schemaUri));
+				}
+				validators.add(validator);
+			}
+			return new MultiSchemaValidator(Collections.unmodifiableList(validators),
+					XMLReaderPool.forProperties(XmlValidator.createPropertyMap(catalogPaths)));
+		}
+	}
+}
@@ -0,0 +1,437 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.util.PropertyId;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.IncorrectSchemaException;
+import com.thaiopensource.validate.Option;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.auto.AutoSchemaReader;
+import com.thaiopensource.validate.auto.ReparseException;
+import com.thaiopensource.validate.auto.SchemaFuture;
+import com.thaiopensource.validate.auto.SchemaReceiver;
+import com.thaiopensource.validate.auto.SchemaReceiverFactory;
+import com.thaiopensource.validate.auto.SchemaReceiverLoader;
+import com.thaiopensource.xml.sax.CountingErrorHandler;
+import eu.els.sie.xml.validation.SchemaCache.SchemaKey;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.transform.sax.SAXSource;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.lang.String.format;
+
+/**
+ * Validation with a jing compiled NVDL schema. The NVDL rules and the schemas they reference are compiled once
+ * into an immutable schema shared by all the threads, as for the other jing grammars.
+ * An NVDL validator keeps the validators of the sections it has met (one per referenced schema, the Schematron ones
+ * with their XSLT transformer) and reuses them for the next sections : the NVDL validators are pooled with the compiled schema
+ * and reset after each document, so the section validators are created once per pooled validator instead of once per document,
+ * even by the validators created for a single document.
+ * The sections validated by a Schematron are built in memory, their size can be limited, see {@link XmlValidator.Builder#maxSectionSize(long)} :
+ * the Schematron schemas referenced by the NVDL rules are wrapped when they are compiled, so that their validators measure the sections they buffer.
+ * The other sections are validated as a stream and are not limited.
+ */
+class NvdlValidationEngine implements ValidationEngine {
+
+	private static final String NVDL_EXTENSION = ".nvdl";
+
+	private static final int MAX_POOLED_VALIDATORS = 2 * Runtime.getRuntime().availableProcessors();
+
+	// limit of the sections buffered by the Schematron validators, given to them with the validator properties
+	private static final PropertyId<SectionLimit> SECTION_LIMIT = PropertyId.newInstance("SECTION_LIMIT", SectionLimit.class);
+
+	private final PooledSchema schema;
+
+	// resources read to compile the schema
+	private final SchemaDependencies dependencies;
+
+	// document parsers with the catalog resolver
+	private final XMLReaderPool readers;
+
+	// estimated size after which a section buffered by a Schematron validator is not validated, 0 for no limit
+	private final long maxSectionSize;
+
+	private NvdlValidationEngine(PooledSchema schema, SchemaDependencies dependencies, PropertyMap propertyMap, long maxSectionSize) {
+		this.schema = schema;
+		this.dependencies = dependencies;
+		this.readers = XMLReaderPool.forProperties(propertyMap);
+		this.maxSectionSize = maxSectionSize;
+	}
+
+	/**
+	 * @return true if the schema is an NVDL schema, detected from its extension
+	 */
+	static boolean isNvdl(String schemaUri) {
+		return schemaUri.toLowerCase().endsWith(NVDL_EXTENSION);
+	}
+
+	/**
+	 * Create an engine for the NVDL schema, the compiled schema is taken from the cache when available
+	 * @param schemaUri URI of the NVDL schema
+	 * @param catalogPaths list of catalogs to be loaded with classLoader
+	 * @param schemaCache cache of compiled schemas
+	 * @param maxSectionSize estimated size in bytes after which a section buffered by a Schematron validator is not validated, 0 for no limit
+	 */
+	static NvdlValidationEngine create(String schemaUri, List<String> catalogPaths, SchemaCache schemaCache, long maxSectionSize) throws XmlValidationException {
+		PropertyMap propertyMap = XmlValidator.createPropertyMap(catalogPaths);
+		SchemaCache.CompiledSchema compiledSchema = schemaCache.getCompiledSchema(new SchemaKey(PooledSchema.class, schemaUri, catalogPaths, propertyMap),
+				key -> new PooledSchema(loadSchema(key.getSchemaUri(), propertyMap), propertyMap));
+		return new NvdlValidationEngine(compiledSchema.getSchema(), compiledSchema.getDependencies(), propertyMap, maxSectionSize);
+	}
+
+	/**
+	 * Compile the NVDL schema, the Schematron schemas it references are wrapped to limit the size of their sections
+	 */
+	private static Schema loadSchema(String schemaUri, PropertyMap propertyMap) throws XmlValidationException {
+		// the factory is given to the schema readers of the schemas referenced by the NVDL rules
+		return JingValidationEngine.loadSchema(schemaUri, new AutoSchemaReader(new BufferedSectionReceiverFactory()), propertyMap);
+	}
+
+	@Override
+	public String getOptions() {
+		// a limited section is reported as an error instead of being validated
+		return maxSectionSize == 0 ? "" : format("maxSectionSize=%d", maxSectionSize);
+	}
+
+	@Override
+	public SchemaDependencies getDependencies() {
+		return dependencies;
+	}
+
+	@Override
+	public boolean validate(InputSource xml, XmlValidationErrorHandler errorHandler) throws IOException, SAXException {
+		CountingErrorHandler countingErrorHandler = new CountingErrorHandler(errorHandler);
+		PooledValidator validator = schema.borrow();
+		validator.errorHandler.target = countingErrorHandler;
+		validator.sectionLimit.maxSectionSize = maxSectionSize;
+		XMLReader reader = readers.borrow();
+		errorHandler.continueParsingOnAbort(reader);
+		boolean completed = false;
+		try {
+			reader.setErrorHandler(countingErrorHandler);
+			reader.setContentHandler(validator.validator.getContentHandler());
+			DTDHandler dtdHandler = validator.validator.getDTDHandler();
+			if (dtdHandler != null) {
+				reader.setDTDHandler(dtdHandler);
+			}
+			reader.parse(xml);
+			completed = true;
+		} finally {
+			readers.release(reader);
+			validator.errorHandler.target = null;
+			// a validator stopped in the middle of a document is dropped, its sections may not be released properly
+			if (completed && !errorHandler.isAborted()) {
+				schema.release(validator);
+			}
+		}
+		return !countingErrorHandler.getHadErrorOrFatalError();
+	}
+
+	@Override
+	public ValidationHandler createHandler(String systemId, XmlValidationErrorHandler errorHandler) {
+		PropertyMapBuilder instancePropertyMapBuilder = new PropertyMapBuilder(schema.propertyMap);
+		instancePropertyMapBuilder.put(ValidateProperty.ERROR_HANDLER, errorHandler);
+		instancePropertyMapBuilder.put(SECTION_LIMIT, new SectionLimit(maxSectionSize));
+		Validator validator = schema.schema.createValidator(instancePropertyMapBuilder.toPropertyMap());
+		return new ValidationHandler(validator.getContentHandler(), validator.getDTDHandler(), null);
+	}
+
+	/**
+	 * Compiled NVDL schema with its pool of validators, cached as a whole by the schema cache
+	 */
+	private static final class PooledSchema {
+		private final Schema schema;
+		// schema properties without error handler, the error handler is set for each validation
+		private final PropertyMap propertyMap;
+		private final BlockingQueue<PooledValidator> validators = new ArrayBlockingQueue<>(MAX_POOLED_VALIDATORS);
+
+		PooledSchema(Schema schema, PropertyMap propertyMap) {
+			this.schema = schema;
+			this.propertyMap = propertyMap;
+		}
+
+		PooledValidator borrow() {
+			PooledValidator validator = validators.poll();
+			return validator != null ? validator : new PooledValidator(this);
+		}
+
+		void release(PooledValidator validator) {
+			validator.validator.reset();
+			// the validator is dropped if the pool is full
+			validators.offer(validator);
+		}
+	}
+
+	/**
+	 * NVDL validator created with an error handler and a section limit which can be changed between two documents
+	 */
+	private static final class PooledValidator {
+		private final SwitchableErrorHandler errorHandler = new SwitchableErrorHandler();
+		private final SectionLimit sectionLimit = new SectionLimit(0);
+		private final Validator validator;
+
+		PooledValidator(PooledSchema schema) {
+			PropertyMapBuilder instancePropertyMapBuilder = new PropertyMapBuilder(schema.propertyMap);
+			instancePropertyMapBuilder.put(ValidateProperty.ERROR_HANDLER, errorHandler);
+			instancePropertyMapBuilder.put(SECTION_LIMIT, sectionLimit);
+			this.validator = schema.schema.createValidator(instancePropertyMapBuilder.toPropertyMap());
+		}
+	}
+
+	/**
+	 * Error handler of a pooled validator and of its section validators, forwarding to the handler of the current document
+	 */
+	private static final class SwitchableErrorHandler implements ErrorHandler {
+		private ErrorHandler target;
+
+		@Override
+		public void warning(SAXParseException exception) throws SAXException {
+			target.warning(exception);
+		}
+
+		@Override
+		public void error(SAXParseException exception) throws SAXException {
+			target.error(exception);
+		}
+
+		@Override
+		public void fatalError(SAXParseException exception) throws SAXException {
+			target.fatalError(exception);
+		}
+	}
+
+	/**
+	 * Maximum estimated size of the sections buffered by the Schematron validators of an NVDL validator, 0 for no limit
+	 */
+	private static final class SectionLimit {
+		private long maxSectionSize;
+
+		SectionLimit(long maxSectionSize) {
+			this.maxSectionSize = maxSectionSize;
+		}
+	}
+
+	/**
+	 * Schema readers of the schemas referenced by the NVDL rules, the Schematron schemas are wrapped to limit their sections
+	 */
+	private static final class BufferedSectionReceiverFactory implements SchemaReceiverFactory {
+		private final SchemaReceiverFactory factory = new SchemaReceiverLoader();
+
+		@Override
+		public SchemaReceiver createSchemaReceiver(String namespaceUri, PropertyMap properties) {
+			SchemaReceiver receiver = factory.createSchemaReceiver(namespaceUri, properties);
+			if (receiver == null || !(SchematronCompiler.ISO_SCHEMATRON_NS_URI.equals(namespaceUri) || SchematronCompiler.SCHEMATRON_1_5_NS_URI.equals(namespaceUri))) {
+				return receiver;
+			}
+			return xmlReader -> {
+				SchemaFuture schemaFuture;
+				try {
+					schemaFuture = receiver.installHandlers(xmlReader);
+				} catch (ReparseException e) {
+					// the Schematron schema readers parse the schema document again themselves
+					throw new ReparseException() {
+						@Override
+						public Schema reparse(SAXSource source) throws IncorrectSchemaException, SAXException, IOException {
+							return new BufferedSectionSchema(e.reparse(source));
+						}
+					};
+				}
+				return new SchemaFuture() {
+					@Override
+					public Schema getSchema() throws IncorrectSchemaException, SAXException, IOException {
+						return new BufferedSectionSchema(schemaFuture.getSchema());
+					}
+
+					@Override
+					public RuntimeException unwrapException(RuntimeException e) throws SAXException, IOException, IncorrectSchemaException {
+						return schemaFuture.unwrapException(e);
+					}
+				};
+			};
+		}
+
+		@Override
+		public Option getOption(String uri) {
+			return factory.getOption(uri);
+		}
+	}
+
+	/**
+	 * Schematron schema whose validators stop when a section gets larger than the limit of the NVDL validator
+	 */
+	private static final class BufferedSectionSchema implements Schema {
+		private final Schema schema;
+
+		BufferedSectionSchema(Schema schema) {
+			this.schema = schema;
+		}
+
+		@Override
+		public Validator createValidator(PropertyMap properties) {
+			Validator validator = schema.createValidator(properties);
+			SectionLimit sectionLimit = properties.get(SECTION_LIMIT);
+			if (sectionLimit == null) {
+				return validator;
+			}
+			return new BufferedSectionValidator(validator, properties.get(ValidateProperty.ERROR_HANDLER), sectionLimit);
+		}
+
+		@Override
+		public PropertyMap getProperties() {
+			return schema.getProperties();
+		}
+	}
+
+	/**
+	 * Schematron validator whose content handler is wrapped by a {@link SectionSizeLimiter}
+	 */
+	private static final class BufferedSectionValidator implements Validator {
+		private final Validator validator;
+		private final ErrorHandler errorHandler;
+		private final SectionLimit sectionLimit;
+		// the Schematron validator gets a new content handler when it is reset
+		private ContentHandler contentHandler;
+
+		BufferedSectionValidator(Validator validator, ErrorHandler errorHandler, SectionLimit sectionLimit) {
+			this.validator = validator;
+			this.errorHandler = errorHandler;
+			this.sectionLimit = sectionLimit;
+		}
+
+		@Override
+		public ContentHandler getContentHandler() {
+			if (contentHandler == null) {
+				contentHandler = new SectionSizeLimiter(validator.getContentHandler(), errorHandler, sectionLimit);
+			}
+			return contentHandler;
+		}
+
+		@Override
+		public DTDHandler getDTDHandler() {
+			return validator.getDTDHandler();
+		}
+
+		@Override
+		public void reset() {
+			validator.reset();
+			contentHandler = null;
+		}
+	}
+
+	/**
+	 * Estimate the size of the section given to a Schematron validator, which builds it in memory,
+	 * and stop the validation when it gets larger than the limit
+	 */
+	private static final class SectionSizeLimiter implements ContentHandler {
+		// estimated size of an element or attribute, without its names and value
+		private static final int NODE_SIZE = 64;
+
+		private final ContentHandler contentHandler;
+		private final ErrorHandler errorHandler;
+		private final SectionLimit sectionLimit;
+
+		private Locator locator;
+		private long sectionSize;
+
+		SectionSizeLimiter(ContentHandler contentHandler, ErrorHandler errorHandler, SectionLimit sectionLimit) {
+			this.contentHandler = contentHandler;
+			this.errorHandler = errorHandler;
+			this.sectionLimit = sectionLimit;
+		}
+
+		private void add(long size) throws SAXException {
+			long maxSectionSize = sectionLimit.maxSectionSize;
+			if (maxSectionSize == 0) {
+				return;
+			}
+			sectionSize += size;
+			if (sectionSize > maxSectionSize) {
+				String message = format("The section validated by a Schematron is larger than the limit of %d bytes, it is not validated", maxSectionSize);
+				if (errorHandler != null) {
+					errorHandler.error(new SAXParseException(message, locator));
+				}
+				// stops the parse, the document is invalid
+				throw new SAXException(message);
+			}
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+			contentHandler.setDocumentLocator(locator);
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			// each section is given to the validator as a document
+			sectionSize = 0;
+			contentHandler.startDocument();
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			contentHandler.endDocument();
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			contentHandler.startPrefixMapping(prefix, uri);
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			contentHandler.endPrefixMapping(prefix);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			long size = NODE_SIZE + 2L * qName.length();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				size += NODE_SIZE + 2L * (attributes.getQName(i).length() + attributes.getValue(i).length());
+			}
+			add(size);
+			contentHandler.startElement(uri, localName, qName, attributes);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			contentHandler.endElement(uri, localName, qName);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			add(2L * length);
+			contentHandler.characters(ch, start, length);
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			add(2L * length);
+			contentHandler.ignorableWhitespace(ch, start, length);
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) throws SAXException {
+			contentHandler.processingInstruction(target, data);
+		}
+
+		@Override
+		public void skippedEntity(String name) throws SAXException {
+			contentHandler.skippedEntity(name);
+		}
+	}
+}
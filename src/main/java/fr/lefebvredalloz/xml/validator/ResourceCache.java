@@ -0,0 +1,215 @@
+package eu.els.sie.xml.validation;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * Thread-safe, bounded LRU cache of the bytes of the resources read by the validations :
+ * schema modules, DTD, DTD fragments and entities. The {@code cp:} protocol looks up the resource in every jar
+ * of the class path, with this cache a resource is only read from the class path or the disk the first time it is used.
+ * The documents themselves are never cached.
+ */
+public class ResourceCache {
+
+	public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+	private static final ResourceCache DEFAULT_CACHE = new ResourceCache(DEFAULT_MAX_BYTES);
+
+	// URIs opened by the current thread while a schema is compiled, see startRecording
+	private static final ThreadLocal<Set<String>> RECORDED_URIS = new ThreadLocal<>();
+
+	private final long maxBytes;
+
+	// resources larger than this are read every time, so that one big resource cannot flush the cache
+	private final long maxResourceBytes;
+
+	// access-ordered map, the eldest entry is the least recently used one
+	private final LinkedHashMap<String, byte[]> resources = new LinkedHashMap<>(64, 0.75f, true);
+
+	private long bytes;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	public ResourceCache(long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("Resource cache size must be at least 1 byte");
+		}
+		this.maxBytes = maxBytes;
+		this.maxResourceBytes = Math.max(1, maxBytes / 4);
+	}
+
+	/**
+	 * @return the cache used by the resolvers of every validator
+	 */
+	public static ResourceCache getDefault() {
+		return DEFAULT_CACHE;
+	}
+
+	/**
+	 * Open a resource, from the cache when it has already been read.
+	 * The resource is read outside the cache lock, two threads missing the same resource may both read it.
+	 * @param uri absolute URI of the resource
+	 * @return a stream on the resource content
+	 * @throws IOException if the resource cannot be read
+	 */
+	public InputStream open(String uri) throws IOException {
+		record(uri);
+		synchronized (resources) {
+			byte[] content = resources.get(uri);
+			if (content != null) {
+				hitCount++;
+				XmlValidator.getMetrics().resourceCacheHit(uri);
+				return new ByteArrayInputStream(content);
+			}
+			missCount++;
+		}
+		XmlValidator.getMetrics().resourceCacheMiss(uri);
+		byte[] content = read(uri);
+		if (content.length <= maxResourceBytes) {
+			put(uri, content);
+		}
+		return new ByteArrayInputStream(content);
+	}
+
+	/**
+	 * Get the content of a resource without counting a hit or a miss, from the cache when it has already been read
+	 * @param uri absolute URI of the resource
+	 * @throws IOException if the resource cannot be read
+	 */
+	byte[] getContent(String uri) throws IOException {
+		synchronized (resources) {
+			byte[] content = resources.get(uri);
+			if (content != null) {
+				return content;
+			}
+		}
+		return read(uri);
+	}
+
+	/**
+	 * Start recording the URIs of the resources opened by the current thread, from any resource cache
+	 * @return the recorded URIs, in the order they are opened
+	 */
+	static Set<String> startRecording() {
+		Set<String> recordedUris = new LinkedHashSet<>();
+		RECORDED_URIS.set(recordedUris);
+		return recordedUris;
+	}
+
+	static void stopRecording() {
+		RECORDED_URIS.remove();
+	}
+
+	/**
+	 * Record a resource read by the current thread, if the thread is recording
+	 */
+	static void record(String uri) {
+		Set<String> recordedUris = RECORDED_URIS.get();
+		if (recordedUris != null) {
+			recordedUris.add(uri);
+		}
+	}
+
+	private static byte[] read(String uri) throws IOException {
+		try (InputStream inputStream = new URL(uri).openStream()) {
+			// the cp: protocol gives no stream for a missing resource
+			if (inputStream == null) {
+				throw new FileNotFoundException(uri);
+			}
+			return inputStream.readAllBytes();
+		}
+	}
+
+	private void put(String uri, byte[] content) {
+		synchronized (resources) {
+			byte[] previous = resources.put(uri, content);
+			bytes += content.length - (previous == null ? 0 : previous.length);
+			Iterator<Map.Entry<String, byte[]>> eldest = resources.entrySet().iterator();
+			while (bytes > maxBytes && eldest.hasNext()) {
+				Map.Entry<String, byte[]> entry = eldest.next();
+				bytes -= entry.getValue().length;
+				eldest.remove();
+				evictionCount++;
+				XmlValidator.getMetrics().resourceCacheEviction(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Remove a resource, it will be read again by the next validation using it
+	 */
+	public void invalidate(String uri) {
+		synchronized (resources) {
+			byte[] previous = resources.remove(uri);
+			if (previous != null) {
+				bytes -= previous.length;
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (resources) {
+			resources.clear();
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * @return the number of cached resources
+	 */
+	public int size() {
+		synchronized (resources) {
+			return resources.size();
+		}
+	}
+
+	/**
+	 * @return the total size of the cached resources
+	 */
+	public long getBytes() {
+		synchronized (resources) {
+			return bytes;
+		}
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public long getHitCount() {
+		synchronized (resources) {
+			return hitCount;
+		}
+	}
+
+	public long getMissCount() {
+		synchronized (resources) {
+			return missCount;
+		}
+	}
+
+	public long getEvictionCount() {
+		synchronized (resources) {
+			return evictionCount;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (resources) {
+			return format("%d resources, %d bytes, %d hits, %d misses, %d evictions",
+					resources.size(), bytes, hitCount, missCount, evictionCount);
+		}
+	}
+}
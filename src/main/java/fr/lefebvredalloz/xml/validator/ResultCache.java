@@ -0,0 +1,376 @@
+package eu.els.sie.xml.validation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+
+/**
+ * Thread-safe cache of validation results, for the pipelines validating the same documents again and again.
+ * A result is identified by the SHA-256 hash of the document bytes and by the identity of the validator : schema URI,
+ * catalogs, error policy and fingerprint of the resources read to compile the schema (see {@link SchemaDependencies}).
+ * A schema whose files change gets a new fingerprint, the results of its previous version are never returned.
+ * The results are kept in a bounded LRU memory tier and, optionally, in a directory where they survive restarts.
+ * The directory is bounded too : when it holds more than the maximum number of results, the least recently used ones
+ * (oldest modification time, a result read from the directory is touched) are deleted. The count is kept by this instance,
+ * several instances sharing a directory may exceed the bound until one of them deletes the oldest results.
+ * <pre>
+ * ResultCache resultCache = new ResultCache(ResultCache.DEFAULT_MAX_ENTRIES, Paths.get("/var/cache/validation"));
+ * XmlValidator validator = XmlValidator.forSchema("cp:/path/to/model.rng").resultCache(resultCache).build();
+ * </pre>
+ */
+public class ResultCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+	public static final int DEFAULT_MAX_DISK_ENTRIES = 1_000_000;
+
+	private static final String RESULT_EXTENSION = ".result";
+
+	// the results read from the disk tier can only contain the classes of a validation result
+	private static final ObjectInputFilter RESULT_FILTER = ObjectInputFilter.Config.createFilter(
+			"maxdepth=10;eu.els.sie.xml.validation.*;java.lang.*;java.util.*;!*");
+
+	private final int maxEntries;
+
+	// directory of the disk tier, null to keep the results in memory only
+	private final Path directory;
+	private final int maxDiskEntries;
+
+	// number of results in the directory, -1 when not counted yet
+	private int diskEntries = -1;
+	private final Object diskLock = new Object();
+
+	// access-ordered map, the eldest entry is the least recently used one
+	private final Map<String, ValidationResult> results;
+
+	private long hitCount;
+	private long missCount;
+
+	/**
+	 * Create a cache keeping the results in memory only
+	 * @param maxEntries number of results kept in memory
+	 */
+	public ResultCache(int maxEntries) {
+		this(maxEntries, null);
+	}
+
+	/**
+	 * @param maxEntries number of results kept in memory
+	 * @param directory directory where the results are also written, read when they are not in memory, may be null
+	 */
+	public ResultCache(int maxEntries, Path directory) {
+		this(maxEntries, directory, DEFAULT_MAX_DISK_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries number of results kept in memory
+	 * @param directory directory where the results are also written, read when they are not in memory, may be null
+	 * @param maxDiskEntries number of results kept in the directory
+	 */
+	public ResultCache(int maxEntries, Path directory, int maxDiskEntries) {
+		if (maxEntries < 1 || maxDiskEntries < 1) {
+			throw new IllegalArgumentException("Result cache size must be at least 1");
+		}
+		this.maxEntries = maxEntries;
+		this.directory = directory;
+		this.maxDiskEntries = maxDiskEntries;
+		this.results = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ValidationResult> eldest) {
+				return size() > ResultCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param engineOptions options of the validation engine changing the results, see {@link ValidationEngine#getOptions()}
+	 * @return the identity of a validator, the first part of the keys of its results
+	 */
+	static String getSchemaIdentity(String schemaUri, List<String> catalogPaths, ErrorPolicy errorPolicy, String engineOptions,
+			SchemaDependencies dependencies) {
+		MessageDigest digest = SchemaDependencies.newSha256();
+		digest.update(format("%s\n%s\n%s\n%s\n%s", schemaUri, catalogPaths, errorPolicy, engineOptions, dependencies.getFingerprint())
+				.getBytes(StandardCharsets.UTF_8));
+		return SchemaDependencies.toHex(digest.digest());
+	}
+
+	/**
+	 * @return the hexadecimal SHA-256 hash of a document
+	 */
+	static String hash(byte[] xml) {
+		return SchemaDependencies.toHex(SchemaDependencies.newSha256().digest(xml));
+	}
+
+	/**
+	 * @param xml XML document as a stream, read to the end but not closed
+	 * @return the hexadecimal SHA-256 hash of a document
+	 */
+	static String hash(InputStream xml) throws IOException {
+		MessageDigest digest = SchemaDependencies.newSha256();
+		byte[] buffer = new byte[64 * 1024];
+		int read;
+		while ((read = xml.read(buffer)) != -1) {
+			digest.update(buffer, 0, read);
+		}
+		return SchemaDependencies.toHex(digest.digest());
+	}
+
+	/**
+	 * Get the result of a document, from the memory tier or else from the disk tier
+	 * @param schemaIdentity identity of the validator, see {@link #getSchemaIdentity}
+	 * @param documentHash hash of the document, see {@link #hash(byte[])}
+	 * @return the result, null if the document has not been validated yet
+	 */
+	ValidationResult get(String schemaIdentity, String documentHash) {
+		String key = schemaIdentity + '/' + documentHash;
+		synchronized (results) {
+			ValidationResult result = results.get(key);
+			if (result != null) {
+				hitCount++;
+				return result;
+			}
+		}
+		ValidationResult result = directory == null ? null : read(getFile(schemaIdentity, documentHash));
+		synchronized (results) {
+			if (result == null) {
+				missCount++;
+				return null;
+			}
+			hitCount++;
+			results.put(key, result);
+			return result;
+		}
+	}
+
+	/**
+	 * Keep the result of a document, in the memory tier and in the disk tier
+	 */
+	void put(String schemaIdentity, String documentHash, ValidationResult result) {
+		synchronized (results) {
+			results.put(schemaIdentity + '/' + documentHash, result);
+		}
+		if (directory != null) {
+			Path file = getFile(schemaIdentity, documentHash);
+			boolean added = !Files.exists(file);
+			if (write(file, result) && added) {
+				added();
+			}
+		}
+	}
+
+	/**
+	 * Count a result added to the directory, and delete the least recently used ones when there are too many.
+	 * A tenth of the results are deleted at once, so that the directory is not listed for each new result.
+	 */
+	private void added() {
+		synchronized (diskLock) {
+			if (diskEntries >= 0) {
+				diskEntries++;
+			}
+			else {
+				diskEntries = listDiskEntries().size();
+			}
+			if (diskEntries <= maxDiskEntries) {
+				return;
+			}
+			List<Path> files = listDiskEntries();
+			files.sort(Comparator.comparing(ResultCache::getLastModifiedTime));
+			int toDelete = files.size() - (maxDiskEntries - maxDiskEntries / 10);
+			for (int i = 0; i < toDelete; i++) {
+				try {
+					Files.deleteIfExists(files.get(i));
+				} catch (IOException e) {
+					logger.warn(format("Cannot delete the cached validation result %s: %s", files.get(i), e));
+				}
+			}
+			diskEntries = files.size() - Math.max(toDelete, 0);
+		}
+	}
+
+	private List<Path> listDiskEntries() {
+		if (!Files.isDirectory(directory)) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> files = Files.walk(directory, 2)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(RESULT_EXTENSION)).collect(Collectors.toCollection(ArrayList::new));
+		} catch (IOException | UncheckedIOException e) {
+			logger.warn(format("Cannot list the validation result directory %s: %s", directory, e));
+			return new ArrayList<>();
+		}
+	}
+
+	private static FileTime getLastModifiedTime(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			// deleted meanwhile, deleted again first
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private Path getFile(String schemaIdentity, String documentHash) {
+		return directory.resolve(schemaIdentity).resolve(documentHash + RESULT_EXTENSION);
+	}
+
+	/**
+	 * Read a result from the directory, its modification time is updated : the results read are the last ones deleted
+	 */
+	private static ValidationResult read(Path file) {
+		try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(file))) {
+			in.setObjectInputFilter(RESULT_FILTER);
+			ValidationResult result = (ValidationResult) in.readObject();
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return result;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			// an unreadable entry, written by another version for instance, is validated again and replaced
+			logger.warn(format("Cannot read the cached validation result %s: %s", file, e));
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the result has been written
+	 */
+	private static boolean write(Path file, ValidationResult result) {
+		try {
+			Files.createDirectories(file.getParent());
+			// written aside then moved, a concurrent reader never sees a partial entry
+			Path temporaryFile = Files.createTempFile(file.getParent(), null, ".tmp");
+			try (OutputStream outputStream = Files.newOutputStream(temporaryFile); ObjectOutputStream out = new ObjectOutputStream(outputStream)) {
+				out.writeObject(result);
+			}
+			try {
+				Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		} catch (IOException e) {
+			logger.warn(format("Cannot write the cached validation result %s: %s", file, e));
+			return false;
+		}
+	}
+
+	/**
+	 * Remove the results of a validator, from both tiers
+	 * @param schemaIdentity identity of the validator, see {@link #getSchemaIdentity}
+	 */
+	void invalidate(String schemaIdentity) {
+		synchronized (results) {
+			results.keySet().removeIf(key -> key.startsWith(schemaIdentity + '/'));
+		}
+		if (directory != null) {
+			delete(directory.resolve(schemaIdentity));
+			synchronized (diskLock) {
+				diskEntries = -1;
+			}
+		}
+	}
+
+	/**
+	 * Remove every result, from both tiers
+	 */
+	public void invalidateAll() {
+		synchronized (results) {
+			results.clear();
+		}
+		if (directory != null && Files.isDirectory(directory)) {
+			try (Stream<Path> schemaDirectories = Files.list(directory)) {
+				schemaDirectories.forEach(ResultCache::delete);
+			} catch (IOException e) {
+				logger.warn(format("Cannot clear the validation result directory %s: %s", directory, e));
+			}
+			synchronized (diskLock) {
+				diskEntries = -1;
+			}
+		}
+	}
+
+	private static void delete(Path schemaDirectory) {
+		if (!Files.isDirectory(schemaDirectory)) {
+			return;
+		}
+		try (Stream<Path> files = Files.walk(schemaDirectory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					logger.warn(format("Cannot delete the cached validation result %s: %s", file, e));
+				}
+			});
+		} catch (IOException e) {
+			logger.warn(format("Cannot delete the cached validation results %s: %s", schemaDirectory, e));
+		}
+	}
+
+	/**
+	 * @return the number of results in the memory tier
+	 */
+	public int size() {
+		synchronized (results) {
+			return results.size();
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public int getMaxDiskEntries() {
+		return maxDiskEntries;
+	}
+
+	/**
+	 * @return the directory of the disk tier, null if the results are kept in memory only
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public long getHitCount() {
+		synchronized (results) {
+			return hitCount;
+		}
+	}
+
+	public long getMissCount() {
+		synchronized (results) {
+			return missCount;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (results) {
+			return format("%d results, %d hits, %d misses", results.size(), hitCount, missCount);
+		}
+	}
+}
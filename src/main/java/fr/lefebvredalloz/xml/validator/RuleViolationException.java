@@ -0,0 +1,22 @@
+package eu.els.sie.xml.validation;
+
+import org.xml.sax.SAXParseException;
+
+/**
+ * Validation error raised by an identified rule (Schematron assert or report), the rule id is kept in the report
+ */
+class RuleViolationException extends SAXParseException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String ruleId;
+
+	RuleViolationException(String message, String ruleId, String systemId, int lineNumber, int columnNumber) {
+		super(message, null, systemId, lineNumber, columnNumber);
+		this.ruleId = ruleId;
+	}
+
+	String getRuleId() {
+		return ruleId;
+	}
+}
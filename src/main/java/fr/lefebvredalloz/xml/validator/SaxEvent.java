@@ -0,0 +1,84 @@
+package eu.els.sie.xml.validation;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * SAX event of a subtree with its location in the document, recorded to be hashed or replayed later, possibly on another thread
+ */
+final class SaxEvent {
+	static final int START_PREFIX_MAPPING = 0;
+	static final int END_PREFIX_MAPPING = 1;
+	static final int START_ELEMENT = 2;
+	static final int END_ELEMENT = 3;
+	static final int CHARACTERS = 4;
+
+	final int type;
+	final String uri;
+	final String localName;
+	final String qName;
+	final Attributes attributes;
+	final StringBuilder text;
+	final int line;
+	final int column;
+
+	SaxEvent(int type, String uri, String localName, String qName, Attributes attributes, StringBuilder text, int line, int column) {
+		this.type = type;
+		this.uri = uri;
+		this.localName = localName;
+		this.qName = qName;
+		this.attributes = attributes;
+		this.text = text;
+		this.line = line;
+		this.column = column;
+	}
+
+	void replay(ContentHandler handler) throws SAXException {
+		switch (type) {
+			case START_PREFIX_MAPPING:
+				handler.startPrefixMapping(localName, uri);
+				break;
+			case END_PREFIX_MAPPING:
+				handler.endPrefixMapping(localName);
+				break;
+			case START_ELEMENT:
+				handler.startElement(uri, localName, qName, attributes);
+				break;
+			case END_ELEMENT:
+				handler.endElement(uri, localName, qName);
+				break;
+			default:
+				char[] characters = text.toString().toCharArray();
+				handler.characters(characters, 0, characters.length);
+		}
+	}
+
+	void digest(MessageDigest digest) {
+		digest.update((byte) type);
+		update(digest, uri);
+		update(digest, localName);
+		update(digest, qName);
+		if (text != null) {
+			update(digest, text.toString());
+		}
+		if (attributes != null) {
+			for (int i = 0; i < attributes.getLength(); i++) {
+				update(digest, attributes.getURI(i));
+				update(digest, attributes.getLocalName(i));
+				update(digest, attributes.getQName(i));
+				update(digest, attributes.getValue(i));
+			}
+		}
+	}
+
+	static void update(MessageDigest digest, String value) {
+		if (value != null) {
+			digest.update(value.getBytes(StandardCharsets.UTF_8));
+		}
+		digest.update((byte) 0);
+	}
+}
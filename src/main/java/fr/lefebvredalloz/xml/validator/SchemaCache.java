@@ -0,0 +1,280 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.util.PropertyId;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.ValidateProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Thread-safe, bounded LRU cache of compiled schemas : jing {@link Schema} objects,
+ * {@link javax.xml.validation.Schema} objects for the XSD validated with JAXP
+ * and {@link javax.xml.transform.Templates} for the precompiled Schematron.
+ * A compiled schema is immutable and can create any number of cheap per-document validators,
+ * so a grammar only needs to be compiled once for a given URI, catalog list and set of schema properties.
+ * The resources read by each compilation are recorded (see {@link SchemaDependencies}) : a schema whose files
+ * have been modified on disk is compiled again the next time it is requested.
+ */
+public class SchemaCache {
+
+	public static final int DEFAULT_MAX_SIZE = 64;
+
+	private static final SchemaCache DEFAULT_CACHE = new SchemaCache(DEFAULT_MAX_SIZE);
+
+	/**
+	 * Compile a schema on cache miss
+	 */
+	@FunctionalInterface
+	public interface SchemaLoader<S> {
+		S load(SchemaKey key) throws XmlValidationException;
+	}
+
+	private final int maxSize;
+
+	// access-ordered map, the eldest entry is the least recently used one
+	private final Map<SchemaKey, CompiledSchema> schemas;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	public SchemaCache(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Schema cache size must be at least 1");
+		}
+		this.maxSize = maxSize;
+		this.schemas = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<SchemaKey, CompiledSchema> eldest) {
+				if (size() > SchemaCache.this.maxSize) {
+					evictionCount++;
+					String schemaUri = eldest.getKey().getSchemaUri();
+					XmlValidator.getMetrics().schemaCacheEviction(schemaUri, XmlValidator.getGrammar(schemaUri));
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return the cache shared by the static methods of {@link XmlValidator}
+	 */
+	public static SchemaCache getDefault() {
+		return DEFAULT_CACHE;
+	}
+
+	/**
+	 * Get the compiled schema for the key, compiling it with the loader if it is not cached yet.
+	 * The compilation is done outside the cache lock so that a slow grammar does not block
+	 * the validations using other schemas.
+	 * The type of the compiled schema is part of the key (see {@link SchemaKey#getSchemaType()}), the loader
+	 * must return an instance of this type.
+	 */
+	public <S> S getSchema(SchemaKey key, SchemaLoader<S> loader) throws XmlValidationException {
+		return getCompiledSchema(key, loader).getSchema();
+	}
+
+	/**
+	 * Get the compiled schema for the key with the resources read to compile it
+	 * @see #getSchema(SchemaKey, SchemaLoader)
+	 */
+	<S> CompiledSchema getCompiledSchema(SchemaKey key, SchemaLoader<S> loader) throws XmlValidationException {
+		ValidationMetrics metrics = XmlValidator.getMetrics();
+		String grammar = XmlValidator.getGrammar(key.getSchemaUri());
+		CompiledSchema entry;
+		synchronized (schemas) {
+			entry = schemas.get(key);
+		}
+		// the files are checked outside the cache lock
+		if (entry != null && !entry.dependencies.isStale()) {
+			synchronized (schemas) {
+				hitCount++;
+			}
+			metrics.schemaCacheHit(key.getSchemaUri(), grammar);
+			return entry;
+		}
+		if (entry != null) {
+			// a file of the schema has been modified, its cached content and the compiled schema are outdated
+			synchronized (schemas) {
+				schemas.remove(key, entry);
+			}
+			for (String uri : entry.dependencies.getUris()) {
+				ResourceCache.getDefault().invalidate(uri);
+			}
+		}
+		synchronized (schemas) {
+			missCount++;
+		}
+		metrics.schemaCacheMiss(key.getSchemaUri(), grammar);
+		long start = System.nanoTime();
+		Set<String> uris = ResourceCache.startRecording();
+		uris.add(key.getSchemaUri());
+		Object schema;
+		try {
+			schema = key.getSchemaType().cast(loader.load(key));
+		} finally {
+			ResourceCache.stopRecording();
+		}
+		metrics.schemaLoaded(key.getSchemaUri(), grammar, System.nanoTime() - start);
+		entry = new CompiledSchema(schema, SchemaDependencies.of(uris, ResourceCache.getDefault()));
+		synchronized (schemas) {
+			// another thread may have compiled the same schema in the meantime, keep the first one
+			CompiledSchema existing = schemas.putIfAbsent(key, entry);
+			return existing != null ? existing : entry;
+		}
+	}
+
+	/**
+	 * Remove every compiled schema loaded from the given URI, whatever the catalogs and properties
+	 */
+	public void invalidate(String schemaUri) {
+		synchronized (schemas) {
+			schemas.keySet().removeIf(key -> key.getSchemaUri().equals(schemaUri));
+		}
+	}
+
+	public void invalidate(SchemaKey key) {
+		synchronized (schemas) {
+			schemas.remove(key);
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (schemas) {
+			schemas.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (schemas) {
+			return schemas.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		synchronized (schemas) {
+			return hitCount;
+		}
+	}
+
+	public long getMissCount() {
+		synchronized (schemas) {
+			return missCount;
+		}
+	}
+
+	public long getEvictionCount() {
+		synchronized (schemas) {
+			return evictionCount;
+		}
+	}
+
+	/**
+	 * A compiled schema with the resources read to compile it
+	 */
+	static final class CompiledSchema {
+		private final Object schema;
+		private final SchemaDependencies dependencies;
+
+		private CompiledSchema(Object schema, SchemaDependencies dependencies) {
+			this.schema = schema;
+			this.dependencies = dependencies;
+		}
+
+		@SuppressWarnings("unchecked")
+		<S> S getSchema() {
+			return (S) schema;
+		}
+
+		SchemaDependencies getDependencies() {
+			return dependencies;
+		}
+	}
+
+	/**
+	 * Identity of a compiled schema : type of compiled schema, schema URI, catalog list and schema properties.
+	 * The error handler and the resolver are not part of the identity : the first one changes for every call,
+	 * the second one is fully determined by the catalog list.
+	 */
+	public static final class SchemaKey {
+		private final Class<?> schemaType;
+		private final String schemaUri;
+		private final List<String> catalogPaths;
+		private final Map<PropertyId<?>, Object> properties;
+
+		/**
+		 * Key of a jing compiled {@link Schema}
+		 */
+		public SchemaKey(String schemaUri, List<String> catalogPaths, PropertyMap propertyMap) {
+			this(Schema.class, schemaUri, catalogPaths, propertyMap);
+		}
+
+		/**
+		 * @param schemaType type of the compiled schema, {@link Schema} for jing or {@link javax.xml.validation.Schema} for JAXP
+		 */
+		public SchemaKey(Class<?> schemaType, String schemaUri, List<String> catalogPaths, PropertyMap propertyMap) {
+			this.schemaType = Objects.requireNonNull(schemaType, "schemaType");
+			this.schemaUri = Objects.requireNonNull(schemaUri, "schemaUri");
+			this.catalogPaths = catalogPaths == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(catalogPaths));
+			this.properties = new HashMap<>();
+			if (propertyMap != null) {
+				for (int i = 0; i < propertyMap.size(); i++) {
+					PropertyId<?> propertyId = propertyMap.getKey(i);
+					if (!propertyId.equals(ValidateProperty.ERROR_HANDLER) && !propertyId.equals(ValidateProperty.RESOLVER)) {
+						properties.put(propertyId, propertyMap.get(propertyId));
+					}
+				}
+			}
+		}
+
+		public Class<?> getSchemaType() {
+			return schemaType;
+		}
+
+		public String getSchemaUri() {
+			return schemaUri;
+		}
+
+		public List<String> getCatalogPaths() {
+			return catalogPaths;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof SchemaKey)) {
+				return false;
+			}
+			SchemaKey other = (SchemaKey) o;
+			return schemaType.equals(other.schemaType)
+					&& schemaUri.equals(other.schemaUri)
+					&& catalogPaths.equals(other.catalogPaths)
+					&& properties.equals(other.properties);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(schemaType, schemaUri, catalogPaths, properties);
+		}
+
+		@Override
+		public String toString() {
+			return schemaUri + " " + catalogPaths;
+		}
+	}
+}
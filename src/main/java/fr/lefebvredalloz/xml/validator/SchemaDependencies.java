@@ -0,0 +1,127 @@
+package eu.els.sie.xml.validation;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resources read to compile a schema : the schema itself, its modules, the XSLT and DTD it uses.
+ * The fingerprint is a hash of their URIs and contents, it changes whenever one of them changes, even between two runs.
+ * The resources read from the file system ({@code file:} URIs) are also watched through their modification time
+ * and size, so that a compiled schema can be recompiled when one of them is edited while the application runs.
+ */
+final class SchemaDependencies {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final List<String> uris;
+	private final String fingerprint;
+
+	// modification time and size of the resources read from the file system, when the schema was compiled
+	private final Map<Path, List<Long>> fileStates = new LinkedHashMap<>();
+
+	private SchemaDependencies(Collection<String> uris, ResourceCache resourceCache) {
+		this.uris = Collections.unmodifiableList(new ArrayList<>(uris));
+		for (String uri : uris) {
+			Path file = toFile(uri);
+			if (file != null) {
+				fileStates.put(file, getFileState(file));
+			}
+		}
+		// the file states are taken first, a resource changed while it is hashed makes the dependencies stale
+		MessageDigest digest = newSha256();
+		for (String uri : uris) {
+			digest.update(uri.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			try {
+				digest.update(resourceCache.getContent(uri));
+			} catch (IOException e) {
+				// the compilation did not need the content, a missing resource is still part of the fingerprint
+				digest.update((byte) 0);
+			}
+			digest.update((byte) 0);
+		}
+		this.fingerprint = toHex(digest.digest());
+	}
+
+	/**
+	 * @param uris URIs of the resources read by the compilation, the schema URI first
+	 * @param resourceCache cache of the resource contents
+	 */
+	static SchemaDependencies of(Collection<String> uris, ResourceCache resourceCache) {
+		return new SchemaDependencies(uris, resourceCache);
+	}
+
+	List<String> getUris() {
+		return uris;
+	}
+
+	/**
+	 * @return hexadecimal SHA-256 hash of the URIs and contents of the resources
+	 */
+	String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return true if a resource read from the file system has been modified, moved or deleted since the schema was compiled
+	 */
+	boolean isStale() {
+		for (Map.Entry<Path, List<Long>> fileState : fileStates.entrySet()) {
+			if (!getFileState(fileState.getKey()).equals(fileState.getValue())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Path toFile(String uri) {
+		if (!uri.startsWith("file:")) {
+			return null;
+		}
+		try {
+			return Paths.get(URI.create(uri));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static List<Long> getFileState(Path file) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return List.of(attributes.lastModifiedTime().toMillis(), attributes.size());
+		} catch (IOException e) {
+			return List.of();
+		}
+	}
+
+	static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+}
@@ -0,0 +1,173 @@
+package eu.els.sie.xml.validation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/**
+ * Warm-up of a set of schemas before the first real validation : the catalogs are parsed, the schemas are compiled
+ * into the schema cache, and sample documents are validated several times so that the classes of the whole toolchain
+ * (parser, jing, Saxon, resolvers) are loaded and their hot paths are compiled by the JIT.
+ * Without sample documents a small synthetic document is used, it is usually not valid but goes through the same code.
+ * <pre>
+ * List&lt;XmlValidator&gt; validators = SchemaWarmup.forSchemas("cp:/path/to/model.rng", "cp:/path/to/rules.sch").run();
+ * </pre>
+ */
+public class SchemaWarmup {
+
+	private static final Logger logger = LoggerFactory.getLogger(SchemaWarmup.class);
+
+	public static final int DEFAULT_ITERATIONS = 100;
+
+	private static final byte[] SYNTHETIC_DOCUMENT = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<warmup id=\"w1\" xml:lang=\"en\">\n"
+			+ "  <title>Warm-up</title>\n"
+			+ "  <p>Synthetic document validated before the first request</p>\n"
+			+ "</warmup>\n").getBytes(StandardCharsets.UTF_8);
+
+	private final List<String> schemaUris;
+	private final List<String> catalogPaths;
+	private final SchemaCache schemaCache;
+	private final List<byte[]> samples;
+	private final int iterations;
+
+	private SchemaWarmup(Builder builder) {
+		this.schemaUris = builder.schemaUris;
+		this.catalogPaths = builder.catalogPaths;
+		this.schemaCache = builder.schemaCache;
+		this.samples = builder.samples.isEmpty() ? List.of(SYNTHETIC_DOCUMENT) : List.copyOf(builder.samples);
+		this.iterations = builder.iterations;
+	}
+
+	/**
+	 * Start the configuration of a warm-up
+	 * @param schemaUris URI of the schemas, they might use cp protocol
+	 */
+	public static Builder forSchemas(String... schemaUris) {
+		return forSchemas(Arrays.asList(schemaUris));
+	}
+
+	public static Builder forSchemas(List<String> schemaUris) {
+		return new Builder(schemaUris);
+	}
+
+	public List<String> getSchemaUris() {
+		return schemaUris;
+	}
+
+	/**
+	 * Compile every schema and validate the samples against each of them
+	 * @return the validators of the schemas, in the order of the schemas
+	 * @throws XmlValidationException if a catalog or a schema cannot be loaded
+	 */
+	public List<XmlValidator> run() throws XmlValidationException {
+		long start = System.nanoTime();
+		List<XmlValidator> validators = new ArrayList<>();
+		for (String schemaUri : schemaUris) {
+			validators.add(XmlValidator.forSchema(schemaUri).catalogs(catalogPaths).schemaCache(schemaCache).build());
+		}
+		long compiled = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			for (byte[] sample : samples) {
+				try {
+					XmlValidator.checkXmlWellFormedness(sample);
+				} catch (XmlValidationException e) {
+					// the validations below go through the same parse
+				}
+				for (XmlValidator validator : validators) {
+					// the validity of the samples does not matter
+					validator.check(sample);
+				}
+			}
+		}
+		long end = System.nanoTime();
+		logger.info(format(Locale.ROOT, "%d schemas compiled in %.3f s and warmed up with %d validations in %.3f s",
+				validators.size(), (compiled - start) / 1e9, iterations * samples.size() * validators.size(), (end - compiled) / 1e9));
+		return Collections.unmodifiableList(validators);
+	}
+
+	/**
+	 * Configuration of a {@link SchemaWarmup}
+	 */
+	public static class Builder {
+		private final List<String> schemaUris;
+		private List<String> catalogPaths;
+		private SchemaCache schemaCache = SchemaCache.getDefault();
+		private final List<byte[]> samples = new ArrayList<>();
+		private int iterations = DEFAULT_ITERATIONS;
+
+		private Builder(List<String> schemaUris) {
+			this.schemaUris = List.copyOf(Objects.requireNonNull(schemaUris, "schemaUris"));
+		}
+
+		/**
+		 * @param catalogPaths list of catalogs without protocol, to be loaded with classLoader, may be null
+		 */
+		public Builder catalogs(List<String> catalogPaths) {
+			this.catalogPaths = catalogPaths == null ? null : List.copyOf(catalogPaths);
+			return this;
+		}
+
+		public Builder catalogs(String... catalogPaths) {
+			return catalogs(Arrays.asList(catalogPaths));
+		}
+
+		/**
+		 * @param schemaCache cache receiving the compiled schemas, the {@link SchemaCache#getDefault() default cache} if not set
+		 */
+		public Builder schemaCache(SchemaCache schemaCache) {
+			this.schemaCache = Objects.requireNonNull(schemaCache, "schemaCache");
+			return this;
+		}
+
+		/**
+		 * @param sample a representative document, validated against every schema during the warm-up
+		 */
+		public Builder sample(byte[] sample) {
+			samples.add(Objects.requireNonNull(sample, "sample"));
+			return this;
+		}
+
+		/**
+		 * @param sample path of a representative document, read once when the warm-up is configured
+		 */
+		public Builder sample(Path sample) throws IOException {
+			return sample(Files.readAllBytes(sample));
+		}
+
+		/**
+		 * @param iterations number of validations of each sample against each schema, {@link #DEFAULT_ITERATIONS} if not set,
+		 * 0 to only compile the schemas
+		 */
+		public Builder iterations(int iterations) {
+			if (iterations < 0) {
+				throw new IllegalArgumentException("The number of warm-up iterations cannot be negative");
+			}
+			this.iterations = iterations;
+			return this;
+		}
+
+		public SchemaWarmup build() {
+			return new SchemaWarmup(this);
+		}
+
+		/**
+		 * Shortcut for {@code build().run()}
+		 */
+		public List<XmlValidator> run() throws XmlValidationException {
+			return build().run();
+		}
+	}
+}
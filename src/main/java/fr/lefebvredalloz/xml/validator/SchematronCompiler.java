@@ -0,0 +1,164 @@
+package eu.els.sie.xml.validation;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Ahead of time compilation of a Schematron schema (ISO or 1.5) into its validation XSLT.
+ * The XSLT is generated by the meta-stylesheets of jing, as jing does when it compiles a Schematron schema,
+ * and written to a file : loading this artifact at startup skips the parsing of the schema and the generation step.
+ * <pre>
+ * SchematronCompiler.precompile("cp:/path/to/model.sch", Paths.get("model.sch.xsl"));
+ * XmlValidator validator = XmlValidator.forSchema(Paths.get("model.sch.xsl").toUri().toString()).build();
+ * </pre>
+ * The generated XSLT keeps the schema URI as base URI, the stylesheets included by the schema are resolved from there.
+ */
+public class SchematronCompiler {
+
+	/**
+	 * Extension of the precompiled Schematron artifacts, used by {@link XmlValidator.Builder#build()} to select
+	 * the {@link SchematronValidationEngine}
+	 */
+	public static final String PRECOMPILED_EXTENSION = ".sch.xsl";
+
+	static final String SAXON_TRANSFORMER_FACTORY = "net.sf.saxon.TransformerFactoryImpl";
+
+	private static final ClassLoader CLASS_LOADER = SchematronCompiler.class.getClassLoader();
+
+	static final String ISO_SCHEMATRON_NS_URI = "http://purl.oclc.org/dsdl/schematron";
+	static final String SCHEMATRON_1_5_NS_URI = "http://www.ascc.net/xml/schematron";
+
+	// meta-stylesheets and error namespace of jing
+	private static final String JING_RESOURCES = "com/thaiopensource/validate/schematron/resources/";
+	private static final String ISO_SCHEMATRON_STYLESHEET = JING_RESOURCES + "iso-schematron.xsl";
+	private static final String SCHEMATRON_1_5_STYLESHEET = JING_RESOURCES + "schematron.xsl";
+	private static final String JING_ERROR_NS_URI = "http://www.thaiopensource.com/ns/error";
+
+	static {
+		ClasspathProtocol.register();
+	}
+
+	private SchematronCompiler() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Compile a Schematron schema into its validation XSLT and write it to a file
+	 * @param schemaUri URI of the Schematron schema, it might use cp protocol
+	 * @param target file of the validation XSLT, named with the {@link #PRECOMPILED_EXTENSION} extension
+	 * @throws XmlValidationException if the schema cannot be read or is not correct, or if the file cannot be written
+	 */
+	public static void precompile(String schemaUri, Path target) throws XmlValidationException {
+		Document stylesheet = generate(schemaUri);
+		try (OutputStream outputStream = Files.newOutputStream(target)) {
+			newTransformerFactory().newTransformer().transform(new DOMSource(stylesheet), new StreamResult(outputStream));
+		} catch (IOException | TransformerException e) {
+			throw new XmlValidationException(format("Error while writing precompiled schema %s: %s", target, e));
+		}
+	}
+
+	/**
+	 * Compile a precompiled Schematron artifact
+	 * @param artifactUri URI of the validation XSLT written by {@link #precompile(String, Path)}
+	 * @return the compiled XSLT, it can be shared between threads
+	 */
+	static Templates load(String artifactUri) throws XmlValidationException {
+		try {
+			return newTransformerFactory().newTemplates(new StreamSource(artifactUri));
+		} catch (TransformerException e) {
+			throw new XmlValidationException(format("Error while parsing schema %s: %s", artifactUri, e));
+		}
+	}
+
+	static TransformerFactory newTransformerFactory() {
+		return TransformerFactory.newInstance(SAXON_TRANSFORMER_FACTORY, CLASS_LOADER);
+	}
+
+	/**
+	 * Apply the jing meta-stylesheet matching the Schematron version to the schema
+	 * @return the validation XSLT, with the schema URI as base URI
+	 */
+	private static Document generate(String schemaUri) throws XmlValidationException {
+		Document schema = parse(schemaUri);
+		String namespace = schema.getDocumentElement().getNamespaceURI();
+		String metaStylesheet;
+		if (ISO_SCHEMATRON_NS_URI.equals(namespace)) {
+			metaStylesheet = ISO_SCHEMATRON_STYLESHEET;
+		}
+		else if (SCHEMATRON_1_5_NS_URI.equals(namespace)) {
+			metaStylesheet = SCHEMATRON_1_5_STYLESHEET;
+		}
+		else {
+			throw new XmlValidationException(format("Not a Schematron schema: %s", schemaUri));
+		}
+
+		URL metaStylesheetUrl = CLASS_LOADER.getResource(metaStylesheet);
+		if (metaStylesheetUrl == null) {
+			throw new XmlValidationException(format("Schematron stylesheet not found in classpath: %s", metaStylesheet));
+		}
+		DOMResult result = new DOMResult();
+		try (InputStream inputStream = metaStylesheetUrl.openStream()) {
+			Transformer transformer = newTransformerFactory().newTransformer(new StreamSource(inputStream, metaStylesheetUrl.toString()));
+			transformer.transform(new DOMSource(schema, schemaUri), result);
+		} catch (IOException | TransformerException e) {
+			throw new XmlValidationException(format("Error while parsing schema %s: %s", schemaUri, e));
+		}
+
+		Document stylesheet = (Document) result.getNode();
+		List<String> errors = getErrors(stylesheet);
+		if (!errors.isEmpty()) {
+			throw new XmlValidationException(format("Error while parsing schema: %s %s", schemaUri, errors));
+		}
+		stylesheet.getDocumentElement().setAttributeNS(XMLConstants.XML_NS_URI, "xml:base", schemaUri);
+		return stylesheet;
+	}
+
+	private static Document parse(String schemaUri) throws XmlValidationException {
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			return factory.newDocumentBuilder().parse(schemaUri);
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while loading schema %s: %s", schemaUri, e));
+		} catch (SAXException | ParserConfigurationException e) {
+			throw new XmlValidationException(format("Error while parsing schema %s: %s", schemaUri, e));
+		}
+	}
+
+	/**
+	 * @return the errors reported by the meta-stylesheet in the generated XSLT (missing phase, rule, diagnostic...)
+	 */
+	private static List<String> getErrors(Document stylesheet) {
+		List<String> errors = new ArrayList<>();
+		NodeList errorElements = stylesheet.getElementsByTagNameNS(JING_ERROR_NS_URI, "*");
+		for (int i = 0; i < errorElements.getLength(); i++) {
+			Element error = (Element) errorElements.item(i);
+			errors.add(error.getAttribute("message") + " " + error.getAttribute("arg"));
+		}
+		return errors;
+	}
+}
@@ -0,0 +1,164 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.xml.sax.CountingErrorHandler;
+import eu.els.sie.xml.validation.SchemaCache.SchemaKey;
+import org.xml.sax.Attributes;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Validation with a Schematron schema precompiled by {@link SchematronCompiler}.
+ * The validation XSLT is compiled once and cached, each document is transformed with it and
+ * the failed assertions and successful reports of the output are reported as errors, as jing does.
+ */
+class SchematronValidationEngine implements ValidationEngine {
+
+	private final Templates templates;
+
+	// resources read to compile the schema
+	private final SchemaDependencies dependencies;
+
+	// document parsers with the catalog resolver
+	private final XMLReaderPool readers;
+
+	private SchematronValidationEngine(Templates templates, SchemaDependencies dependencies, PropertyMap propertyMap) {
+		this.templates = templates;
+		this.dependencies = dependencies;
+		this.readers = XMLReaderPool.forProperties(propertyMap);
+	}
+
+	/**
+	 * Create an engine for a precompiled Schematron, the compiled XSLT is taken from the cache when available
+	 * @param artifactUri URI of the validation XSLT written by {@link SchematronCompiler#precompile}
+	 * @param catalogPaths list of catalogs to be loaded with classLoader, used to parse the documents
+	 * @param schemaCache cache of compiled schemas
+	 */
+	static SchematronValidationEngine create(String artifactUri, List<String> catalogPaths, SchemaCache schemaCache) throws XmlValidationException {
+		PropertyMap propertyMap = XmlValidator.createPropertyMap(catalogPaths);
+		SchemaCache.CompiledSchema compiledSchema = schemaCache.getCompiledSchema(new SchemaKey(Templates.class, artifactUri, catalogPaths, propertyMap),
+				key -> SchematronCompiler.load(key.getSchemaUri()));
+		return new SchematronValidationEngine(compiledSchema.getSchema(), compiledSchema.getDependencies(), propertyMap);
+	}
+
+	@Override
+	public SchemaDependencies getDependencies() {
+		return dependencies;
+	}
+
+	@Override
+	public boolean validate(InputSource xml, XmlValidationErrorHandler errorHandler) throws IOException, SAXException {
+		CountingErrorHandler countingErrorHandler = new CountingErrorHandler(errorHandler);
+		XMLReader reader = readers.borrow();
+		reader.setErrorHandler(countingErrorHandler);
+		try {
+			templates.newTransformer().transform(new SAXSource(reader, xml), new SAXResult(new OutputHandler(countingErrorHandler)));
+		} catch (TransformerException e) {
+			Throwable cause = e.getException() != null ? e.getException() : e.getCause();
+			if (cause instanceof SAXException) {
+				throw (SAXException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new SAXException(e);
+		} finally {
+			readers.release(reader);
+		}
+		return !countingErrorHandler.getHadErrorOrFatalError();
+	}
+
+	@Override
+	public ValidationHandler createHandler(String systemId, XmlValidationErrorHandler errorHandler) throws SAXException {
+		try {
+			TransformerHandler transformerHandler = TransformerFactoryHolder.FACTORY.newTransformerHandler(templates);
+			transformerHandler.setSystemId(systemId);
+			transformerHandler.setResult(new SAXResult(new OutputHandler(errorHandler)));
+			return new ValidationHandler(transformerHandler, transformerHandler, transformerHandler);
+		} catch (TransformerConfigurationException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	/**
+	 * Saxon factory creating the transformer handlers, only loaded for the validations sharing a parse
+	 */
+	private static class TransformerFactoryHolder {
+		static final SAXTransformerFactory FACTORY = (SAXTransformerFactory) SchematronCompiler.newTransformerFactory();
+	}
+
+	/**
+	 * Report the failed-assertion and report elements of the validation XSLT output as errors
+	 */
+	private static class OutputHandler extends DefaultHandler {
+		private static final String FAILED_ASSERTION = "failed-assertion";
+		private static final String REPORT = "report";
+		private static final String STATEMENT = "statement";
+
+		private final ErrorHandler errorHandler;
+		private final StringBuilder statement = new StringBuilder();
+		private boolean inStatement;
+		private String ruleId;
+		private String systemId;
+		private int lineNumber;
+		private int columnNumber;
+
+		OutputHandler(ErrorHandler errorHandler) {
+			this.errorHandler = errorHandler;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if (FAILED_ASSERTION.equals(localName) || REPORT.equals(localName)) {
+				statement.setLength(0);
+				ruleId = attributes.getValue("", "id");
+				systemId = attributes.getValue("", "system-id");
+				lineNumber = toInteger(attributes.getValue("", "line-number"));
+				columnNumber = toInteger(attributes.getValue("", "column-number"));
+			}
+			else if (STATEMENT.equals(localName)) {
+				inStatement = true;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inStatement) {
+				statement.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (STATEMENT.equals(localName)) {
+				inStatement = false;
+			}
+			else if (FAILED_ASSERTION.equals(localName) || REPORT.equals(localName)) {
+				String prefix = FAILED_ASSERTION.equals(localName) ? "assertion failed: " : "report: ";
+				String message = prefix + statement.toString().trim().replaceAll("\\s+", " ");
+				errorHandler.error(new RuleViolationException(message, ruleId, systemId, lineNumber, columnNumber));
+			}
+		}
+
+		private static int toInteger(String value) {
+			try {
+				return value == null ? -1 : Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+	}
+}
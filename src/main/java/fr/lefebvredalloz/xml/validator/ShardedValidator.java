@@ -0,0 +1,602 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.relaxng.match.MatchablePattern;
+import com.thaiopensource.relaxng.match.Matcher;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.xml.util.Name;
+import eu.els.sie.xml.validation.SchemaCache.SchemaKey;
+import eu.els.sie.xml.validation.XmlValidationErrorHandler.LEVEL;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+import static java.lang.String.format;
+
+/**
+ * Parallel validation of a large document with a RELAX NG schema (XML or compact syntax).
+ * The document is parsed once, by the calling thread, and split into subtrees at the {@link Builder#splitDepth(int) split depth}
+ * (the children of the document element by default) or at the {@link Builder#splitAt(String...) split elements} :
+ * <ul>
+ * <li>the calling thread validates the document without the content of the subtrees : it only checks
+ * that each subtree element is allowed at its position</li>
+ * <li>the subtrees are validated in parallel, each against the pattern of its element in the context of its ancestors,
+ * as {@link FragmentValidator#check(byte[], List)} does</li>
+ * </ul>
+ * The errors are merged in document order, with the location they have in the whole document, then the error policy is applied.
+ * The subtrees must be independent : the schema must not choose between two patterns of the same element according to its content,
+ * and the ID/IDREF checks of the DTD compatibility annotations are not done.
+ * Only a limited number of subtree batches are waiting for a worker, so the document is never held in memory.
+ * <pre>
+ * ShardedValidator validator = ShardedValidator.forSchema("cp:/path/to/book.rng").splitAt("chapter").build();
+ * ValidationResult result = validator.check(Paths.get("huge-book.xml"));
+ * </pre>
+ */
+public class ShardedValidator {
+
+	public static final int DEFAULT_SPLIT_DEPTH = 2;
+	public static final int DEFAULT_BATCH_SIZE = 16 * 1024;
+
+	private static final String RNG_EXTENSION = ".rng";
+	private static final String RNC_EXTENSION = ".rnc";
+
+	private final String schemaUri;
+	private final ErrorPolicy errorPolicy;
+	private final int splitDepth;
+	private final Set<Name> splitElements;
+	private final Executor executor;
+	private final int maxInFlight;
+	private final int batchSize;
+
+	// document parsers with the catalog resolver
+	private final XMLReaderPool readers;
+
+	// the matcher states created by the same matcher share their memo tables : each thread uses its own matcher
+	private final ThreadLocal<Matcher> matchers;
+
+	private ShardedValidator(Builder builder, MatchablePattern pattern, PropertyMap propertyMap) {
+		this.schemaUri = builder.schemaUri;
+		this.errorPolicy = builder.errorPolicy;
+		this.splitDepth = builder.splitDepth;
+		this.splitElements = builder.splitElements;
+		this.executor = builder.executor;
+		this.maxInFlight = builder.maxInFlight;
+		this.batchSize = builder.batchSize;
+		this.readers = XMLReaderPool.forProperties(propertyMap);
+		this.matchers = ThreadLocal.withInitial(pattern::createMatcher);
+	}
+
+	/**
+	 * Start the configuration of a sharded validator
+	 * @param schemaUri URI of a RELAX NG schema, {@code .rng} or {@code .rnc}, it might use cp protocol
+	 */
+	public static Builder forSchema(String schemaUri) {
+		return new Builder(schemaUri);
+	}
+
+	public String getSchemaUri() {
+		return schemaUri;
+	}
+
+	/**
+	 * Validate a document, its subtrees in parallel
+	 * @param xml XML document as a byte array
+	 * @return the result, with the validation report
+	 * @throws XmlValidationException if the document cannot be read
+	 */
+	public ValidationResult check(byte[] xml) throws XmlValidationException {
+		return check(new InputSource(new ByteArrayInputStream(xml)), xml.length);
+	}
+
+	/**
+	 * @param xml XML document as a stream, it is not closed
+	 * @see #check(byte[])
+	 */
+	public ValidationResult check(InputStream xml) throws XmlValidationException {
+		return check(new InputSource(xml), -1);
+	}
+
+	/**
+	 * @param xml path of the XML document, memory-mapped when large
+	 * @see #check(byte[])
+	 */
+	public ValidationResult check(Path xml) throws XmlValidationException {
+		try (InputStream inputStream = MappedFileInputStream.open(xml)) {
+			InputSource inputSource = new InputSource(inputStream);
+			inputSource.setSystemId(xml.toUri().toString());
+			return check(inputSource, -1);
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while reading input stream: %s", e));
+		}
+	}
+
+	private ValidationResult check(InputSource xml, long documentBytes) throws XmlValidationException {
+		String grammar = XmlValidator.getGrammar(schemaUri);
+		ValidationMetrics metrics = XmlValidator.getMetrics();
+		metrics.validationStarted(schemaUri, grammar);
+		long start = System.nanoTime();
+		ValidationResult result = null;
+		try {
+			result = validate(xml);
+			return result;
+		} finally {
+			long nanos = System.nanoTime() - start;
+			if (result != null) {
+				metrics.validationCompleted(schemaUri, grammar, result, nanos, documentBytes);
+			}
+			else {
+				metrics.validationFailed(schemaUri, grammar, nanos);
+			}
+		}
+	}
+
+	private ValidationResult validate(InputSource xml) throws XmlValidationException {
+		ErrorCollector documentErrors = new ErrorCollector();
+		MatcherHandler matcherHandler = new MatcherHandler(matchers.get().start(), documentErrors, xml.getSystemId());
+		ShardHandler shardHandler = new ShardHandler(matcherHandler, xml.getSystemId());
+		SAXException parseException = null;
+		XMLReader reader = null;
+		try {
+			reader = readers.borrow();
+			reader.setContentHandler(shardHandler);
+			reader.setDTDHandler(matcherHandler);
+			reader.setErrorHandler(documentErrors);
+			reader.parse(xml);
+		} catch (IOException e) {
+			shardHandler.awaitBatches();
+			throw new XmlValidationException(format("Error while reading input stream: %s", e));
+		} catch (SAXException e) {
+			parseException = e;
+			shardHandler.submitPending();
+		} finally {
+			if (reader != null) {
+				readers.release(reader);
+			}
+		}
+		// the subtrees read before a well-formedness error are validated, as a single pass validation would
+		List<SAXParseException> errors = new ArrayList<>(documentErrors.errors);
+		for (ErrorCollector batchErrors : shardHandler.awaitBatches()) {
+			errors.addAll(batchErrors.errors);
+		}
+		errors.sort(Comparator.comparingInt(SAXParseException::getLineNumber).thenComparingInt(SAXParseException::getColumnNumber));
+
+		XmlValidationErrorHandler errorHandler = new XmlValidationErrorHandler(errorPolicy, schemaUri);
+		for (SAXParseException error : errors) {
+			if (documentErrors.fatalErrors.contains(error)) {
+				errorHandler.fatalError(error);
+				continue;
+			}
+			try {
+				errorHandler.error(error);
+			} catch (SAXParseException e) {
+				// validation stopped by the error policy
+				return ValidationResult.invalid(schemaUri, format("XML is not valid: %s", e), errorHandler.getValidationReport());
+			}
+		}
+		if (parseException != null) {
+			return ValidationResult.notWellFormed(schemaUri, format("XML is not well formed: %s", parseException), errorHandler.getValidationReport());
+		}
+		if (errorHandler.getCount(LEVEL.ERROR) > 0) {
+			return ValidationResult.invalid(schemaUri, format("XML is not valid against model: %s", schemaUri), errorHandler.getValidationReport());
+		}
+		return ValidationResult.valid(schemaUri, errorHandler.getValidationReport());
+	}
+
+	/**
+	 * Validate the subtrees of a batch on a worker thread
+	 */
+	private ErrorCollector validate(List<Subtree> batch, String systemId) {
+		ErrorCollector errors = new ErrorCollector();
+		Matcher matcher = matchers.get();
+		for (Subtree subtree : batch) {
+			MatcherHandler matcherHandler = new MatcherHandler(matcher.start(), errors, systemId);
+			matcherHandler.openContext(subtree.ancestors, false);
+			try {
+				for (String[] prefixMapping : subtree.prefixMappings) {
+					matcherHandler.startPrefixMapping(prefixMapping[0], prefixMapping[1]);
+				}
+				for (SaxEvent event : subtree.events) {
+					matcherHandler.setLocation(event.line, event.column);
+					event.replay(matcherHandler);
+				}
+			} catch (SAXException e) {
+				// the collector does not throw
+				throw new IllegalStateException(e);
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Subtree recorded by the parsing thread, with the context needed to validate it alone
+	 */
+	private static final class Subtree {
+		private final List<Name> ancestors;
+		private final List<String[]> prefixMappings;
+		private final List<SaxEvent> events = new ArrayList<>();
+
+		Subtree(List<Name> ancestors, List<String[]> prefixMappings) {
+			this.ancestors = ancestors;
+			this.prefixMappings = prefixMappings;
+		}
+	}
+
+	/**
+	 * Collect the errors of the document or of a batch of subtrees, to report them in document order
+	 */
+	private static final class ErrorCollector implements ErrorHandler {
+		private final List<SAXParseException> errors = new ArrayList<>();
+		private final Set<SAXParseException> fatalErrors = new HashSet<>();
+
+		@Override
+		public void warning(SAXParseException exception) {
+		}
+
+		@Override
+		public void error(SAXParseException exception) {
+			errors.add(exception);
+		}
+
+		@Override
+		public void fatalError(SAXParseException exception) {
+			errors.add(exception);
+			fatalErrors.add(exception);
+		}
+	}
+
+	/**
+	 * Send the events of the document to the matcher, except the content of the subtrees,
+	 * which are recorded and validated by the workers in batches
+	 */
+	private class ShardHandler implements ContentHandler {
+		private final MatcherHandler matcherHandler;
+		private final String systemId;
+		private final Semaphore inFlight = new Semaphore(maxInFlight);
+		private final List<CompletableFuture<ErrorCollector>> batches = new ArrayList<>();
+
+		private Locator locator;
+		// names of the open elements, outside the subtrees
+		private final List<Name> ancestors = new ArrayList<>();
+		// prefix mappings in scope, outside the subtrees
+		private final List<String[]> prefixMappings = new ArrayList<>();
+		// depth of the current subtree element, 0 when no subtree is recorded
+		private int subtreeDepth;
+		private int depth;
+		private Subtree subtree;
+		private List<Subtree> batch = new ArrayList<>();
+		private int batchEvents;
+
+		ShardHandler(MatcherHandler matcherHandler, String systemId) {
+			this.matcherHandler = matcherHandler;
+			this.systemId = systemId;
+		}
+
+		private int getLine() {
+			return locator == null ? -1 : locator.getLineNumber();
+		}
+
+		private int getColumn() {
+			return locator == null ? -1 : locator.getColumnNumber();
+		}
+
+		private void locate() {
+			matcherHandler.setLocation(getLine(), getColumn());
+		}
+
+		private boolean isSplit(Name name) {
+			return splitElements.isEmpty() ? depth == splitDepth : depth >= DEFAULT_SPLIT_DEPTH && splitElements.contains(name);
+		}
+
+		private void record(SaxEvent event) {
+			subtree.events.add(event);
+			batchEvents++;
+		}
+
+		/**
+		 * Hand the current batch to a worker, once the number of batches in flight allows it
+		 */
+		private void submitBatch() {
+			if (batch.isEmpty()) {
+				return;
+			}
+			List<Subtree> submitted = batch;
+			batch = new ArrayList<>();
+			batchEvents = 0;
+			inFlight.acquireUninterruptibly();
+			batches.add(CompletableFuture.supplyAsync(() -> validate(submitted, systemId), executor)
+					.whenComplete((errors, e) -> inFlight.release()));
+		}
+
+		/**
+		 * Hand the subtrees recorded before a well-formedness error to a worker, the last one included
+		 */
+		void submitPending() {
+			if (subtree != null) {
+				batch.add(subtree);
+				subtree = null;
+			}
+			submitBatch();
+		}
+
+		/**
+		 * Wait for the validation of every batch
+		 * @return the errors of each batch, in document order
+		 * @throws XmlValidationException if a worker failed
+		 */
+		List<ErrorCollector> awaitBatches() throws XmlValidationException {
+			List<ErrorCollector> errors = new ArrayList<>();
+			for (CompletableFuture<ErrorCollector> batchErrors : batches) {
+				try {
+					errors.add(batchErrors.join());
+				} catch (CompletionException e) {
+					throw new XmlValidationException(format("Unexpected error while validating a subtree: %s", e.getCause()));
+				}
+			}
+			return errors;
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			locate();
+			matcherHandler.startDocument();
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			submitBatch();
+			locate();
+			matcherHandler.endDocument();
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			if (subtree != null) {
+				record(new SaxEvent(SaxEvent.START_PREFIX_MAPPING, uri, prefix, null, null, null, getLine(), getColumn()));
+				return;
+			}
+			prefixMappings.add(new String[]{prefix, uri});
+			locate();
+			matcherHandler.startPrefixMapping(prefix, uri);
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			if (subtree != null) {
+				record(new SaxEvent(SaxEvent.END_PREFIX_MAPPING, null, prefix, null, null, null, getLine(), getColumn()));
+				return;
+			}
+			for (int i = prefixMappings.size() - 1; i >= 0; i--) {
+				if (prefixMappings.get(i)[0].equals(prefix)) {
+					prefixMappings.remove(i);
+					break;
+				}
+			}
+			locate();
+			matcherHandler.endPrefixMapping(prefix);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			depth++;
+			if (subtree == null) {
+				Name name = new Name(uri, localName);
+				if (!isSplit(name)) {
+					ancestors.add(name);
+					locate();
+					matcherHandler.startElement(uri, localName, qName, attributes);
+					return;
+				}
+				// the position of the element is checked here, its attributes and content by a worker
+				locate();
+				matcherHandler.flushCharacters();
+				Matcher matcher = matcherHandler.getMatcher();
+				if (!matcher.matchStartTagOpen(name, qName, matcherHandler)) {
+					matcherHandler.reportError(matcher.getErrorMessage(), getLine(), getColumn());
+				}
+				matcher.matchStartTagClose(name, qName, matcherHandler);
+				matcher.matchEndTag(name, qName, matcherHandler);
+				subtree = new Subtree(List.copyOf(ancestors), Collections.unmodifiableList(new ArrayList<>(prefixMappings)));
+				subtreeDepth = depth;
+			}
+			record(new SaxEvent(SaxEvent.START_ELEMENT, uri, localName, qName, new AttributesImpl(attributes), null, getLine(), getColumn()));
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (subtree != null) {
+				record(new SaxEvent(SaxEvent.END_ELEMENT, uri, localName, qName, null, null, getLine(), getColumn()));
+				if (depth == subtreeDepth) {
+					batch.add(subtree);
+					subtree = null;
+					if (batchEvents >= batchSize) {
+						submitBatch();
+					}
+				}
+			}
+			else {
+				ancestors.remove(ancestors.size() - 1);
+				locate();
+				matcherHandler.endElement(uri, localName, qName);
+			}
+			depth--;
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (subtree != null) {
+				List<SaxEvent> events = subtree.events;
+				SaxEvent last = events.get(events.size() - 1);
+				if (last.type == SaxEvent.CHARACTERS) {
+					last.text.append(ch, start, length);
+				}
+				else {
+					record(new SaxEvent(SaxEvent.CHARACTERS, null, null, null, null, new StringBuilder().append(ch, start, length), getLine(), getColumn()));
+				}
+			}
+			else {
+				locate();
+				matcherHandler.characters(ch, start, length);
+			}
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) {
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) {
+		}
+
+		@Override
+		public void skippedEntity(String name) {
+		}
+	}
+
+	/**
+	 * Configuration of a {@link ShardedValidator}
+	 */
+	public static class Builder {
+		private final String schemaUri;
+		private List<String> catalogPaths;
+		private SchemaCache schemaCache = SchemaCache.getDefault();
+		private ErrorPolicy errorPolicy = ErrorPolicy.collectAll();
+		private int splitDepth = DEFAULT_SPLIT_DEPTH;
+		private Set<Name> splitElements = Set.of();
+		private Executor executor = ForkJoinPool.commonPool();
+		private int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+		private int batchSize = DEFAULT_BATCH_SIZE;
+
+		private Builder(String schemaUri) {
+			this.schemaUri = Objects.requireNonNull(schemaUri, "schemaUri");
+		}
+
+		/**
+		 * @param catalogPaths list of catalogs without protocol, to be loaded with classLoader, may be null
+		 */
+		public Builder catalogs(List<String> catalogPaths) {
+			this.catalogPaths = catalogPaths == null ? null : List.copyOf(catalogPaths);
+			return this;
+		}
+
+		public Builder catalogs(String... catalogPaths) {
+			return catalogs(Arrays.asList(catalogPaths));
+		}
+
+		/**
+		 * @param schemaCache cache of compiled schemas, the {@link SchemaCache#getDefault() default cache} if not set
+		 */
+		public Builder schemaCache(SchemaCache schemaCache) {
+			this.schemaCache = Objects.requireNonNull(schemaCache, "schemaCache");
+			return this;
+		}
+
+		/**
+		 * @param errorPolicy handling of the validation errors, applied to the merged errors, {@link ErrorPolicy#collectAll()} if not set
+		 */
+		public Builder errorPolicy(ErrorPolicy errorPolicy) {
+			this.errorPolicy = Objects.requireNonNull(errorPolicy, "errorPolicy");
+			return this;
+		}
+
+		/**
+		 * @param splitDepth depth of the subtrees validated in parallel, {@link #DEFAULT_SPLIT_DEPTH} (the children
+		 * of the document element) if not set
+		 */
+		public Builder splitDepth(int splitDepth) {
+			if (splitDepth < 2) {
+				throw new IllegalArgumentException("The split depth must be at least 2");
+			}
+			this.splitDepth = splitDepth;
+			return this;
+		}
+
+		/**
+		 * Split the document at the given elements instead of a depth : each outermost element with one of these names,
+		 * below the document element, is validated in parallel
+		 * @param elementNames names of the elements, as {@code local} or {@code {namespace}local}
+		 */
+		public Builder splitAt(String... elementNames) {
+			Set<Name> names = new HashSet<>();
+			for (String elementName : elementNames) {
+				names.add(FragmentValidator.parseName(elementName));
+			}
+			this.splitElements = Set.copyOf(names);
+			return this;
+		}
+
+		/**
+		 * @param executor executor validating the subtrees, the common fork-join pool if not set
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = Objects.requireNonNull(executor, "executor");
+			return this;
+		}
+
+		/**
+		 * @param maxInFlight maximum number of batches of subtrees recorded and waiting for a worker or being validated,
+		 * twice the number of processors if not set
+		 */
+		public Builder maxInFlight(int maxInFlight) {
+			if (maxInFlight < 1) {
+				throw new IllegalArgumentException("At least one batch must be in flight");
+			}
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/**
+		 * @param batchSize number of SAX events after which the recorded subtrees are handed to a worker,
+		 * {@link #DEFAULT_BATCH_SIZE} if not set
+		 */
+		public Builder batchSize(int batchSize) {
+			if (batchSize < 1) {
+				throw new IllegalArgumentException("The batch size must be at least 1");
+			}
+			this.batchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * Resolve the catalogs and compile the schema
+		 * @throws XmlValidationException if the schema is not a RELAX NG schema or cannot be loaded
+		 */
+		public ShardedValidator build() throws XmlValidationException {
+			String lowerCaseUri = schemaUri.toLowerCase();
+			if (!lowerCaseUri.endsWith(RNG_EXTENSION) && !lowerCaseUri.endsWith(RNC_EXTENSION)) {
+				throw new XmlValidationException(format("Sharded validation is only supported with RELAX NG schemas: %s", schemaUri));
+			}
+			PropertyMap propertyMap = XmlValidator.createPropertyMap(catalogPaths);
+			MatchablePattern pattern = schemaCache.getSchema(new SchemaKey(MatchablePattern.class, schemaUri, catalogPaths, propertyMap),
+					key -> FragmentValidator.loadPattern(key.getSchemaUri(), propertyMap));
+			return new ShardedValidator(this, pattern, propertyMap);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package eu.els.sie.xml.validation;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+
+/**
+ * Validation of one document against a grammar whose state (compiled schema, parser factory...)
+ * has been resolved once when the engine was created.
+ * Implementations are immutable and can be shared between threads.
+ */
+interface ValidationEngine {
+
+	/**
+	 * @param xml the document to validate
+	 * @param errorHandler handler collecting the validation messages of this document
+	 * @return true if the document is valid
+	 * @throws XmlValidationException if the engine cannot be used to validate the document
+	 * @throws IOException if the document cannot be read
+	 * @throws SAXException if the validation has been aborted (fatal error or error handler exception)
+	 */
+	boolean validate(InputSource xml, XmlValidationErrorHandler errorHandler) throws XmlValidationException, IOException, SAXException;
+
+	/**
+	 * Create the handlers validating a document parsed by the caller, so that one parse feeds several validations
+	 * @param systemId system identifier of the document, may be null
+	 * @param errorHandler handler collecting the validation messages of this document
+	 * @return the handlers, null if the engine validates while parsing and cannot be fed with events (DTD)
+	 * @throws SAXException if the handlers cannot be created
+	 */
+	default ValidationHandler createHandler(String systemId, XmlValidationErrorHandler errorHandler) throws SAXException {
+		return null;
+	}
+
+	/**
+	 * @return the resources read to compile the schema, null if the schema is not compiled once for all the documents (DTD)
+	 */
+	default SchemaDependencies getDependencies() {
+		return null;
+	}
+
+	/**
+	 * @return the options of the engine changing the results of the documents, part of the identity of the cached results,
+	 * empty when the results only depend on the schema
+	 */
+	default String getOptions() {
+		return "";
+	}
+}
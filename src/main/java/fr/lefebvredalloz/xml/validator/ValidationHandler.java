@@ -0,0 +1,38 @@
+package eu.els.sie.xml.validation;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.ext.LexicalHandler;
+
+/**
+ * Handlers of a validation fed with the SAX events of a document parsed by the caller,
+ * see {@link ValidationEngine#createHandler(String, XmlValidationErrorHandler)}
+ */
+final class ValidationHandler {
+
+	private final ContentHandler contentHandler;
+	private final DTDHandler dtdHandler;
+	private final LexicalHandler lexicalHandler;
+
+	/**
+	 * @param dtdHandler receives the notations and unparsed entities, may be null
+	 * @param lexicalHandler receives the comments and DTD boundaries, may be null
+	 */
+	ValidationHandler(ContentHandler contentHandler, DTDHandler dtdHandler, LexicalHandler lexicalHandler) {
+		this.contentHandler = contentHandler;
+		this.dtdHandler = dtdHandler;
+		this.lexicalHandler = lexicalHandler;
+	}
+
+	ContentHandler getContentHandler() {
+		return contentHandler;
+	}
+
+	DTDHandler getDTDHandler() {
+		return dtdHandler;
+	}
+
+	LexicalHandler getLexicalHandler() {
+		return lexicalHandler;
+	}
+}
@@ -0,0 +1,92 @@
+package eu.els.sie.xml.validation;
+
+import eu.els.sie.xml.validation.XmlValidationErrorHandler.LEVEL;
+
+import java.io.Serializable;
+
+/**
+ * A message reported by the validation of a document, with its location in the document
+ */
+public final class ValidationIssue implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final LEVEL severity;
+	private final String message;
+	private final String systemId;
+	private final int lineNumber;
+	private final int columnNumber;
+	private final String source;
+	private final String ruleId;
+
+	ValidationIssue(LEVEL severity, String message, String systemId, int lineNumber, int columnNumber, String source, String ruleId) {
+		this.severity = severity;
+		this.message = message;
+		this.systemId = systemId;
+		this.lineNumber = lineNumber;
+		this.columnNumber = columnNumber;
+		this.source = source;
+		this.ruleId = ruleId;
+	}
+
+	public LEVEL getSeverity() {
+		return severity;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the system identifier of the document or entity where the issue was found, null if unknown
+	 */
+	public String getSystemId() {
+		return systemId;
+	}
+
+	/**
+	 * @return the line of the issue, -1 if unknown
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return the column of the issue, -1 if unknown
+	 */
+	public int getColumnNumber() {
+		return columnNumber;
+	}
+
+	/**
+	 * @return the URI of the grammar which reported the issue, null for the doctype of the document
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the identifier of the rule which reported the issue (Schematron assert or report id), null if unknown
+	 */
+	public String getRuleId() {
+		return ruleId;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		if (systemId != null) {
+			builder.append(systemId).append(':');
+		}
+		if (lineNumber >= 0) {
+			builder.append(lineNumber).append(':');
+			if (columnNumber >= 0) {
+				builder.append(columnNumber).append(':');
+			}
+		}
+		if (builder.length() > 0) {
+			builder.append(' ');
+		}
+		return builder.append(severity).append(": ").append(message).toString();
+	}
+}
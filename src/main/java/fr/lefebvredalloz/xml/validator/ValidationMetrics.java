@@ -0,0 +1,94 @@
+package eu.els.sie.xml.validation;
+
+/**
+ * Instrumentation of the validations : schema compilation, caches and validation latency.
+ * Every method does nothing by default, an implementation only overrides the events it records.
+ * The methods are called on the validation threads, sometimes while a cache lock is held :
+ * they must be thread-safe and cheap, typically a counter increment or a histogram update.
+ * <p>
+ * The grammar type is the lower case extension of the schema URI ({@code rng}, {@code rnc}, {@code xsd}, {@code sch},
+ * {@code nvdl}, {@code dtd}, or {@code sch.xsl} for a precompiled Schematron), {@code dtd} for the doctype of the document.
+ * The implementation used by every validation is set with {@link XmlValidator#setMetrics(ValidationMetrics)},
+ * see {@link JfrValidationMetrics} for an implementation based on JDK Flight Recorder events.
+ */
+public interface ValidationMetrics {
+
+	/**
+	 * Default implementation, no event is recorded
+	 */
+	ValidationMetrics NOOP = new ValidationMetrics() {
+	};
+
+	/**
+	 * A schema has been compiled, after a cache miss or a preload
+	 * @param nanos compilation time
+	 */
+	default void schemaLoaded(String schemaUri, String grammar, long nanos) {
+	}
+
+	/**
+	 * A compiled schema has been found in a {@link SchemaCache}
+	 */
+	default void schemaCacheHit(String schemaUri, String grammar) {
+	}
+
+	/**
+	 * A schema is not in the {@link SchemaCache} and is compiled
+	 */
+	default void schemaCacheMiss(String schemaUri, String grammar) {
+	}
+
+	/**
+	 * The least recently used schema has been removed from a full {@link SchemaCache}
+	 */
+	default void schemaCacheEviction(String schemaUri, String grammar) {
+	}
+
+	/**
+	 * A resource (schema module, DTD, entity) has been read from the {@link ResourceCache}
+	 */
+	default void resourceCacheHit(String uri) {
+	}
+
+	/**
+	 * A resource is not in the {@link ResourceCache} and is read from the class path or the disk
+	 */
+	default void resourceCacheMiss(String uri) {
+	}
+
+	/**
+	 * The least recently used resource has been removed from a full {@link ResourceCache}
+	 */
+	default void resourceCacheEviction(String uri) {
+	}
+
+	/**
+	 * A document validation starts, it is in flight until {@link #validationCompleted} or {@link #validationFailed} is called
+	 * @param schemaUri URI of the schema, null for the doctype of the document
+	 */
+	default void validationStarted(String schemaUri, String grammar) {
+	}
+
+	/**
+	 * A document has been validated, whatever its validity
+	 * @param result the result with the counts of errors and warnings
+	 * @param nanos parse and validation time, the document is validated while it is parsed
+	 * @param documentBytes size of the document, -1 if it is not read as bytes
+	 */
+	default void validationCompleted(String schemaUri, String grammar, ValidationResult result, long nanos, long documentBytes) {
+	}
+
+	/**
+	 * A document validation has been interrupted by an exception, e.g. the document cannot be read
+	 */
+	default void validationFailed(String schemaUri, String grammar, long nanos) {
+	}
+
+	/**
+	 * A document has been parsed by {@link XmlValidator#checkXmlWellFormedness(byte[])}, without validation
+	 * @param nanos parse time
+	 * @param documentBytes size of the document, -1 if it is not read as bytes
+	 */
+	default void wellFormednessChecked(boolean wellFormed, long nanos, long documentBytes) {
+	}
+}
@@ -0,0 +1,190 @@
+package eu.els.sie.xml.validation;
+
+import com.google.gson.stream.JsonWriter;
+import eu.els.sie.xml.validation.XmlValidationErrorHandler.LEVEL;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Structured report of the validation of a document : the issues with their severity and location.
+ * The same message is often reported many times for a broken document, the messages are interned so that
+ * each distinct message is stored once. The report can be streamed as JSON or as SVRL-like XML
+ * without building the whole text in memory.
+ */
+public class ValidationReport implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String SVRL_NS_URI = "http://purl.oclc.org/dsdl/svrl";
+
+	private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	// URI of the grammar reporting the issues
+	private final String source;
+
+	private final boolean retainMessages;
+	private final List<ValidationIssue> issues = new ArrayList<>();
+	private final int[] counts = new int[LEVEL.values().length];
+
+	// distinct messages of this report
+	private final Map<String, String> messages = new HashMap<>();
+
+	/**
+	 * @param source URI of the grammar reporting the issues, may be null
+	 * @param retainMessages false to only count the issues
+	 */
+	public ValidationReport(String source, boolean retainMessages) {
+		this.source = source;
+		this.retainMessages = retainMessages;
+	}
+
+	void add(LEVEL severity, SAXParseException exception) {
+		counts[severity.ordinal()]++;
+		if (!retainMessages) {
+			return;
+		}
+		String message = exception.getMessage();
+		if (message != null) {
+			message = messages.computeIfAbsent(message, m -> m);
+		}
+		String ruleId = exception instanceof RuleViolationException ? ((RuleViolationException) exception).getRuleId() : null;
+		issues.add(new ValidationIssue(severity, message, exception.getSystemId(),
+				exception.getLineNumber(), exception.getColumnNumber(), source, ruleId));
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the issues in the order they were reported, empty if the messages are only counted
+	 */
+	public List<ValidationIssue> getIssues() {
+		return Collections.unmodifiableList(issues);
+	}
+
+	public List<ValidationIssue> getIssues(LEVEL severity) {
+		List<ValidationIssue> levelIssues = new ArrayList<>();
+		for (ValidationIssue issue : issues) {
+			if (issue.getSeverity() == severity) {
+				levelIssues.add(issue);
+			}
+		}
+		return levelIssues;
+	}
+
+	/**
+	 * @return the number of issues with the given severity, whether they are retained or not
+	 */
+	public int getCount(LEVEL severity) {
+		return counts[severity.ordinal()];
+	}
+
+	/**
+	 * @return the messages grouped by severity
+	 */
+	public Map<LEVEL, List<String>> toMap() {
+		Map<LEVEL, List<String>> map = new EnumMap<>(LEVEL.class);
+		for (LEVEL level : LEVEL.values()) {
+			map.put(level, new ArrayList<>());
+		}
+		for (ValidationIssue issue : issues) {
+			map.get(issue.getSeverity()).add(issue.getMessage());
+		}
+		return map;
+	}
+
+	/**
+	 * Write the report as a JSON object :
+	 * {@code {"source": ..., "counts": {"WARN": 0, "ERROR": 2, "FATAL": 0}, "issues": [{"severity": "ERROR", "message": ..., "systemId": ..., "line": 3, "column": 12, "ruleId": ...}]}}
+	 */
+	public void writeJson(JsonWriter json) throws IOException {
+		json.beginObject();
+		if (source != null) {
+			json.name("source").value(source);
+		}
+		json.name("counts").beginObject();
+		for (LEVEL level : LEVEL.values()) {
+			json.name(level.name()).value(counts[level.ordinal()]);
+		}
+		json.endObject();
+		json.name("issues").beginArray();
+		for (ValidationIssue issue : issues) {
+			json.beginObject();
+			json.name("severity").value(issue.getSeverity().name());
+			json.name("message").value(issue.getMessage());
+			if (issue.getSystemId() != null) {
+				json.name("systemId").value(issue.getSystemId());
+			}
+			if (issue.getLineNumber() >= 0) {
+				json.name("line").value(issue.getLineNumber());
+			}
+			if (issue.getColumnNumber() >= 0) {
+				json.name("column").value(issue.getColumnNumber());
+			}
+			if (issue.getRuleId() != null) {
+				json.name("ruleId").value(issue.getRuleId());
+			}
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject();
+	}
+
+	/**
+	 * @see #writeJson(JsonWriter)
+	 */
+	public void writeJson(Writer writer) throws IOException {
+		JsonWriter json = new JsonWriter(writer);
+		writeJson(json);
+		json.flush();
+	}
+
+	/**
+	 * Write the report as an SVRL document, each issue being a {@code svrl:failed-assert} whose role is the severity.
+	 * As the XPath of the issues is not known, the location is the position in the document : {@code systemId:line:column}
+	 */
+	public void writeSvrl(Writer writer) throws IOException {
+		try {
+			XMLStreamWriter xml = XML_OUTPUT_FACTORY.createXMLStreamWriter(writer);
+			xml.writeStartDocument("UTF-8", "1.0");
+			xml.setPrefix("svrl", SVRL_NS_URI);
+			xml.writeStartElement(SVRL_NS_URI, "schematron-output");
+			xml.writeNamespace("svrl", SVRL_NS_URI);
+			if (source != null) {
+				xml.writeAttribute("title", source);
+			}
+			for (ValidationIssue issue : issues) {
+				xml.writeStartElement(SVRL_NS_URI, "failed-assert");
+				if (issue.getRuleId() != null) {
+					xml.writeAttribute("id", issue.getRuleId());
+				}
+				xml.writeAttribute("role", issue.getSeverity().name().toLowerCase(Locale.ROOT));
+				xml.writeAttribute("location", (issue.getSystemId() == null ? "" : issue.getSystemId())
+						+ ":" + issue.getLineNumber() + ":" + issue.getColumnNumber());
+				xml.writeStartElement(SVRL_NS_URI, "text");
+				xml.writeCharacters(issue.getMessage() == null ? "" : issue.getMessage());
+				xml.writeEndElement();
+				xml.writeEndElement();
+			}
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package eu.els.sie.xml.validation;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of the validation of a document : an invalid document is a normal result carrying its report,
+ * only the failures unrelated to the document content (schema loading, I/O) are raised as {@link XmlValidationException}.
+ */
+public final class ValidationResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Category of the result, the well-formedness and the validity are checked by the same parse
+	 */
+	public enum Status {VALID, INVALID, NOT_WELL_FORMED}
+
+	private final String schemaUri;
+	private final Status status;
+	private final String message;
+	private final ValidationReport validationReport;
+
+	private ValidationResult(String schemaUri, Status status, String message, ValidationReport validationReport) {
+		this.schemaUri = schemaUri;
+		this.status = status;
+		this.message = message;
+		this.validationReport = validationReport;
+	}
+
+	static ValidationResult valid(String schemaUri, ValidationReport validationReport) {
+		return new ValidationResult(schemaUri, Status.VALID, null, validationReport);
+	}
+
+	static ValidationResult invalid(String schemaUri, String message, ValidationReport validationReport) {
+		return new ValidationResult(schemaUri, Status.INVALID, message, validationReport);
+	}
+
+	static ValidationResult notWellFormed(String schemaUri, String message, ValidationReport validationReport) {
+		return new ValidationResult(schemaUri, Status.NOT_WELL_FORMED, message, validationReport);
+	}
+
+	/**
+	 * @return URI of the schema, null for the doctype of the document
+	 */
+	public String getSchemaUri() {
+		return schemaUri;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isValid() {
+		return status == Status.VALID;
+	}
+
+	/**
+	 * @return false if the parse stopped on a well-formedness error, the validity of the document is then unknown
+	 */
+	public boolean isWellFormed() {
+		return status != Status.NOT_WELL_FORMED;
+	}
+
+	/**
+	 * @return why the document is not valid, without the validation messages, null if the document is valid
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the messages reported by the validation, the warnings of a valid document included
+	 */
+	public ValidationReport getValidationReport() {
+		return validationReport;
+	}
+
+	/**
+	 * Convert an invalid result to the exception thrown by {@link XmlValidator#validate(byte[])},
+	 * the exception has no stack trace as it only carries the report
+	 * @return the exception, null if the document is valid
+	 */
+	public XmlValidationException toException() {
+		return isValid() ? null : new XmlValidationException(message, validationReport, false);
+	}
+
+	@Override
+	public String toString() {
+		return isValid() ? "valid" : message;
+	}
+}
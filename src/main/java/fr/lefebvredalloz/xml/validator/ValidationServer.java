@@ -0,0 +1,285 @@
+package eu.els.sie.xml.validation;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Long-running validation process listening on the loopback interface, the compiled schemas stay warm between requests.
+ * <ul>
+ * <li>{@code POST /validate?schema=<schema uri>[&catalog=<catalog path>]...[&format=svrl]} validates the request body
+ * and returns a JSON report : {@code {"schema": ..., "valid": ..., "status": "VALID|INVALID|NOT_WELL_FORMED", "message": ..., "report": {"counts": {...}, "issues": [...]}, "durationMs": ...}}
+ * (see {@link ValidationReport#writeJson}), or the SVRL report of {@link ValidationReport#writeSvrl} with {@code format=svrl}</li>
+ * <li>{@code GET /health} returns 200 once the server is ready, 503 while the schemas are warmed up</li>
+ * </ul>
+ * At most {@code maxConcurrency} documents are validated at the same time, a request waiting longer than
+ * {@link #ACQUIRE_TIMEOUT_SECONDS} for its turn is rejected with a 503 status.
+ */
+public class ValidationServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(ValidationServer.class);
+
+	public static final int DEFAULT_PORT = 8765;
+	public static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+	private static final String XML_CONTENT_TYPE = "application/xml; charset=utf-8";
+	private static final String SVRL_FORMAT = "svrl";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+
+	// validators by schema and catalogs, the compiled schemas themselves are in the schema cache :
+	// the least recently used are dropped beyond the size of the default schema cache, as their schemas would be
+	private final Map<List<String>, XmlValidator> validators = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<String>, XmlValidator> eldest) {
+			return size() > SchemaCache.DEFAULT_MAX_SIZE;
+		}
+	};
+
+	private volatile boolean ready;
+
+	private ValidationServer(HttpServer server, ExecutorService executor, int maxConcurrency) {
+		this.server = server;
+		this.executor = executor;
+		this.permits = new Semaphore(maxConcurrency);
+	}
+
+	/**
+	 * Start a server on the loopback interface
+	 * @param port port to listen to, 0 for an ephemeral port
+	 * @param maxConcurrency maximum number of documents validated at the same time
+	 */
+	public static ValidationServer start(int port, int maxConcurrency) throws IOException {
+		ValidationServer validationServer = listen(port, maxConcurrency);
+		validationServer.ready = true;
+		return validationServer;
+	}
+
+	/**
+	 * Start a server on the loopback interface and warm up the given schemas before reporting it ready :
+	 * {@code GET /health} answers 503 until the warm-up is over, so that no request waits for a schema compilation
+	 * @param warmup schemas to compile and warm up, the validators are kept for the requests using the same schema and catalogs
+	 * @throws XmlValidationException if a schema cannot be loaded, the server is then stopped
+	 */
+	public static ValidationServer start(int port, int maxConcurrency, SchemaWarmup warmup) throws IOException, XmlValidationException {
+		ValidationServer validationServer = listen(port, maxConcurrency);
+		try {
+			for (XmlValidator validator : warmup.run()) {
+				validationServer.putValidator(getKey(validator.getSchemaUri(), validator.getCatalogPaths()), validator);
+			}
+		} catch (XmlValidationException | RuntimeException e) {
+			validationServer.stop();
+			throw e;
+		}
+		validationServer.ready = true;
+		logger.info("Validation server ready");
+		return validationServer;
+	}
+
+	private static ValidationServer listen(int port, int maxConcurrency) throws IOException {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("At least one validation must be allowed");
+		}
+		HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		// more threads than permits so that the requests over the limit wait for a permit, and get a 503 after
+		// ACQUIRE_TIMEOUT_SECONDS, instead of waiting in the backlog without timeout
+		ExecutorService executor = Executors.newFixedThreadPool(2 * maxConcurrency);
+		ValidationServer validationServer = new ValidationServer(httpServer, executor, maxConcurrency);
+		httpServer.createContext("/validate", validationServer::handleValidate);
+		httpServer.createContext("/health", validationServer::handleHealth);
+		httpServer.setExecutor(executor);
+		httpServer.start();
+		logger.info(format("Validation server listening on http://%s:%d with %d concurrent validations",
+				InetAddress.getLoopbackAddress().getHostAddress(), validationServer.getPort(), maxConcurrency));
+		return validationServer;
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	private void handleHealth(HttpExchange exchange) throws IOException {
+		try {
+			byte[] body = (ready ? "ok" : "warming up").getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(ready ? 200 : 503, body.length);
+			exchange.getResponseBody().write(body);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleValidate(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				sendError(exchange, 405, "Only POST is supported");
+				return;
+			}
+			String schemaUri = null;
+			List<String> catalogPaths = null;
+			boolean svrl = false;
+			for (String[] parameter : parseQuery(exchange.getRequestURI().getRawQuery())) {
+				if ("schema".equals(parameter[0])) {
+					schemaUri = parameter[1];
+				}
+				else if ("catalog".equals(parameter[0])) {
+					if (catalogPaths == null) {
+						catalogPaths = new ArrayList<>();
+					}
+					catalogPaths.add(parameter[1]);
+				}
+				else if ("format".equals(parameter[0])) {
+					svrl = SVRL_FORMAT.equals(parameter[1]);
+				}
+			}
+			if (schemaUri == null) {
+				sendError(exchange, 400, "Missing schema parameter");
+				return;
+			}
+			if (!permits.tryAcquire(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				sendError(exchange, 503, "Too many concurrent validations");
+				return;
+			}
+			try {
+				validate(exchange, schemaUri, catalogPaths, svrl);
+			} finally {
+				permits.release();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void validate(HttpExchange exchange, String schemaUri, List<String> catalogPaths, boolean svrl) throws IOException {
+		long start = System.nanoTime();
+		XmlValidator validator;
+		try {
+			validator = getValidator(schemaUri, catalogPaths);
+		} catch (XmlValidationException e) {
+			sendError(exchange, 422, e.getMessage());
+			return;
+		}
+		ValidationResult result;
+		try (InputStream body = exchange.getRequestBody()) {
+			result = validator.check(body);
+		} catch (XmlValidationException e) {
+			sendError(exchange, 400, e.getMessage());
+			return;
+		}
+		ValidationReport report = result.isValid() ? null : result.getValidationReport();
+		if (svrl) {
+			exchange.getResponseHeaders().set("Content-Type", XML_CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, 0);
+			try (Writer writer = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+				result.getValidationReport().writeSvrl(writer);
+			}
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+		exchange.sendResponseHeaders(200, 0);
+		try (JsonWriter json = new JsonWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+			json.beginObject();
+			json.name("schema").value(schemaUri);
+			json.name("valid").value(result.isValid());
+			json.name("status").value(result.getStatus().name());
+			if (report != null) {
+				json.name("message").value(result.getMessage());
+				json.name("report");
+				report.writeJson(json);
+			}
+			json.name("durationMs").value(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			json.endObject();
+		}
+	}
+
+	private XmlValidator getValidator(String schemaUri, List<String> catalogPaths) throws XmlValidationException {
+		List<String> key = getKey(schemaUri, catalogPaths);
+		XmlValidator validator;
+		synchronized (validators) {
+			validator = validators.get(key);
+		}
+		if (validator == null) {
+			// the schema is compiled outside the lock
+			validator = putValidator(key, XmlValidator.forSchema(schemaUri).catalogs(catalogPaths).build());
+		}
+		return validator;
+	}
+
+	/**
+	 * @return the validator kept for the key, the given one unless another thread has put one in the meantime
+	 */
+	private XmlValidator putValidator(List<String> key, XmlValidator validator) {
+		synchronized (validators) {
+			XmlValidator existing = validators.putIfAbsent(key, validator);
+			return existing != null ? existing : validator;
+		}
+	}
+
+	private static List<String> getKey(String schemaUri, List<String> catalogPaths) {
+		List<String> key = new ArrayList<>();
+		key.add(schemaUri);
+		if (catalogPaths != null) {
+			key.addAll(catalogPaths);
+		}
+		return key;
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+		exchange.sendResponseHeaders(status, 0);
+		try (Writer writer = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+			 JsonWriter json = new JsonWriter(writer)) {
+			json.beginObject().name("error").value(message).endObject();
+		}
+	}
+
+	private static List<String[]> parseQuery(String rawQuery) {
+		List<String[]> parameters = new ArrayList<>();
+		if (rawQuery == null) {
+			return parameters;
+		}
+		for (String parameter : rawQuery.split("&")) {
+			int equals = parameter.indexOf('=');
+			if (equals > 0) {
+				parameters.add(new String[] {
+						URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+						URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8)});
+			}
+		}
+		return parameters;
+	}
+}
@@ -0,0 +1,79 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.resolver.Resolver;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.validate.ResolverFactory;
+import com.thaiopensource.validate.ValidateProperty;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-thread pool of configured parsers : creating a parser looks up the parser factory and builds its whole
+ * configuration, a parser is reusable once the previous parse is over.
+ * A borrowed parser is taken out of the pool, so a nested validation on the same thread gets its own parser.
+ */
+class XMLReaderPool {
+
+	// handlers set on the released parsers, so that they do not retain the validator of the previous document
+	private static final DefaultHandler2 DETACHED = new DefaultHandler2();
+
+	static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+	/**
+	 * Create a configured parser
+	 */
+	@FunctionalInterface
+	interface ReaderFactory {
+		XMLReader create() throws SAXException;
+	}
+
+	// pools of the parsers created by jing, by resolver : one resolver is shared by the validations with the same catalogs
+	private static final Map<Resolver, XMLReaderPool> JING_POOLS = new ConcurrentHashMap<>();
+
+	private final ReaderFactory factory;
+	private final ThreadLocal<XMLReader> readers = new ThreadLocal<>();
+
+	XMLReaderPool(ReaderFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Get the pool of the parsers created by jing with the given properties, shared by all the engines using the same resolver
+	 * @param propertyMap jing properties with the resolver, see {@link XmlValidator#createPropertyMap}
+	 */
+	static XMLReaderPool forProperties(PropertyMap propertyMap) {
+		return JING_POOLS.computeIfAbsent(propertyMap.get(ValidateProperty.RESOLVER),
+				resolver -> new XMLReaderPool(() -> ResolverFactory.createResolver(propertyMap).createXMLReader()));
+	}
+
+	/**
+	 * @return the parser of the current thread, or a new one if it is already borrowed
+	 */
+	XMLReader borrow() throws SAXException {
+		XMLReader reader = readers.get();
+		if (reader == null) {
+			return factory.create();
+		}
+		readers.remove();
+		return reader;
+	}
+
+	/**
+	 * Give back a parser once the parse is over, whether it succeeded or not
+	 */
+	void release(XMLReader reader) {
+		reader.setContentHandler(DETACHED);
+		reader.setDTDHandler(DETACHED);
+		reader.setErrorHandler(DETACHED);
+		try {
+			reader.setProperty(LEXICAL_HANDLER, DETACHED);
+		} catch (SAXException e) {
+			// lexical events not supported by the parser, no handler to detach
+		}
+		readers.set(reader);
+	}
+}
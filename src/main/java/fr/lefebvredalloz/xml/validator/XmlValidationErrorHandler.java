@@ -2,9 +2,9 @@ package eu.els.sie.xml.validation;
 
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
 
-import java.util.ArrayList;
-import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
@@ -12,30 +12,105 @@ import java.util.Map;
 public class XmlValidationErrorHandler implements ErrorHandler {
 	public enum LEVEL {WARN, ERROR, FATAL}
 
+	/**
+	 * @return the messages encountered during the validation, grouped by level of severity
+	 * @see #getValidationReport() for the messages with their location
+	 */
 	public Map<LEVEL, List<String>> getReport() {
-		return report;
+		return report.toMap();
 	}
 
-	// list of error messages encounterd during the validation, grouped by level of severity
-	private final Map<LEVEL, List<String>> report = new EnumMap<>(LEVEL.class);
+	// messages encountered during the validation, with their location
+	private final ValidationReport report;
+
+	private final ErrorPolicy errorPolicy;
+
+	// handlers set on the parser once the validation is stopped, the parse goes on without validation
+	private static final DefaultHandler2 DETACHED = new DefaultHandler2();
+
+	// true once the error budget of the policy has been used up and the validation stopped
+	private boolean aborted;
+
+	// parser of the document, whose validation handlers are detached when the validation is stopped, null to stop the parse
+	private XMLReader reader;
 
 	public XmlValidationErrorHandler() {
-		report.put(LEVEL.WARN, new ArrayList<>());
-		report.put(LEVEL.ERROR, new ArrayList<>());
-		report.put(LEVEL.FATAL, new ArrayList<>());
+		this(ErrorPolicy.collectAll());
+	}
+
+	public XmlValidationErrorHandler(ErrorPolicy errorPolicy) {
+		this(errorPolicy, null);
+	}
+
+	/**
+	 * @param source URI of the grammar used for the validation, kept in the report
+	 */
+	public XmlValidationErrorHandler(ErrorPolicy errorPolicy, String source) {
+		this.errorPolicy = errorPolicy;
+		this.report = new ValidationReport(source, errorPolicy.isRetainMessages());
+	}
+
+	/**
+	 * Keep parsing the document once the error budget is used up, to tell a document which is not well formed from an invalid one :
+	 * the validation handlers of the parser are then replaced by handlers ignoring the events, and the next validation errors are ignored
+	 * @param reader parser of the document, its content and DTD handlers are the validation handlers
+	 */
+	void continueParsingOnAbort(XMLReader reader) {
+		this.reader = reader;
 	}
 
 	@Override
 	public void warning(SAXParseException exception) {
-		report.get(LEVEL.WARN).add(exception.getMessage());
+		if (aborted && reader != null) {
+			return;
+		}
+		report.add(LEVEL.WARN, exception);
 	}
 
+	/**
+	 * @throws SAXParseException the reported error, to stop the validation, once the error budget is used up,
+	 * unless the parse goes on, see {@link #continueParsingOnAbort(XMLReader)}
+	 */
 	@Override
-	public void error(SAXParseException exception) {
-		report.get(LEVEL.ERROR).add(exception.getMessage());
+	public void error(SAXParseException exception) throws SAXParseException {
+		if (aborted && reader != null) {
+			return;
+		}
+		report.add(LEVEL.ERROR, exception);
+		if (report.getCount(LEVEL.ERROR) >= errorPolicy.getMaxErrors()) {
+			aborted = true;
+			if (reader == null) {
+				throw exception;
+			}
+			// the rest of the document is only checked for well-formedness
+			reader.setContentHandler(DETACHED);
+			reader.setDTDHandler(DETACHED);
+		}
 	}
 
 	public void fatalError(SAXParseException exception) {
-		report.get(LEVEL.FATAL).add(exception.getMessage());
+		report.add(LEVEL.FATAL, exception);
+	}
+
+	public ValidationReport getValidationReport() {
+		return report;
+	}
+
+	/**
+	 * @return the number of messages reported with the given level, whether they are kept in the report or not
+	 */
+	public int getCount(LEVEL level) {
+		return report.getCount(level);
+	}
+
+	public ErrorPolicy getErrorPolicy() {
+		return errorPolicy;
+	}
+
+	/**
+	 * @return true if the validation has been stopped because the error budget was used up
+	 */
+	public boolean isAborted() {
+		return aborted;
 	}
 }
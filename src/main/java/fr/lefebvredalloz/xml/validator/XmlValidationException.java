@@ -9,30 +9,78 @@ import static java.lang.String.join;
 
 public class XmlValidationException extends Exception {
 
-	private final Map<LEVEL, List<String>> report;
+	private final ValidationReport validationReport;
+
+	// messages grouped by level and full message, built on first use
+	private transient Map<LEVEL, List<String>> report;
+	private transient String message;
 
 	public XmlValidationException(String message) {
 		super(message);
-		report = null;
+		validationReport = null;
 	}
 
 	public XmlValidationException(String message, Map<LEVEL, List<String>> validationReport) {
 		super(message);
-		report = validationReport;
+		this.validationReport = null;
+		this.report = validationReport;
+	}
+
+	public XmlValidationException(String message, ValidationReport validationReport) {
+		super(message);
+		this.validationReport = validationReport;
+	}
+
+	/**
+	 * @param writableStackTrace false for the exceptions signaling an invalid document, which only carry the report
+	 * and are raised often enough for the stack trace capture to show in profiles
+	 */
+	XmlValidationException(String message, ValidationReport validationReport, boolean writableStackTrace) {
+		super(message, null, true, writableStackTrace);
+		this.validationReport = validationReport;
+	}
+
+	/**
+	 * @return the validation messages grouped by level, null if the error is not related to a validation
+	 */
+	public Map<LEVEL, List<String>> getReport() {
+		if (report == null && validationReport != null) {
+			report = validationReport.toMap();
+		}
+		return report;
+	}
+
+	/**
+	 * @return the structured validation report, with the location of the messages,
+	 * null if the error is not related to a validation
+	 */
+	public ValidationReport getValidationReport() {
+		return validationReport;
+	}
+
+	/**
+	 * @return the message without the validation messages
+	 */
+	public String getSummary() {
+		return super.getMessage();
 	}
 
 	@Override
 	public String getMessage() {
+		if (message != null) {
+			return message;
+		}
 		StringBuilder msg = new StringBuilder();
 		msg.append(super.getMessage());
 		msg.append("\n");
-		if (report != null) {
-			for (List<String> levelMessages : report.values()) {
+		Map<LEVEL, List<String>> levels = getReport();
+		if (levels != null) {
+			for (List<String> levelMessages : levels.values()) {
 				msg.append(join("\n", levelMessages));
 			}
 			msg.append("\n");
 		}
-
-		return msg.toString();
+		message = msg.toString();
+		return message;
 	}
 }
@@ -2,47 +2,344 @@ package eu.els.sie.xml.validation;
 
 import com.thaiopensource.resolver.Resolver;
 import com.thaiopensource.resolver.catalog.CatalogResolver;
+import com.thaiopensource.resolver.xml.sax.SAX;
 import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.util.PropertyMapBuilder;
 import com.thaiopensource.validate.ValidateProperty;
-import com.thaiopensource.validate.ValidationDriver;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.xml.sax.*;
+import org.xml.sax.ext.EntityResolver2;
 import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.parsers.*;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.String.*;
 
 public class XmlValidator {
 
-	private static final Logger logger = LoggerFactory.getLogger(XmlValidator.class);
 	private static final ClassLoader CLASS_LOADER = XmlValidator.class.getClassLoader();
 	private static final String DTD_EXTENSION = "dtd";
+	private static final String XSD_EXTENSION = ".xsd";
 
 	private static final String EXTERNAL_GENERAL_ENTITIES = "http://xml.org/sax/features/external-general-entities";
 	private static final String EXTERNAL_PARAMETER_ENTITIES = "http://xml.org/sax/features/external-parameter-entities";
 
+	static {
+		ClasspathProtocol.register();
+	}
+
+	// caching resolvers by catalog list
+	private static final Map<List<String>, Resolver> RESOLVERS = new ConcurrentHashMap<>();
+
+	// non validating parsers of checkXmlWellFormedness, reset and reused by each thread
+	private static final SAXParserFactory WELL_FORMEDNESS_PARSER_FACTORY = createWellFormednessParserFactory();
+	private static final ThreadLocal<SAXParser> WELL_FORMEDNESS_PARSERS = new ThreadLocal<>();
+
+	private static volatile ValidationMetrics metrics = ValidationMetrics.NOOP;
+
+	private final String schemaUri;
+	private final List<String> catalogPaths;
+	private final String grammar;
+	private final ValidationEngine engine;
+	private final ErrorPolicy errorPolicy;
+
+	// results of the documents already validated, null if not cached
+	private final ResultCache resultCache;
+	private final String schemaIdentity;
+	private volatile boolean schemaChanged;
+
 	private XmlValidator() {
-		throw new IllegalStateException("Utility class");
+		throw new IllegalStateException("Use XmlValidator.forSchema(schemaUri) to create a validator");
 	}
 
-	// Declare handler for classpath protocol
-	// classpath protocol is needed to resolve schema import within a schema included as maven dependency
-	static {
-		System.setProperty("java.protocol.handler.pkgs", "eu.els.sie.xml.validation");
+	private XmlValidator(String schemaUri, List<String> catalogPaths, ValidationEngine engine, ErrorPolicy errorPolicy) {
+		this(schemaUri, catalogPaths, engine, errorPolicy, null);
+	}
+
+	private XmlValidator(String schemaUri, List<String> catalogPaths, ValidationEngine engine, ErrorPolicy errorPolicy, ResultCache resultCache) {
+		this.schemaUri = schemaUri;
+		this.catalogPaths = catalogPaths;
+		this.grammar = getGrammar(schemaUri);
+		this.engine = engine;
+		this.errorPolicy = errorPolicy;
+		// the DTD of a document is chosen by the document, its results are not cached
+		SchemaDependencies dependencies = engine.getDependencies();
+		this.resultCache = dependencies != null ? resultCache : null;
+		this.schemaIdentity = this.resultCache != null ? ResultCache.getSchemaIdentity(schemaUri, catalogPaths, errorPolicy, engine.getOptions(), dependencies) : null;
+	}
+
+	/**
+	 * Start the configuration of a reusable validator
+	 * @param schemaUri URI of the schema, it might use cp protocol :
+	 * cp:/path/to/model.rng
+	 * @return a builder, the validator is created by {@link Builder#build()}
+	 */
+	public static Builder forSchema(String schemaUri) {
+		return new Builder(schemaUri);
+	}
+
+	public String getSchemaUri() {
+		return schemaUri;
+	}
+
+	public List<String> getCatalogPaths() {
+		return catalogPaths;
+	}
+
+	public ErrorPolicy getErrorPolicy() {
+		return errorPolicy;
+	}
+
+	ValidationEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Set the metrics recorded by every validation, schema cache and resource cache
+	 * @param validationMetrics the metrics, {@link ValidationMetrics#NOOP} to stop recording
+	 */
+	public static void setMetrics(ValidationMetrics validationMetrics) {
+		metrics = Objects.requireNonNull(validationMetrics, "validationMetrics");
+	}
+
+	/**
+	 * @return the metrics recorded by the validations, {@link ValidationMetrics#NOOP} if not set
+	 */
+	public static ValidationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the grammar type of a schema reported to the {@link ValidationMetrics} : the lower case extension of its URI
+	 */
+	static String getGrammar(String schemaUri) {
+		if (schemaUri == null) {
+			return DTD_EXTENSION;
+		}
+		String lowerCaseUri = schemaUri.toLowerCase();
+		if (lowerCaseUri.endsWith(SchematronCompiler.PRECOMPILED_EXTENSION)) {
+			return SchematronCompiler.PRECOMPILED_EXTENSION.substring(1);
+		}
+		int dot = lowerCaseUri.lastIndexOf('.');
+		return dot < 0 || dot < lowerCaseUri.lastIndexOf('/') ? "unknown" : lowerCaseUri.substring(dot + 1);
+	}
+
+	/**
+	 * Validate a document against the schema of this validator
+	 * @param xml XML document as a byte array
+	 * @return true if the document is valid
+	 * @throws XmlValidationException if the document is not valid or cannot be read
+	 */
+	public boolean validate(byte[] xml) throws XmlValidationException {
+		return orThrow(check(xml));
+	}
+
+	/**
+	 * Validate a document in a single streaming pass, the document is never buffered in memory
+	 * @param xml XML document as a stream, it is not closed
+	 * @see #validate(byte[])
+	 */
+	public boolean validate(InputStream xml) throws XmlValidationException {
+		return orThrow(check(xml));
+	}
+
+	/**
+	 * Validate a document file in a single streaming pass,
+	 * relative references in the document (DTD, entities) are resolved against the file location.
+	 * Large files are memory-mapped, their content is never copied in the heap
+	 * @param xml path of the XML document
+	 * @see #validate(byte[])
+	 */
+	public boolean validate(Path xml) throws XmlValidationException {
+		return orThrow(check(xml));
+	}
+
+	/**
+	 * Validate a document read from a channel in a single streaming pass
+	 * @param xml channel providing the XML document, it is not closed
+	 * @see #validate(byte[])
+	 */
+	public boolean validate(ReadableByteChannel xml) throws XmlValidationException {
+		return orThrow(check(xml));
+	}
+
+	/**
+	 * Validate a document provided as a stream or SAX source in a single streaming pass
+	 * @param xml a {@link javax.xml.transform.stream.StreamSource} or a {@link javax.xml.transform.sax.SAXSource}
+	 * @see #validate(byte[])
+	 */
+	public boolean validate(Source xml) throws XmlValidationException {
+		return orThrow(check(xml));
+	}
+
+	/**
+	 * Validate a document against the schema of this validator without raising an exception when it is not valid.
+	 * The well-formedness is checked by the same parse : a document which is not well formed gets
+	 * a {@link ValidationResult.Status#NOT_WELL_FORMED} result, there is no need to call {@link #checkXmlWellFormedness(byte[])} first.
+	 * The parse goes on to the end of the document when the error policy stops the validation, to check the well-formedness
+	 * @param xml XML document as a byte array
+	 * @return the result, with the validation report
+	 * @throws XmlValidationException if the document cannot be read
+	 */
+	public ValidationResult check(byte[] xml) throws XmlValidationException {
+		String documentHash = isResultCached() ? ResultCache.hash(xml) : null;
+		ValidationResult result = documentHash != null ? resultCache.get(schemaIdentity, documentHash) : null;
+		if (result == null) {
+			result = check(new InputSource(new ByteArrayInputStream(xml)));
+			if (documentHash != null) {
+				resultCache.put(schemaIdentity, documentHash, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param xml XML document as a stream, it is not closed
+	 * @see #check(byte[])
+	 */
+	public ValidationResult check(InputStream xml) throws XmlValidationException {
+		return check(new InputSource(xml));
+	}
+
+	/**
+	 * @param xml path of the XML document
+	 * @see #check(byte[])
+	 * @see #validate(Path)
+	 */
+	public ValidationResult check(Path xml) throws XmlValidationException {
+		try {
+			String documentHash = null;
+			if (isResultCached()) {
+				try (InputStream inputStream = MappedFileInputStream.open(xml)) {
+					documentHash = ResultCache.hash(inputStream);
+				}
+				ValidationResult result = resultCache.get(schemaIdentity, documentHash);
+				if (result != null) {
+					return result;
+				}
+			}
+			ValidationResult result;
+			try (InputStream inputStream = MappedFileInputStream.open(xml)) {
+				result = check(createInputSource(inputStream, xml));
+			}
+			if (documentHash != null) {
+				resultCache.put(schemaIdentity, documentHash, result);
+			}
+			return result;
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while reading input stream: %s", e));
+		}
+	}
+
+	/**
+	 * @param xml channel providing the XML document, it is not closed
+	 * @see #check(byte[])
+	 */
+	public ValidationResult check(ReadableByteChannel xml) throws XmlValidationException {
+		return check(new InputSource(Channels.newInputStream(xml)));
+	}
+
+	/**
+	 * @param xml a {@link javax.xml.transform.stream.StreamSource} or a {@link javax.xml.transform.sax.SAXSource}
+	 * @see #check(byte[])
+	 */
+	public ValidationResult check(Source xml) throws XmlValidationException {
+		return check(toInputSource(xml));
+	}
+
+	private ValidationResult check(InputSource xml) throws XmlValidationException {
+		ValidationMetrics validationMetrics = metrics;
+		CountingInputStream counter = countBytes(xml, validationMetrics);
+		validationMetrics.validationStarted(schemaUri, grammar);
+		long start = System.nanoTime();
+		ValidationResult result = null;
+		try {
+			result = runValidation(xml);
+			return result;
+		} finally {
+			long nanos = System.nanoTime() - start;
+			if (result != null) {
+				validationMetrics.validationCompleted(schemaUri, grammar, result, nanos, counter == null ? -1 : counter.getCount());
+			}
+			else {
+				validationMetrics.validationFailed(schemaUri, grammar, nanos);
+			}
+		}
+	}
+
+	private ValidationResult runValidation(InputSource xml) throws XmlValidationException {
+		XmlValidationErrorHandler errorHandler = new XmlValidationErrorHandler(errorPolicy, schemaUri);
+		try {
+			if (engine.validate(xml, errorHandler)) {
+				return ValidationResult.valid(schemaUri, errorHandler.getValidationReport());
+			}
+			else {
+				return ValidationResult.invalid(schemaUri, format("XML is not valid against model: %s", schemaUri), errorHandler.getValidationReport());
+			}
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while reading input stream: %s", e), errorHandler.getValidationReport());
+		} catch (SAXException e) {
+			if (errorHandler.getCount(XmlValidationErrorHandler.LEVEL.FATAL) > 0 || (e instanceof SAXParseException && !errorHandler.isAborted())) {
+				return ValidationResult.notWellFormed(schemaUri, format("XML is not well formed: %s", e), errorHandler.getValidationReport());
+			}
+			// validation stopped by the error policy
+			return ValidationResult.invalid(schemaUri, format("XML is not valid: %s", e), errorHandler.getValidationReport());
+		}
+	}
+
+	/**
+	 * The results are not cached any more once a file of the schema has changed : the compiled schema of this validator
+	 * is outdated, a new validator is needed to validate with the new schema
+	 * @return true if the result cache can be used
+	 */
+	private boolean isResultCached() {
+		if (resultCache == null || schemaChanged) {
+			return false;
+		}
+		if (engine.getDependencies().isStale()) {
+			schemaChanged = true;
+			resultCache.invalidate(schemaIdentity);
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean orThrow(ValidationResult result) throws XmlValidationException {
+		if (!result.isValid()) {
+			throw result.toException();
+		}
+		return true;
+	}
+
+	/**
+	 * Count the bytes of the document when the metrics are recorded
+	 * @return the counter, null if the metrics are not recorded or the document is not read as bytes
+	 */
+	private static CountingInputStream countBytes(InputSource xml, ValidationMetrics validationMetrics) {
+		if (validationMetrics == ValidationMetrics.NOOP || xml.getByteStream() == null) {
+			return null;
+		}
+		CountingInputStream counter = new CountingInputStream(xml.getByteStream());
+		xml.setByteStream(counter);
+		return counter;
 	}
 
 	/**
@@ -52,24 +349,84 @@ public class XmlValidator {
 	 * @throws XmlValidationException
 	 */
 	public static void checkXmlWellFormedness(byte[] xml) throws XmlValidationException {
+		checkXmlWellFormedness(new InputSource(new ByteArrayInputStream(xml)));
+	}
+
+	/**
+	 * Check if the input XML is well formed, the document is streamed and never buffered in memory
+	 * @param xml XML document as a stream, it is not closed
+	 * @throws XmlValidationException
+	 */
+	public static void checkXmlWellFormedness(InputStream xml) throws XmlValidationException {
+		checkXmlWellFormedness(new InputSource(xml));
+	}
+
+	/**
+	 * Check if the input XML file is well formed, the document is streamed (memory-mapped when large) and never buffered in memory
+	 * @param xml path of the XML document
+	 * @throws XmlValidationException
+	 */
+	public static void checkXmlWellFormedness(Path xml) throws XmlValidationException {
+		try (InputStream inputStream = MappedFileInputStream.open(xml)) {
+			checkXmlWellFormedness(createInputSource(inputStream, xml));
+		} catch (IOException e) {
+			throw new XmlValidationException(format("Error while reading input stream: %s", e));
+		}
+	}
+
+	private static void checkXmlWellFormedness(InputSource xml) throws XmlValidationException {
+		SAXParser parser = WELL_FORMEDNESS_PARSERS.get();
+		if (parser == null) {
+			parser = createWellFormednessParser();
+		}
+		else {
+			WELL_FORMEDNESS_PARSERS.remove();
+		}
+		ValidationMetrics validationMetrics = metrics;
+		CountingInputStream counter = countBytes(xml, validationMetrics);
+		long start = System.nanoTime();
+		boolean wellFormed = false;
 		try {
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-			factory.setFeature(EXTERNAL_GENERAL_ENTITIES, false);
-			SAXParser parser = factory.newSAXParser();
-			DefaultHandler handler = new DefaultHandler();
-			InputStream inputStream = new ByteArrayInputStream(xml);
-			parser.parse(new InputSource(inputStream), handler);
-		} catch (ParserConfigurationException e) {
-			throw new XmlValidationException(format("SAX parser configuration error: %s", e));
+			parser.parse(xml, new DefaultHandler());
+			wellFormed = true;
 		} catch (SAXException e) {
 			throw new XmlValidationException(format("XML is not well formed: %s", e));
 		} catch (IOException e) {
 			throw new XmlValidationException(format("Error while reading input stream: %s", e));
+		} finally {
+			validationMetrics.wellFormednessChecked(wellFormed, System.nanoTime() - start, counter == null ? -1 : counter.getCount());
+			parser.reset();
+			WELL_FORMEDNESS_PARSERS.set(parser);
 		}
 	}
 
+	private static SAXParser createWellFormednessParser() throws XmlValidationException {
+		try {
+			// the factory is shared, its configuration is never changed once created
+			synchronized (WELL_FORMEDNESS_PARSER_FACTORY) {
+				return WELL_FORMEDNESS_PARSER_FACTORY.newSAXParser();
+			}
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new XmlValidationException(format("SAX parser configuration error: %s", e));
+		}
+	}
+
+	private static SAXParserFactory createWellFormednessParserFactory() {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		try {
+			factory.setFeature(EXTERNAL_GENERAL_ENTITIES, false);
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IllegalStateException(format("SAX parser configuration error: %s", e), e);
+		}
+		return factory;
+	}
+
 	/**
-	 * Validate any XML document with RNG, RNC, Schematron1.5, Iso-Schematron, NVDL, DTD
+	 * Validate any XML document with RNG, RNC, Schematron1.5, Iso-Schematron, NVDL, DTD, XSD
+	 * (validated with the JAXP schema factory, see {@link XsdValidationEngine}),
+	 * or a Schematron precompiled with {@link SchematronCompiler}
+	 * This is a shortcut for {@code XmlValidator.forSchema(schemaUri).catalogs(catalogPaths).build().validate(xml)},
+	 * prefer a reusable validator when several documents are validated against the same schema
 	 *
 	 * @param xml XML document as a byte array
 	 *
@@ -81,16 +438,25 @@ public class XmlValidator {
 	 * xmlURI/schemaUri but not within catalogsPath
 	 */
 	public static boolean validate(byte[] xml, String schemaUri, List<String> catalogPaths) throws XmlValidationException {
-		// DTD schema validation
-		if (schemaUri.toLowerCase().endsWith(DTD_EXTENSION)) {
-			InputStream xmlInputStream = new ByteArrayInputStream(xml);
-			byte[] xmlWithDoctype = addDoctypeSystem(xmlInputStream, schemaUri);
-			return validateXmlWithDTD(xmlWithDoctype);
-		}
-		// Other schema validation
-		else {
-			return validateXmlWithSchema(xml, schemaUri, catalogPaths);
-		}
+		return forSchema(schemaUri).catalogs(catalogPaths).build().validate(xml);
+	}
+
+	/**
+	 * Validate any XML document in a single streaming pass
+	 * @param xml XML document as a stream, it is not closed
+	 * @see #validate(byte[], String, List)
+	 */
+	public static boolean validate(InputStream xml, String schemaUri, List<String> catalogPaths) throws XmlValidationException {
+		return forSchema(schemaUri).catalogs(catalogPaths).build().validate(xml);
+	}
+
+	/**
+	 * Validate any XML document file in a single streaming pass
+	 * @param xml path of the XML document
+	 * @see #validate(byte[], String, List)
+	 */
+	public static boolean validate(Path xml, String schemaUri, List<String> catalogPaths) throws XmlValidationException {
+		return forSchema(schemaUri).catalogs(catalogPaths).build().validate(xml);
 	}
 
 	/**
@@ -99,63 +465,89 @@ public class XmlValidator {
 	 * @throws XmlValidationException
 	 */
 	public static boolean validateXmlWithDTD(byte[] xml) throws XmlValidationException {
-		try {
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-//			factory.setFeature(EXTERNAL_GENERAL_ENTITIES, false);
-//			factory.setFeature(EXTERNAL_PARAMETER_ENTITIES, false);
-			factory.setValidating(true);
-			factory.setNamespaceAware(true);
-			SAXParser parser = factory.newSAXParser();
-			XMLReader reader = parser.getXMLReader();
-			ErrorHandlerImpl errorHandler = new ErrorHandlerImpl();
-			reader.setErrorHandler(errorHandler);
-			InputStream inputStream = new ByteArrayInputStream(xml);
-			reader.parse(new InputSource(inputStream));
-			return true;
-		} catch (ParserConfigurationException e) {
-			throw new XmlValidationException(format("SAX parser configuration error: %s", e));
-		} catch (SAXException e) {
-			throw new XmlValidationException(format("XML is not valid: %s", e));
-		} catch (IOException e) {
-			throw new XmlValidationException(format("Error while reading input stream: %s", e));
-		}
+		return orThrow(checkXmlWithDTD(xml));
+	}
+
+	/**
+	 * Validate XML containing doctype with DTD in a single streaming pass
+	 * @param xml XML document as a stream, it is not closed
+	 * @throws XmlValidationException
+	 */
+	public static boolean validateXmlWithDTD(InputStream xml) throws XmlValidationException {
+		return orThrow(checkXmlWithDTD(xml));
+	}
+
+	/**
+	 * Validate XML containing doctype with DTD, without raising an exception when it is not valid
+	 * @param xml XML document as a byte array
+	 * @throws XmlValidationException if the document or its DTD cannot be read
+	 */
+	public static ValidationResult checkXmlWithDTD(byte[] xml) throws XmlValidationException {
+		return new XmlValidator(null, null, new DtdValidationEngine(null, null), ErrorPolicy.failFast()).check(xml);
+	}
+
+	/**
+	 * @param xml XML document as a stream, it is not closed
+	 * @see #checkXmlWithDTD(byte[])
+	 */
+	public static ValidationResult checkXmlWithDTD(InputStream xml) throws XmlValidationException {
+		return new XmlValidator(null, null, new DtdValidationEngine(null, null), ErrorPolicy.failFast()).check(xml);
 	}
 
 	/**
 	 * Validate XML document with RNG, RNC, Schematron1.5, Iso-Schematron or NVDL
+	 * The compiled schema is taken from the {@link SchemaCache#getDefault() default schema cache},
+	 * only the validator is created for each call
 	 * @param xml
 	 * @param schemaUri
 	 * @param catalogPaths
 	 * @throws XmlValidationException
 	 */
 	public static boolean validateXmlWithSchema(byte[] xml, String schemaUri, List<String> catalogPaths) throws XmlValidationException {
-		XmlValidationErrorHandler errorHandler = new XmlValidationErrorHandler();
-		ValidationDriver validationDriver = new ValidationDriver(createPropertyMap(catalogPaths, errorHandler));
-		InputStream xmlInputStream = new ByteArrayInputStream(xml);
-		InputSource xmlInputSource = new InputSource(xmlInputStream);
-		try {
-			validationDriver.loadSchema(new InputSource(schemaUri));
-		} catch (IOException e) {
-			throw new XmlValidationException(format("Error while loading schema: %s", schemaUri), errorHandler.getReport());
-		} catch (SAXException e) {
-			throw new XmlValidationException(format("Error while parsing schema: %s", schemaUri), errorHandler.getReport());
-		}
-		try {
-			if (validationDriver.validate(xmlInputSource)) {
-				return true;
-			}
-			else {
-				throw new XmlValidationException(format("XML is not valid against model: %s", schemaUri), errorHandler.getReport());
-			}
-		} catch (IOException e) {
-			throw new XmlValidationException("Error while reading input stream", errorHandler.getReport());
-		} catch (SAXException e) {
-			throw new XmlValidationException("XML is not valid", errorHandler.getReport());
+		return orThrow(checkXmlWithSchema(xml, schemaUri, catalogPaths));
+	}
+
+	/**
+	 * Validate XML document with RNG, RNC, Schematron1.5, Iso-Schematron or NVDL in a single streaming pass
+	 * @param xml XML document as a stream, it is not closed
+	 * @see #validateXmlWithSchema(byte[], String, List)
+	 */
+	public static boolean validateXmlWithSchema(InputStream xml, String schemaUri, List<String> catalogPaths) throws XmlValidationException {
+		return orThrow(checkXmlWithSchema(xml, schemaUri, catalogPaths));
+	}
+
+	/**
+	 * Validate XML document with RNG, RNC, Schematron1.5, Iso-Schematron or NVDL, without raising an exception when it is not valid
+	 * @return the result, with the validation report
+	 * @throws XmlValidationException if the schema or the document cannot be read
+	 * @see #validateXmlWithSchema(byte[], String, List)
+	 */
+	public static ValidationResult checkXmlWithSchema(byte[] xml, String schemaUri, List<String> catalogPaths) throws XmlValidationException {
+		return new XmlValidator(schemaUri, catalogPaths, createJingEngine(schemaUri, catalogPaths), ErrorPolicy.collectAll()).check(xml);
+	}
+
+	/**
+	 * @param xml XML document as a stream, it is not closed
+	 * @see #checkXmlWithSchema(byte[], String, List)
+	 */
+	public static ValidationResult checkXmlWithSchema(InputStream xml, String schemaUri, List<String> catalogPaths) throws XmlValidationException {
+		return new XmlValidator(schemaUri, catalogPaths, createJingEngine(schemaUri, catalogPaths), ErrorPolicy.collectAll()).check(xml);
+	}
+
+	/**
+	 * Create the engine of the static methods validating with jing, NVDL schemas get their pooled validators
+	 */
+	private static ValidationEngine createJingEngine(String schemaUri, List<String> catalogPaths) throws XmlValidationException {
+		if (NvdlValidationEngine.isNvdl(schemaUri)) {
+			return NvdlValidationEngine.create(schemaUri, catalogPaths, SchemaCache.getDefault(), 0);
 		}
+		return JingValidationEngine.create(schemaUri, catalogPaths, SchemaCache.getDefault());
 	}
 
 	/**
 	 * Add doctype to input XML
+	 * The document is loaded as a DOM and serialized again, {@link #validate(byte[], String, List)} does not use it anymore
+	 * for DTD validation : the DTD is injected in the parser instead (see {@link DtdValidationEngine})
 	 * @param input input document as an input stream
 	 * @return xml byte array with doctype
 	 */
@@ -189,44 +581,162 @@ public class XmlValidator {
 		}
 	}
 
-	private static PropertyMap createPropertyMap(List<String> catalogPaths, XmlValidationErrorHandler errHandler) throws XmlValidationException {
-		PropertyMapBuilder propertyMapBuilder = new PropertyMapBuilder();
+	static InputSource createInputSource(InputStream inputStream, Path path) {
+		InputSource inputSource = new InputSource(inputStream);
+		inputSource.setSystemId(path.toUri().toASCIIString());
+		return inputSource;
+	}
 
-		// Set PropertyMap RESOLVER with catalogs
-		if (catalogPaths != null) {
-			List<String> catalogs = new ArrayList<>();
-			for (String catalogUri : catalogPaths) {
-				try {
-					catalogs.add(CLASS_LOADER.getResource(catalogUri).toURI().toASCIIString());
-				} catch (URISyntaxException e) {
-					throw new XmlValidationException("Bad URI syntax for catalog " + catalogUri, errHandler.getReport());
-				}
-			}
-			Resolver catalogResolver = new CatalogResolver(catalogs);
-			propertyMapBuilder.put(ValidateProperty.RESOLVER, catalogResolver);
+	private static InputSource toInputSource(Source source) throws XmlValidationException {
+		InputSource inputSource = SAXSource.sourceToInputSource(source);
+		if (inputSource == null) {
+			throw new XmlValidationException(format("Unsupported source type: %s", source.getClass().getName()));
 		}
+		return inputSource;
+	}
+
+	/**
+	 * Create the jing properties shared by every validation with the given catalogs
+	 * @param catalogPaths list of catalogs to be loaded with classLoader, may be null
+	 * @return the properties with the caching catalog resolver, without error handler
+	 */
+	static PropertyMap createPropertyMap(List<String> catalogPaths) throws XmlValidationException {
+		PropertyMapBuilder propertyMapBuilder = new PropertyMapBuilder();
 
-		propertyMapBuilder.put(ValidateProperty.ERROR_HANDLER, errHandler);
+		// Set PropertyMap RESOLVER with catalogs, the resources are read through the resource cache even without catalog
+		propertyMapBuilder.put(ValidateProperty.RESOLVER, getResolver(catalogPaths));
 
 		return propertyMapBuilder.toPropertyMap();
 	}
 
-	private static class ErrorHandlerImpl implements ErrorHandler {
-		@Override
-		public void warning(SAXParseException exception) throws SAXException {
-			logger.warn(exception.getMessage()); // do nothing
+	/**
+	 * Create a SAX entity resolver using the given catalogs, for the parsers not driven by jing
+	 * @param catalogPaths list of catalogs to be loaded with classLoader, may be null
+	 */
+	static EntityResolver2 createEntityResolver(List<String> catalogPaths) throws XmlValidationException {
+		return SAX.createEntityResolver(getResolver(catalogPaths));
+	}
+
+	/**
+	 * Get the resolver shared by the validations with the given catalogs, the catalogs are only parsed once
+	 * @param catalogPaths list of catalogs to be loaded with classLoader, may be null
+	 */
+	private static Resolver getResolver(List<String> catalogPaths) throws XmlValidationException {
+		List<String> key = catalogPaths == null ? List.of() : List.copyOf(catalogPaths);
+		Resolver resolver = RESOLVERS.get(key);
+		if (resolver == null) {
+			Resolver catalogResolver = key.isEmpty() ? null : createCatalogResolver(key);
+			resolver = RESOLVERS.computeIfAbsent(key, k -> new CachingResolver(catalogResolver, ResourceCache.getDefault()));
+		}
+		return resolver;
+	}
+
+	private static Resolver createCatalogResolver(List<String> catalogPaths) throws XmlValidationException {
+		List<String> catalogs = new ArrayList<>();
+		for (String catalogUri : catalogPaths) {
+			try {
+				catalogs.add(CLASS_LOADER.getResource(catalogUri).toURI().toASCIIString());
+			} catch (URISyntaxException e) {
+				throw new XmlValidationException("Bad URI syntax for catalog " + catalogUri);
+			}
+		}
+		return new CatalogResolver(catalogs);
+	}
+
+	/**
+	 * Configuration of a reusable {@link XmlValidator}
+	 */
+	public static class Builder {
+		private final String schemaUri;
+		private List<String> catalogPaths;
+		private SchemaCache schemaCache = SchemaCache.getDefault();
+		private ErrorPolicy errorPolicy;
+		private ResultCache resultCache;
+		private long maxSectionSize;
+
+		private Builder(String schemaUri) {
+			this.schemaUri = Objects.requireNonNull(schemaUri, "schemaUri");
+		}
+
+		/**
+		 * @param catalogPaths list of catalogs without protocol, to be loaded with classLoader, may be null
+		 */
+		public Builder catalogs(List<String> catalogPaths) {
+			this.catalogPaths = catalogPaths == null ? null : List.copyOf(catalogPaths);
+			return this;
 		}
 
-		@Override
-		public void error(SAXParseException exception) throws SAXException {
-			logger.error(exception.getMessage());
-			throw exception;
+		public Builder catalogs(String... catalogPaths) {
+			return catalogs(Arrays.asList(catalogPaths));
 		}
 
-		@Override
-		public void fatalError(SAXParseException exception) throws SAXException {
-			logger.error(exception.getMessage());
-			throw exception;
+		/**
+		 * @param schemaCache cache of compiled schemas, the {@link SchemaCache#getDefault() default cache} if not set
+		 */
+		public Builder schemaCache(SchemaCache schemaCache) {
+			this.schemaCache = Objects.requireNonNull(schemaCache, "schemaCache");
+			return this;
+		}
+
+		/**
+		 * @param errorPolicy handling of the validation errors, {@link ErrorPolicy#failFast()} for DTD
+		 * and {@link ErrorPolicy#collectAll()} for the other grammars if not set
+		 */
+		public Builder errorPolicy(ErrorPolicy errorPolicy) {
+			this.errorPolicy = Objects.requireNonNull(errorPolicy, "errorPolicy");
+			return this;
+		}
+
+		/**
+		 * Keep the results of the documents given as byte arrays or files, so that a document already validated
+		 * against the same version of the schema is not validated again. The results of the DTD validations are not cached.
+		 * @param resultCache cache of the results, not used if not set
+		 */
+		public Builder resultCache(ResultCache resultCache) {
+			this.resultCache = Objects.requireNonNull(resultCache, "resultCache");
+			return this;
+		}
+
+		/**
+		 * Limit the memory used by the NVDL sections validated by a Schematron, which are built in memory :
+		 * the validation stops with an error when the estimated size of a section given to a Schematron (with the sections
+		 * attached to it) exceeds the limit. The sections validated as a stream, by RELAX NG for instance, are not limited.
+		 * Only used with NVDL schemas.
+		 * @param maxSectionSize estimated size in bytes, 0 for no limit, the default
+		 */
+		public Builder maxSectionSize(long maxSectionSize) {
+			if (maxSectionSize < 0) {
+				throw new IllegalArgumentException("The maximum section size cannot be negative");
+			}
+			this.maxSectionSize = maxSectionSize;
+			return this;
+		}
+
+		/**
+		 * Resolve the catalogs and compile the schema
+		 * @return an immutable validator that can be shared between threads
+		 * @throws XmlValidationException if the catalogs or the schema cannot be loaded
+		 */
+		public XmlValidator build() throws XmlValidationException {
+			ValidationEngine engine;
+			ErrorPolicy defaultErrorPolicy = ErrorPolicy.collectAll();
+			if (schemaUri.toLowerCase().endsWith(SchematronCompiler.PRECOMPILED_EXTENSION)) {
+				engine = SchematronValidationEngine.create(schemaUri, catalogPaths, schemaCache);
+			}
+			else if (schemaUri.toLowerCase().endsWith(DTD_EXTENSION)) {
+				engine = new DtdValidationEngine(schemaUri, catalogPaths);
+				defaultErrorPolicy = ErrorPolicy.failFast();
+			}
+			else if (schemaUri.toLowerCase().endsWith(XSD_EXTENSION)) {
+				engine = XsdValidationEngine.create(schemaUri, catalogPaths, schemaCache);
+			}
+			else if (NvdlValidationEngine.isNvdl(schemaUri)) {
+				engine = NvdlValidationEngine.create(schemaUri, catalogPaths, schemaCache, maxSectionSize);
+			}
+			else {
+				engine = JingValidationEngine.create(schemaUri, catalogPaths, schemaCache);
+			}
+			return new XmlValidator(schemaUri, catalogPaths, engine, errorPolicy != null ? errorPolicy : defaultErrorPolicy, resultCache);
 		}
 	}
 }
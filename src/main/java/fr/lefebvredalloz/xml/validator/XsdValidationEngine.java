@@ -0,0 +1,151 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.resolver.Resolver;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.xml.sax.CountingErrorHandler;
+import eu.els.sie.xml.validation.SchemaCache.SchemaKey;
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.lang.String.format;
+
+/**
+ * Validation with an XSD compiled by the JAXP (Xerces) schema factory.
+ * The compiled {@link Schema} is thread-safe and shared through the {@link SchemaCache}, the {@link Validator}s
+ * it creates are not : they are pooled by the engine and reset after each document.
+ */
+class XsdValidationEngine implements ValidationEngine {
+
+	// schema language of the Xerces builds supporting XSD 1.1
+	private static final String XSD_11_NS_URI = "http://www.w3.org/XML/XMLSchema/v1.1";
+
+	private static final int MAX_POOLED_VALIDATORS = 2 * Runtime.getRuntime().availableProcessors();
+
+	private final Schema schema;
+
+	// resources read to compile the schema
+	private final SchemaDependencies dependencies;
+
+	// document parsers with the catalog resolver
+	private final XMLReaderPool readers;
+
+	// catalog resolution of the entities of the documents
+	private final LSResourceResolver resourceResolver;
+
+	private final BlockingQueue<Validator> validators = new ArrayBlockingQueue<>(MAX_POOLED_VALIDATORS);
+
+	private XsdValidationEngine(Schema schema, SchemaDependencies dependencies, PropertyMap propertyMap, LSResourceResolver resourceResolver) {
+		this.schema = schema;
+		this.dependencies = dependencies;
+		this.readers = XMLReaderPool.forProperties(propertyMap);
+		this.resourceResolver = resourceResolver;
+	}
+
+	/**
+	 * Create an engine for the XSD, the compiled schema is taken from the cache when available
+	 * @param schemaUri URI of the XSD
+	 * @param catalogPaths list of catalogs to be loaded with classLoader
+	 * @param schemaCache cache of compiled schemas
+	 */
+	static XsdValidationEngine create(String schemaUri, List<String> catalogPaths, SchemaCache schemaCache) throws XmlValidationException {
+		PropertyMap propertyMap = XmlValidator.createPropertyMap(catalogPaths);
+		Resolver resolver = propertyMap.get(ValidateProperty.RESOLVER);
+		LSResourceResolver resourceResolver = new CatalogResourceResolver(resolver);
+		SchemaCache.CompiledSchema compiledSchema = schemaCache.getCompiledSchema(new SchemaKey(Schema.class, schemaUri, catalogPaths, propertyMap),
+				key -> loadSchema(key.getSchemaUri(), resourceResolver));
+		return new XsdValidationEngine(compiledSchema.getSchema(), compiledSchema.getDependencies(), propertyMap, resourceResolver);
+	}
+
+	/**
+	 * Compile an XSD, with XSD 1.1 support when the Xerces build provides it
+	 * @param schemaUri URI of the XSD
+	 * @param resourceResolver catalog resolution of the included and imported schemas, may be null
+	 * @return the compiled schema
+	 * @throws XmlValidationException if the schema cannot be read or is incorrect
+	 */
+	private static Schema loadSchema(String schemaUri, LSResourceResolver resourceResolver) throws XmlValidationException {
+		XmlValidationErrorHandler errorHandler = new XmlValidationErrorHandler();
+		CountingErrorHandler countingErrorHandler = new CountingErrorHandler(errorHandler);
+		SchemaFactory schemaFactory = createSchemaFactory();
+		schemaFactory.setErrorHandler(countingErrorHandler);
+		schemaFactory.setResourceResolver(resourceResolver);
+		try {
+			// the factory goes on after the errors reported to a non throwing error handler
+			Schema schema = schemaFactory.newSchema(new StreamSource(schemaUri));
+			if (countingErrorHandler.getHadErrorOrFatalError()) {
+				throw new XmlValidationException(format("Error while parsing schema: %s", schemaUri), errorHandler.getValidationReport());
+			}
+			return schema;
+		} catch (SAXException e) {
+			throw new XmlValidationException(format("Error while parsing schema: %s", schemaUri), errorHandler.getValidationReport());
+		}
+	}
+
+	private static SchemaFactory createSchemaFactory() {
+		try {
+			return SchemaFactory.newInstance(XSD_11_NS_URI);
+		} catch (IllegalArgumentException e) {
+			return new XMLSchemaFactory();
+		}
+	}
+
+	@Override
+	public SchemaDependencies getDependencies() {
+		return dependencies;
+	}
+
+	@Override
+	public boolean validate(InputSource xml, XmlValidationErrorHandler errorHandler) throws IOException, SAXException {
+		CountingErrorHandler countingErrorHandler = new CountingErrorHandler(errorHandler);
+		Validator validator = borrowValidator();
+		XMLReader reader = readers.borrow();
+		errorHandler.continueParsingOnAbort(reader);
+		try {
+			validator.setErrorHandler(countingErrorHandler);
+			validator.validate(new SAXSource(reader, xml));
+			return !countingErrorHandler.getHadErrorOrFatalError();
+		} finally {
+			readers.release(reader);
+			releaseValidator(validator);
+		}
+	}
+
+	@Override
+	public ValidationHandler createHandler(String systemId, XmlValidationErrorHandler errorHandler) {
+		ValidatorHandler validatorHandler = schema.newValidatorHandler();
+		validatorHandler.setErrorHandler(errorHandler);
+		validatorHandler.setResourceResolver(resourceResolver);
+		return new ValidationHandler(validatorHandler, null, null);
+	}
+
+	private Validator borrowValidator() {
+		Validator validator = validators.poll();
+		if (validator == null) {
+			validator = schema.newValidator();
+		}
+		// the resolver is dropped by reset()
+		validator.setResourceResolver(resourceResolver);
+		return validator;
+	}
+
+	private void releaseValidator(Validator validator) {
+		validator.reset();
+		// the validator is dropped if the pool is full
+		validators.offer(validator);
+	}
+}
@@ -0,0 +1,137 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchValidatorTest {
+
+	private static final ClassLoader CLASS_LOADER = BatchValidatorTest.class.getClassLoader();
+
+	private static Path resourcePath(String resourcePath) throws Exception {
+		return Paths.get(CLASS_LOADER.getResource(resourcePath).toURI());
+	}
+
+	@Test
+	void GIVEN_valid_and_invalid_files_WHEN_validate_batch_THEN_one_result_per_file() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng").build();
+		List<Path> files = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			files.add(resourcePath("sample/models/test/rng/book-valid-rng.xml"));
+			files.add(resourcePath("sample/models/test/rng/book-invalid-rng.xml"));
+		}
+
+		Map<Boolean, Long> counts = BatchValidator.builder().maxInFlight(4).build()
+				.validate(files, validator)
+				.collect(Collectors.partitioningBy(BatchValidator.Result::isValid, Collectors.counting()));
+
+		assertEquals(10, counts.get(true));
+		assertEquals(10, counts.get(false));
+	}
+
+	@Test
+	void GIVEN_documents_with_different_schemas_WHEN_validate_batch_THEN_each_validated_with_its_schema() throws Exception {
+		XmlValidator rng = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/rng/simple-book/simple-book.rng").build();
+		XmlValidator dtd = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd").build();
+		byte[] rngXml = CLASS_LOADER.getResourceAsStream("sample/models/test/rng/simple-book-valid-rng.xml").readAllBytes();
+
+		List<BatchValidator.Document> documents = List.of(
+				BatchValidator.Document.of("rng", rngXml, rng),
+				BatchValidator.Document.of("dtd", () -> CLASS_LOADER.getResourceAsStream("sample/models/test/dtd/book-valid-dtd.xml"), dtd),
+				BatchValidator.Document.of("dtd-invalid", () -> CLASS_LOADER.getResourceAsStream("sample/models/test/dtd/book-invalid-dtd.xml"), dtd));
+
+		Map<String, BatchValidator.Result> results = BatchValidator.builder().build()
+				.validate(documents.iterator())
+				.collect(Collectors.toMap(BatchValidator.Result::getId, result -> result));
+
+		assertTrue(results.get("rng").isValid());
+		assertTrue(results.get("dtd").isValid());
+		assertFalse(results.get("dtd-invalid").isValid());
+		assertTrue(results.get("dtd-invalid").getException().getMessage().contains("XML is not valid"));
+		assertNull(results.get("dtd-invalid").getFailure());
+		assertFalse(results.get("dtd-invalid").getValidationResult().isValid());
+	}
+
+	@Test
+	void GIVEN_slow_consumer_WHEN_validate_batch_THEN_documents_in_flight_are_bounded() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng").build();
+		byte[] xml = CLASS_LOADER.getResourceAsStream("sample/models/test/rng/book-valid-rng.xml").readAllBytes();
+		AtomicInteger pulled = new AtomicInteger();
+		Iterator<BatchValidator.Document> documents = new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return pulled.get() < 50;
+			}
+
+			@Override
+			public BatchValidator.Document next() {
+				return BatchValidator.Document.of("doc" + pulled.incrementAndGet(), xml, validator);
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Iterator<BatchValidator.Result> results = BatchValidator.builder().executor(executor).maxInFlight(3).build()
+					.validate(documents).iterator();
+			int consumed = 0;
+			while (results.hasNext()) {
+				assertTrue(results.next().isValid());
+				consumed++;
+				assertTrue(pulled.get() - consumed <= 3);
+			}
+			assertEquals(50, consumed);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void GIVEN_document_failing_with_error_WHEN_validate_batch_THEN_failure_result() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng").build();
+		List<BatchValidator.Document> documents = List.of(
+				BatchValidator.Document.of("error", () -> { throw new StackOverflowError(); }, validator),
+				BatchValidator.Document.of("valid", () -> CLASS_LOADER.getResourceAsStream("sample/models/test/rng/book-valid-rng.xml"), validator));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Map<String, BatchValidator.Result> results = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> BatchValidator.builder()
+					.executor(executor).build()
+					.validate(documents.iterator())
+					.collect(Collectors.toMap(BatchValidator.Result::getId, result -> result)));
+
+			assertTrue(results.get("valid").isValid());
+			assertTrue(results.get("error").getFailure().getMessage().contains("StackOverflowError"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void GIVEN_rejecting_executor_WHEN_validate_batch_THEN_rejection_propagated() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng").build();
+		byte[] xml = CLASS_LOADER.getResourceAsStream("sample/models/test/rng/book-valid-rng.xml").readAllBytes();
+		Executor executor = command -> {
+			throw new RejectedExecutionException("shut down");
+		};
+
+		Iterator<BatchValidator.Result> results = BatchValidator.builder().executor(executor).build()
+				.validate(List.of(BatchValidator.Document.of("doc", xml, validator)).iterator()).iterator();
+
+		assertThrows(RejectedExecutionException.class, results::hasNext);
+		assertFalse(assertTimeoutPreemptively(Duration.ofSeconds(30), results::hasNext));
+	}
+}
@@ -0,0 +1,92 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static eu.els.sie.xml.validation.TestResources.getResourceContent;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DtdGrammarPoolTest {
+
+	private static final String BOOK_WITH_ENTITIES_DTD = "cp:/xml-multi-models-sample/main/grammars/dtd/book/book-with-entities.dtd";
+
+	private static final byte[] BOOK_WITHOUT_DOCTYPE = "<book><page id=\"page1\">page one</page></book>".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path tempDir;
+
+	@AfterEach
+	void evictPools() {
+		DtdGrammarPool.evictAll();
+	}
+
+	private Path copyBookDtd() throws Exception {
+		Path dtd = tempDir.resolve("book.dtd");
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream("sample/models/main/grammars/dtd/book/book.dtd")) {
+			Files.copy(in, dtd);
+		}
+		return dtd;
+	}
+
+	@Test
+	void GIVEN_dtd_read_once_WHEN_dtd_file_removed_THEN_next_validation_uses_pooled_grammar() throws Exception {
+		Path dtd = copyBookDtd();
+		XmlValidator validator = XmlValidator.forSchema(dtd.toUri().toString()).build();
+
+		assertTrue(validator.validate(BOOK_WITHOUT_DOCTYPE));
+		Files.delete(dtd);
+		assertTrue(validator.validate(BOOK_WITHOUT_DOCTYPE));
+	}
+
+	@Test
+	void GIVEN_preloaded_dtd_WHEN_evict_THEN_dtd_read_again() throws Exception {
+		Path dtd = copyBookDtd();
+		String dtdUri = dtd.toUri().toString();
+		DtdGrammarPool pool = DtdGrammarPool.forDoctype(dtdUri, null);
+
+		pool.preload(dtdUri);
+		assertEquals(1, pool.getSystemIds().size());
+		Files.delete(dtd);
+		assertTrue(XmlValidator.forSchema(dtdUri).build().validate(BOOK_WITHOUT_DOCTYPE));
+
+		assertTrue(pool.evict(dtdUri));
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class,
+				() -> XmlValidator.forSchema(dtdUri).build().validate(BOOK_WITHOUT_DOCTYPE));
+		assertTrue(expThatWasThrown.getMessage().contains("Error while reading input stream"));
+	}
+
+	@Test
+	void GIVEN_dtd_declaring_entities_WHEN_validated_twice_THEN_entities_declared_again() throws Exception {
+		// the relative doctype of the sample is made absolute, the document has no base URI
+		byte[] xml = new String(getResourceContent("sample/models/test/dtd/book-with-entities-valid-dtd.xml"), StandardCharsets.UTF_8)
+				.replace("../../main/grammars/dtd/book/book-with-entities.dtd", BOOK_WITH_ENTITIES_DTD).getBytes(StandardCharsets.UTF_8);
+
+		for (int i = 0; i < 2; i++) {
+			ValidationResult result = XmlValidator.checkXmlWithDTD(xml);
+			assertEquals(ValidationResult.Status.VALID, result.getStatus(), result.toString());
+		}
+	}
+
+	@Test
+	void GIVEN_forced_dtd_declaring_entities_WHEN_validated_twice_THEN_entities_declared_again() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_WITH_ENTITIES_DTD).build();
+		byte[] xml = "<book><page id=\"page1\">page&nbsp;one</page></book>".getBytes(StandardCharsets.UTF_8);
+
+		for (int i = 0; i < 2; i++) {
+			ValidationResult result = validator.check(xml);
+			assertEquals(ValidationResult.Status.VALID, result.getStatus(), result.toString());
+		}
+	}
+
+	@Test
+	void GIVEN_not_existing_dtd_WHEN_preload_THEN_exception() throws XmlValidationException {
+		DtdGrammarPool pool = DtdGrammarPool.forDoctype(null, null);
+		assertThrows(XmlValidationException.class, () -> pool.preload(tempDir.resolve("missing.dtd").toUri().toString()));
+	}
+}
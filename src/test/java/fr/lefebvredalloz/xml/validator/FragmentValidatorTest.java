@@ -0,0 +1,117 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static eu.els.sie.xml.validation.TestResources.assertSameResultsAsValidator;
+import static eu.els.sie.xml.validation.TestResources.getErrorCount;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FragmentValidatorTest {
+
+	private static final String BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng";
+	private static final String SIMPLE_BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/simple-book/simple-book.rng";
+
+	private static final String BOOK = "<book>\n"
+			+ "  <page id=\"p1\">This is page <bold>one</bold>.</page>\n"
+			+ "  <page id=\"p2\">This is page <bold>two</bold>.</page>\n"
+			+ "  <page id=\"p3\">This is page <foo>three</foo>.</page>\n"
+			+ "</book>";
+
+	@Test
+	void GIVEN_documents_WHEN_check_THEN_same_results_as_validator() throws Exception {
+		assertSameResultsAsValidator(List.of(BOOK_RNG, SIMPLE_BOOK_RNG), schemaUri -> FragmentValidator.forSchema(schemaUri).build()::check,
+				(expected, actual, message) -> {
+					assertEquals(expected.getStatus(), actual.getStatus(), message);
+					assertEquals(getErrorCount(expected), getErrorCount(actual), message);
+				});
+	}
+
+	@Test
+	void GIVEN_document_checked_WHEN_one_subtree_changed_THEN_only_this_subtree_validated_again() throws Exception {
+		FragmentValidator fragmentValidator = FragmentValidator.forSchema(BOOK_RNG).build();
+		ValidationResult first = fragmentValidator.check(BOOK.getBytes(StandardCharsets.UTF_8));
+		assertEquals(3, fragmentValidator.getCacheMissCount());
+
+		ValidationResult second = fragmentValidator.check(BOOK.replace("page <bold>two", "page <italic>two</italic> <bold>2")
+				.getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(4, fragmentValidator.getCacheMissCount());
+		assertEquals(2, fragmentValidator.getCacheHitCount());
+		assertFalse(first.isValid());
+		assertEquals(1, getErrorCount(second));
+		assertEquals(first.getValidationReport().getIssues().get(0).getLineNumber(), second.getValidationReport().getIssues().get(0).getLineNumber());
+	}
+
+	@Test
+	void GIVEN_cached_invalid_subtree_WHEN_moved_down_THEN_error_located_at_new_line() throws Exception {
+		FragmentValidator fragmentValidator = FragmentValidator.forSchema(BOOK_RNG).build();
+		fragmentValidator.check(BOOK.getBytes(StandardCharsets.UTF_8));
+		byte[] moved = BOOK.replace("<book>\n", "<book>\n\n\n").getBytes(StandardCharsets.UTF_8);
+
+		ValidationResult result = fragmentValidator.check(moved);
+
+		assertEquals(6, fragmentValidator.getCacheHitCount() + fragmentValidator.getCacheMissCount());
+		assertEquals(3, fragmentValidator.getCacheHitCount());
+		ValidationIssue expected = XmlValidator.forSchema(BOOK_RNG).build().check(moved).getValidationReport().getIssues().get(0);
+		ValidationIssue actual = result.getValidationReport().getIssues().get(0);
+		assertEquals(expected.getLineNumber(), actual.getLineNumber());
+		assertEquals(expected.getColumnNumber(), actual.getColumnNumber());
+	}
+
+	@Test
+	void GIVEN_fragment_in_context_WHEN_check_THEN_validated_against_element_pattern() throws Exception {
+		FragmentValidator fragmentValidator = FragmentValidator.forSchema(BOOK_RNG).build();
+
+		ValidationResult valid = fragmentValidator.check("<page id=\"p9\">Page <span style=\"x\">nine</span></page>".getBytes(StandardCharsets.UTF_8), "book");
+		ValidationResult invalid = fragmentValidator.check("<page>Page <foo/></page>".getBytes(StandardCharsets.UTF_8), "book");
+		ValidationResult invalidAttribute = fragmentValidator.check("<page>Page <bold style=\"x\">nine</bold></page>".getBytes(StandardCharsets.UTF_8), "book");
+
+		assertTrue(valid.isValid(), valid.toString());
+		assertEquals(1, getErrorCount(invalid));
+		assertEquals(1, getErrorCount(invalidAttribute));
+	}
+
+	@Test
+	void GIVEN_fragment_element_not_allowed_in_context_WHEN_check_THEN_invalid() throws Exception {
+		FragmentValidator fragmentValidator = FragmentValidator.forSchema(BOOK_RNG).build();
+
+		ValidationResult unknown = fragmentValidator.check("<bogus><q/></bogus>".getBytes(StandardCharsets.UTF_8), "book");
+		ValidationResult otherContext = fragmentValidator.check("<bold>one</bold>".getBytes(StandardCharsets.UTF_8), "book");
+
+		assertEquals(ValidationResult.Status.INVALID, unknown.getStatus());
+		assertTrue(unknown.getValidationReport().getIssues().get(0).getMessage().contains("bogus"), unknown.toString());
+		assertEquals(ValidationResult.Status.INVALID, otherContext.getStatus());
+		assertTrue(otherContext.getValidationReport().getIssues().get(0).getMessage().contains("bold"), otherContext.toString());
+	}
+
+	@Test
+	void GIVEN_fragment_element_allowed_after_siblings_WHEN_check_THEN_valid(@TempDir Path directory) throws Exception {
+		Path schema = directory.resolve("doc.rng");
+		Files.writeString(schema, "<element name=\"doc\" xmlns=\"http://relaxng.org/ns/structure/1.0\">"
+				+ "<element name=\"head\"><empty/></element>"
+				+ "<oneOrMore><element name=\"section\"><element name=\"title\"><text/></element><zeroOrMore><element name=\"p\"><text/></element></zeroOrMore></element></oneOrMore>"
+				+ "<optional><element name=\"appendix\"><empty/></element></optional>"
+				+ "</element>");
+		FragmentValidator fragmentValidator = FragmentValidator.forSchema(schema.toUri().toString()).build();
+
+		ValidationResult last = fragmentValidator.check("<appendix/>".getBytes(StandardCharsets.UTF_8), "doc");
+		ValidationResult nested = fragmentValidator.check("<p>text</p>".getBytes(StandardCharsets.UTF_8), "doc", "section");
+		ValidationResult notInParent = fragmentValidator.check("<p>text</p>".getBytes(StandardCharsets.UTF_8), "doc");
+
+		assertTrue(last.isValid(), last.toString());
+		assertTrue(nested.isValid(), nested.toString());
+		assertEquals(1, getErrorCount(notInParent));
+	}
+
+	@Test
+	void GIVEN_xsd_schema_WHEN_build_THEN_exception() {
+		assertThrows(XmlValidationException.class,
+				() -> FragmentValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd").build());
+	}
+}
@@ -0,0 +1,50 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFileInputStreamTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void GIVEN_file_larger_than_window_WHEN_read_THEN_same_content() throws IOException {
+		byte[] content = new byte[10_000];
+		new Random(42).nextBytes(content);
+		Path file = Files.write(tempDir.resolve("content.bin"), content);
+
+		try (InputStream inputStream = new MappedFileInputStream(FileChannel.open(file, StandardOpenOption.READ), 1000)) {
+			assertEquals(content[0] & 0xff, inputStream.read());
+			assertEquals(2500, inputStream.skip(2500));
+			byte[] rest = inputStream.readAllBytes();
+			assertEquals(content.length - 2501, rest.length);
+			assertEquals(content[2501], rest[0]);
+			assertEquals(content[content.length - 1], rest[rest.length - 1]);
+			assertEquals(-1, inputStream.read());
+		}
+	}
+
+	@Test
+	void GIVEN_large_xml_file_WHEN_check_wellFormedness_THEN_success() throws Exception {
+		Path xml = tempDir.resolve("large.xml");
+		StringBuilder builder = new StringBuilder("<book>");
+		while (builder.length() < 2 * MappedFileInputStream.MAPPING_THRESHOLD) {
+			builder.append("<page>Lorem ipsum dolor sit amet</page>");
+		}
+		Files.write(xml, builder.append("</book>").toString().getBytes(StandardCharsets.UTF_8));
+
+		XmlValidator.checkXmlWellFormedness(xml);
+	}
+}
@@ -0,0 +1,100 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static eu.els.sie.xml.validation.TestResources.getResourceContent;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiSchemaValidatorTest {
+
+	private static final String BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng";
+	private static final String BOOK_XSD = "cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd";
+	private static final String BOOK_NO_XSLT_SCH = "cp:/xml-multi-models-sample/main/grammars/sch/book-no-xslt.sch";
+
+	private static final List<String> DOCUMENTS = List.of(
+			"sample/models/test/rng/book-valid-rng.xml",
+			"sample/models/test/rng/book-invalid-rng.xml",
+			"sample/models/test/xsd/book-valid-xsd.xml",
+			"sample/models/test/xsd/book-invalid-xsd.xml",
+			"sample/models/test/sch/book-valid-sch.xml",
+			"sample/models/test/sch/book-invalid-sch.xml");
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void GIVEN_several_schemas_WHEN_check_THEN_same_results_as_one_validation_per_schema() throws Exception {
+		Path artifact = tempDir.resolve("book-no-xslt" + SchematronCompiler.PRECOMPILED_EXTENSION);
+		SchematronCompiler.precompile(BOOK_NO_XSLT_SCH, artifact);
+		List<String> schemaUris = List.of(BOOK_RNG, BOOK_XSD, BOOK_NO_XSLT_SCH, artifact.toUri().toString());
+		MultiSchemaValidator multiSchemaValidator = MultiSchemaValidator.forSchemas(schemaUris).build();
+
+		for (String document : DOCUMENTS) {
+			byte[] xml = getResourceContent(document);
+			MultiSchemaResult result = multiSchemaValidator.check(xml);
+
+			assertEquals(schemaUris.size(), result.getResults().size());
+			for (String schemaUri : schemaUris) {
+				ValidationResult expected = XmlValidator.forSchema(schemaUri).build().check(xml);
+				ValidationResult actual = result.getResult(schemaUri);
+				assertEquals(expected.getStatus(), actual.getStatus(), document + " " + schemaUri);
+				assertEquals(expected.getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR),
+						actual.getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR), document + " " + schemaUri);
+			}
+		}
+	}
+
+	@Test
+	void GIVEN_invalid_xml_WHEN_check_THEN_failures_reported_per_schema() throws Exception {
+		MultiSchemaResult result = MultiSchemaValidator.forSchemas(BOOK_RNG, BOOK_NO_XSLT_SCH).build()
+				.check(getResourceContent("sample/models/test/sch/book-invalid-sch.xml"));
+
+		assertFalse(result.isValid());
+		assertTrue(result.getFailures().contains(result.getResult(BOOK_NO_XSLT_SCH)));
+		assertEquals(3, result.getResult(BOOK_NO_XSLT_SCH).getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR));
+		assertNull(result.getResult(BOOK_XSD));
+	}
+
+	@Test
+	void GIVEN_fail_fast_policy_WHEN_check_THEN_other_schemas_still_validated() throws Exception {
+		MultiSchemaResult result = MultiSchemaValidator.forSchemas(BOOK_XSD, BOOK_NO_XSLT_SCH).errorPolicy(ErrorPolicy.failFast()).build()
+				.check(getResourceContent("sample/models/test/sch/book-invalid-sch.xml"));
+
+		assertEquals(1, result.getResult(BOOK_NO_XSLT_SCH).getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR));
+		assertEquals(XmlValidator.forSchema(BOOK_XSD).build().check(getResourceContent("sample/models/test/sch/book-invalid-sch.xml")).getStatus(),
+				result.getResult(BOOK_XSD).getStatus());
+	}
+
+	@Test
+	void GIVEN_xml_invalid_then_not_wellformed_WHEN_check_fail_fast_THEN_not_well_formed_for_every_schema() throws Exception {
+		byte[] xml = "<book><page id=\"p1\" foo=\"1\">one</page><page id=\"p2\">two</pag></book>".getBytes(StandardCharsets.UTF_8);
+
+		MultiSchemaResult result = MultiSchemaValidator.forSchemas(BOOK_RNG, BOOK_XSD).errorPolicy(ErrorPolicy.failFast()).build().check(xml);
+
+		for (ValidationResult schemaResult : result.getResults()) {
+			assertEquals(ValidationResult.Status.NOT_WELL_FORMED, schemaResult.getStatus(), schemaResult.getSchemaUri());
+			assertEquals(1, schemaResult.getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR));
+		}
+	}
+
+	@Test
+	void GIVEN_not_wellformed_xml_WHEN_check_THEN_not_well_formed_for_every_schema() throws Exception {
+		MultiSchemaResult result = MultiSchemaValidator.forSchemas(BOOK_RNG, BOOK_XSD).build()
+				.check(getResourceContent("sample/models/test/book-not-wellformed.xml"));
+
+		for (ValidationResult schemaResult : result.getResults()) {
+			assertEquals(ValidationResult.Status.NOT_WELL_FORMED, schemaResult.getStatus());
+		}
+	}
+
+	@Test
+	void GIVEN_dtd_WHEN_build_THEN_exception() {
+		assertThrows(XmlValidationException.class,
+				() -> MultiSchemaValidator.forSchemas(BOOK_RNG, "cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd").build());
+	}
+}
@@ -0,0 +1,91 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static eu.els.sie.xml.validation.TestResources.getResourceContent;
+import static eu.els.sie.xml.validation.TestResources.getErrorCount;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NvdlValidationEngineTest {
+
+	private static final String BOOK_AND_SCHEMATRON_NVDL = "cp:/xml-multi-models-sample/main/grammars/nvdl/book-and-schematron.nvdl";
+
+	@Test
+	void GIVEN_nvdl_validator_WHEN_documents_validated_in_turn_THEN_pooled_validators_give_same_results() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_AND_SCHEMATRON_NVDL).build();
+		byte[] valid = getResourceContent("sample/models/test/nvdl/book-valid-nvdl.xml");
+		byte[] invalid = getResourceContent("sample/models/test/nvdl/book-invalid-nvdl.xml");
+		int expectedErrors = getErrorCount(validator.check(invalid));
+		assertTrue(expectedErrors > 0);
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(validator.check(valid).isValid());
+			ValidationResult result = validator.check(invalid);
+			assertEquals(ValidationResult.Status.INVALID, result.getStatus());
+			assertEquals(expectedErrors, getErrorCount(result));
+		}
+	}
+
+	@Test
+	void GIVEN_nvdl_validator_WHEN_error_policy_stops_validation_THEN_next_document_validated() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_AND_SCHEMATRON_NVDL).errorPolicy(ErrorPolicy.failFast()).build();
+
+		ValidationResult invalid = validator.check(getResourceContent("sample/models/test/nvdl/book-invalid-nvdl.xml"));
+		ValidationResult valid = validator.check(getResourceContent("sample/models/test/nvdl/book-valid-nvdl.xml"));
+
+		assertEquals(1, getErrorCount(invalid));
+		assertTrue(valid.isValid(), valid.toString());
+	}
+
+	@Test
+	void GIVEN_max_section_size_WHEN_section_buffered_by_schematron_too_large_THEN_invalid() throws Exception {
+		byte[] xml = createBook(100);
+
+		ValidationResult unlimited = XmlValidator.forSchema(BOOK_AND_SCHEMATRON_NVDL).build().check(xml);
+		ValidationResult limited = XmlValidator.forSchema(BOOK_AND_SCHEMATRON_NVDL).maxSectionSize(4096).build().check(xml);
+
+		assertTrue(unlimited.isValid(), unlimited.toString());
+		assertEquals(ValidationResult.Status.INVALID, limited.getStatus());
+		List<ValidationIssue> issues = limited.getValidationReport().getIssues();
+		assertTrue(issues.get(issues.size() - 1).getMessage().contains("4096 bytes"), issues.toString());
+	}
+
+	@Test
+	void GIVEN_max_section_size_WHEN_large_section_validated_as_stream_THEN_not_limited(@TempDir Path directory) throws Exception {
+		Path nvdl = directory.resolve("book-rng.nvdl");
+		Files.writeString(nvdl, "<rules xmlns=\"http://purl.oclc.org/dsdl/nvdl/ns/structure/1.0\">"
+				+ "<namespace ns=\"\"><validate schema=\"cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng\"/></namespace>"
+				+ "</rules>");
+
+		ValidationResult result = XmlValidator.forSchema(nvdl.toUri().toString()).maxSectionSize(4096).build().check(createBook(100));
+
+		assertTrue(result.isValid(), result.toString());
+	}
+
+	@Test
+	void GIVEN_shared_result_cache_WHEN_max_section_size_differs_THEN_limited_result_not_taken_from_cache() throws Exception {
+		ResultCache resultCache = new ResultCache(16);
+		byte[] xml = createBook(100);
+
+		ValidationResult unlimited = XmlValidator.forSchema(BOOK_AND_SCHEMATRON_NVDL).resultCache(resultCache).build().check(xml);
+		ValidationResult limited = XmlValidator.forSchema(BOOK_AND_SCHEMATRON_NVDL).maxSectionSize(4096).resultCache(resultCache).build().check(xml);
+
+		assertTrue(unlimited.isValid(), unlimited.toString());
+		assertEquals(ValidationResult.Status.INVALID, limited.getStatus());
+		assertEquals(0, resultCache.getHitCount());
+	}
+
+	private static byte[] createBook(int pages) {
+		StringBuilder book = new StringBuilder("<book>\n");
+		for (int i = 0; i < pages; i++) {
+			book.append("  <page id=\"p").append(i).append("\">This is page <bold>").append(i).append("</bold>.</page>\n");
+		}
+		return book.append("</book>\n").toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
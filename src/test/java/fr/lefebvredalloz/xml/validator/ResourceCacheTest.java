@@ -0,0 +1,87 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceCacheTest {
+
+	private static final String SIMPLE_BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/simple-book/simple-book.rng";
+
+	@TempDir
+	Path tempDir;
+
+	private String write(String name, int size) throws IOException {
+		Path file = tempDir.resolve(name);
+		Files.write(file, new byte[size]);
+		return file.toUri().toString();
+	}
+
+	@Test
+	void GIVEN_resource_read_once_WHEN_open_again_THEN_content_from_cache() throws IOException {
+		ResourceCache cache = new ResourceCache(1024);
+		String uri = write("module.rng", 10);
+
+		cache.open(uri).close();
+		Files.delete(tempDir.resolve("module.rng"));
+		try (InputStream inputStream = cache.open(uri)) {
+			assertEquals(10, inputStream.readAllBytes().length);
+		}
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	void GIVEN_cache_full_WHEN_open_new_resource_THEN_least_recently_used_evicted() throws IOException {
+		ResourceCache cache = new ResourceCache(100);
+		String first = write("first.ent", 25);
+		String second = write("second.ent", 25);
+
+		cache.open(first).close();
+		cache.open(second).close();
+		cache.open(write("third.ent", 25)).close();
+		cache.open(write("fourth.ent", 25)).close();
+		cache.open(first).close();
+		cache.open(write("fifth.ent", 25)).close();
+
+		assertEquals(4, cache.size());
+		assertEquals(100, cache.getBytes());
+		assertEquals(1, cache.getEvictionCount());
+		cache.open(first).close();
+		cache.open(second).close();
+		assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	void GIVEN_big_resource_WHEN_open_THEN_not_cached() throws IOException {
+		ResourceCache cache = new ResourceCache(100);
+
+		cache.open(write("big.dtd", 60)).close();
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void GIVEN_missing_resource_WHEN_open_THEN_exception() {
+		ResourceCache cache = new ResourceCache(100);
+
+		assertThrows(IOException.class, () -> cache.open(tempDir.resolve("missing.dtd").toUri().toString()));
+	}
+
+	@Test
+	void GIVEN_schema_compiled_twice_WHEN_compile_THEN_schema_read_from_resource_cache() throws XmlValidationException {
+		ResourceCache cache = ResourceCache.getDefault();
+
+		XmlValidator.forSchema(SIMPLE_BOOK_RNG).schemaCache(new SchemaCache(1)).build();
+		long hits = cache.getHitCount();
+		XmlValidator.forSchema(SIMPLE_BOOK_RNG).schemaCache(new SchemaCache(1)).build();
+
+		assertTrue(cache.getHitCount() > hits);
+	}
+}
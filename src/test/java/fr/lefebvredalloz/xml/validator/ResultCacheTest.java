@@ -0,0 +1,109 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static eu.els.sie.xml.validation.TestResources.getResourceContent;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTest {
+
+	private static final String BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng";
+	private static final String BOOK_XSD = "cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void GIVEN_result_cache_WHEN_same_document_checked_twice_THEN_second_result_from_cache() throws Exception {
+		ResultCache resultCache = new ResultCache(16);
+		XmlValidator validator = XmlValidator.forSchema(BOOK_RNG).resultCache(resultCache).build();
+		byte[] xml = getResourceContent("sample/models/test/rng/book-invalid-rng.xml");
+
+		ValidationResult first = validator.check(xml);
+		ValidationResult second = validator.check(xml.clone());
+
+		assertFalse(first.isValid());
+		assertSame(first, second);
+		assertEquals(1, resultCache.getHitCount());
+		assertEquals(1, resultCache.getMissCount());
+	}
+
+	@Test
+	void GIVEN_result_cache_WHEN_other_schema_or_error_policy_THEN_validated_again() throws Exception {
+		ResultCache resultCache = new ResultCache(16);
+		byte[] xml = getResourceContent("sample/models/test/xsd/book-invalid-xsd.xml");
+
+		XmlValidator.forSchema(BOOK_XSD).resultCache(resultCache).build().check(xml);
+		ValidationResult failFast = XmlValidator.forSchema(BOOK_XSD).errorPolicy(ErrorPolicy.failFast()).resultCache(resultCache).build().check(xml);
+		XmlValidator.forSchema(BOOK_RNG).resultCache(resultCache).build().check(xml);
+
+		assertEquals(0, resultCache.getHitCount());
+		assertEquals(3, resultCache.size());
+		assertEquals(1, failFast.getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR));
+	}
+
+	@Test
+	void GIVEN_disk_tier_WHEN_new_cache_on_same_directory_THEN_result_read_from_disk() throws Exception {
+		byte[] xml = getResourceContent("sample/models/test/rng/book-invalid-rng.xml");
+		ValidationResult expected = XmlValidator.forSchema(BOOK_RNG).resultCache(new ResultCache(16, tempDir)).build().check(xml);
+
+		ResultCache restarted = new ResultCache(16, tempDir);
+		ValidationResult actual = XmlValidator.forSchema(BOOK_RNG).resultCache(restarted).build().check(xml);
+
+		assertEquals(1, restarted.getHitCount());
+		assertEquals(expected.getStatus(), actual.getStatus());
+		assertEquals(expected.getMessage(), actual.getMessage());
+		assertEquals(expected.getValidationReport().getIssues().size(), actual.getValidationReport().getIssues().size());
+		assertEquals(expected.getValidationReport().getIssues().get(0).getMessage(), actual.getValidationReport().getIssues().get(0).getMessage());
+	}
+
+	@Test
+	void GIVEN_cached_result_WHEN_schema_file_modified_THEN_schema_compiled_again_and_document_validated_again() throws Exception {
+		Path schema = tempDir.resolve("note.rng");
+		Files.writeString(schema, "<element name=\"note\" xmlns=\"http://relaxng.org/ns/structure/1.0\"><text/></element>");
+		SchemaCache schemaCache = new SchemaCache(4);
+		ResultCache resultCache = new ResultCache(16, tempDir.resolve("results"));
+		byte[] xml = "<note>text</note>".getBytes(StandardCharsets.UTF_8);
+		XmlValidator validator = XmlValidator.forSchema(schema.toUri().toString()).schemaCache(schemaCache).resultCache(resultCache).build();
+		assertTrue(validator.check(xml).isValid());
+
+		Files.writeString(schema, "<element name=\"memo\" xmlns=\"http://relaxng.org/ns/structure/1.0\"><text/></element>");
+		Files.setLastModifiedTime(schema, FileTime.fromMillis(Files.getLastModifiedTime(schema).toMillis() + 10_000));
+		validator.check(xml);
+		ValidationResult result = XmlValidator.forSchema(schema.toUri().toString()).schemaCache(schemaCache).resultCache(resultCache).build().check(xml);
+
+		assertFalse(result.isValid());
+		assertEquals(0, resultCache.getHitCount());
+		assertEquals(2, schemaCache.getMissCount());
+	}
+
+	@Test
+	void GIVEN_bounded_disk_tier_WHEN_too_many_results_THEN_least_recently_used_deleted() throws Exception {
+		Path directory = tempDir.resolve("results");
+		ResultCache resultCache = new ResultCache(1, directory, 10);
+		ValidationResult result = ValidationResult.valid(BOOK_RNG, new XmlValidationErrorHandler().getValidationReport());
+		for (int i = 0; i < 10; i++) {
+			resultCache.put("schema", "doc" + i, result);
+			Files.setLastModifiedTime(directory.resolve("schema").resolve("doc" + i + ".result"), FileTime.fromMillis(1_000_000L * (i + 1)));
+		}
+		// read from the disk tier, it becomes the most recently used
+		assertNotNull(resultCache.get("schema", "doc0"));
+
+		resultCache.put("schema", "doc10", result);
+
+		try (Stream<Path> files = Files.list(directory.resolve("schema"))) {
+			assertEquals(9, files.count());
+		}
+		assertNotNull(new ResultCache(1, directory).get("schema", "doc0"));
+		assertNull(new ResultCache(1, directory).get("schema", "doc1"));
+		assertNull(new ResultCache(1, directory).get("schema", "doc2"));
+		assertNotNull(new ResultCache(1, directory).get("schema", "doc3"));
+	}
+}
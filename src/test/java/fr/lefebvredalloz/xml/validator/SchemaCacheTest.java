@@ -0,0 +1,120 @@
+package eu.els.sie.xml.validation;
+
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.Validator;
+import eu.els.sie.xml.validation.SchemaCache.SchemaKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaCacheTest {
+
+	private static final String SIMPLE_BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/simple-book/simple-book.rng";
+	private static final String SIMPLE_BOOK_RNC = "cp:/xml-multi-models-sample/main/grammars/rnc/simple-book.rnc";
+
+	private static final Schema DUMMY_SCHEMA = new Schema() {
+		@Override
+		public Validator createValidator(PropertyMap properties) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public PropertyMap getProperties() {
+			return PropertyMap.EMPTY;
+		}
+	};
+
+	@Test
+	void GIVEN_same_key_WHEN_get_schema_twice_THEN_schema_loaded_once() throws XmlValidationException {
+		SchemaCache cache = new SchemaCache(2);
+		AtomicInteger loads = new AtomicInteger();
+		SchemaKey key = new SchemaKey(SIMPLE_BOOK_RNG, null, PropertyMap.EMPTY);
+
+		Schema first = cache.getSchema(key, k -> { loads.incrementAndGet(); return DUMMY_SCHEMA; });
+		Schema second = cache.getSchema(new SchemaKey(SIMPLE_BOOK_RNG, null, PropertyMap.EMPTY), k -> { loads.incrementAndGet(); return DUMMY_SCHEMA; });
+
+		assertSame(first, second);
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	void GIVEN_different_catalogs_WHEN_get_schema_THEN_distinct_entries() throws XmlValidationException {
+		SchemaCache cache = new SchemaCache(4);
+		cache.getSchema(new SchemaKey(SIMPLE_BOOK_RNG, null, PropertyMap.EMPTY), k -> DUMMY_SCHEMA);
+		cache.getSchema(new SchemaKey(SIMPLE_BOOK_RNG, List.of("catalog-local.xml"), PropertyMap.EMPTY), k -> DUMMY_SCHEMA);
+
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	void GIVEN_full_cache_WHEN_get_new_schema_THEN_least_recently_used_evicted() throws XmlValidationException {
+		SchemaCache cache = new SchemaCache(2);
+		SchemaKey a = new SchemaKey("cp:/a.rng", null, PropertyMap.EMPTY);
+		SchemaKey b = new SchemaKey("cp:/b.rng", null, PropertyMap.EMPTY);
+		SchemaKey c = new SchemaKey("cp:/c.rng", null, PropertyMap.EMPTY);
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.getSchema(a, k -> { loads.incrementAndGet(); return DUMMY_SCHEMA; });
+		cache.getSchema(b, k -> { loads.incrementAndGet(); return DUMMY_SCHEMA; });
+		cache.getSchema(a, k -> { loads.incrementAndGet(); return DUMMY_SCHEMA; });
+		cache.getSchema(c, k -> { loads.incrementAndGet(); return DUMMY_SCHEMA; });
+		assertEquals(3, loads.get());
+		assertEquals(2, cache.size());
+
+		// "a" was used more recently than "b" so it is still cached
+		cache.getSchema(a, k -> { loads.incrementAndGet(); return DUMMY_SCHEMA; });
+		assertEquals(3, loads.get());
+		cache.getSchema(b, k -> { loads.incrementAndGet(); return DUMMY_SCHEMA; });
+		assertEquals(4, loads.get());
+	}
+
+	@Test
+	void GIVEN_cached_schema_WHEN_invalidate_uri_THEN_schema_reloaded() throws XmlValidationException {
+		SchemaCache cache = new SchemaCache(4);
+		cache.getSchema(new SchemaKey(SIMPLE_BOOK_RNG, null, PropertyMap.EMPTY), k -> DUMMY_SCHEMA);
+		cache.getSchema(new SchemaKey(SIMPLE_BOOK_RNG, List.of("catalog-local.xml"), PropertyMap.EMPTY), k -> DUMMY_SCHEMA);
+
+		cache.invalidate(SIMPLE_BOOK_RNG);
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void GIVEN_loader_failure_WHEN_get_schema_THEN_nothing_cached() {
+		SchemaCache cache = new SchemaCache(4);
+		assertThrows(XmlValidationException.class,
+				() -> cache.getSchema(new SchemaKey(SIMPLE_BOOK_RNG, null, PropertyMap.EMPTY), k -> {
+					throw new XmlValidationException("Error while parsing schema");
+				}));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void GIVEN_rng_WHEN_validate_twice_THEN_schema_compiled_once() throws Exception {
+		SchemaCache.getDefault().invalidate(SIMPLE_BOOK_RNG);
+		byte[] xml = XmlValidatorTest.class.getClassLoader()
+				.getResourceAsStream("sample/models/test/rng/simple-book-valid-rng.xml").readAllBytes();
+
+		assertTrue(XmlValidator.validate(xml, SIMPLE_BOOK_RNG, null));
+		int size = SchemaCache.getDefault().size();
+		assertTrue(XmlValidator.validate(xml, SIMPLE_BOOK_RNG, null));
+		assertEquals(size, SchemaCache.getDefault().size());
+	}
+
+	@Test
+	void GIVEN_rnc_WHEN_build_twice_THEN_compact_schema_compiled_once() throws Exception {
+		SchemaCache cache = new SchemaCache(2);
+		byte[] xml = XmlValidatorTest.class.getClassLoader()
+				.getResourceAsStream("sample/models/test/rnc/simple-book-valid-rnc.xml").readAllBytes();
+
+		assertTrue(XmlValidator.forSchema(SIMPLE_BOOK_RNC).schemaCache(cache).build().validate(xml));
+		assertTrue(XmlValidator.forSchema(SIMPLE_BOOK_RNC).schemaCache(cache).build().validate(xml));
+
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+	}
+}
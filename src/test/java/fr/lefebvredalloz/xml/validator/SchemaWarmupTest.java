@@ -0,0 +1,57 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaWarmupTest {
+
+	private static final ClassLoader CLASS_LOADER = SchemaWarmupTest.class.getClassLoader();
+	private static final String BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng";
+	private static final String BOOK_XSD = "cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd";
+
+	@AfterEach
+	void resetMetrics() {
+		XmlValidator.setMetrics(ValidationMetrics.NOOP);
+	}
+
+	@Test
+	void GIVEN_schemas_WHEN_run_warmup_THEN_schemas_compiled_and_validators_returned() throws Exception {
+		SchemaCache schemaCache = new SchemaCache(4);
+
+		List<XmlValidator> validators = SchemaWarmup.forSchemas(BOOK_RNG, BOOK_XSD).schemaCache(schemaCache).iterations(1).run();
+
+		assertEquals(2, validators.size());
+		assertEquals(BOOK_RNG, validators.get(0).getSchemaUri());
+		assertEquals(2, schemaCache.size());
+		XmlValidator.forSchema(BOOK_XSD).schemaCache(schemaCache).build();
+		assertEquals(1, schemaCache.getHitCount());
+	}
+
+	@Test
+	void GIVEN_samples_WHEN_run_warmup_THEN_each_sample_validated_iterations_times() throws Exception {
+		AtomicInteger validations = new AtomicInteger();
+		XmlValidator.setMetrics(new ValidationMetrics() {
+			@Override
+			public void validationCompleted(String schemaUri, String grammar, ValidationResult result, long nanos, long documentBytes) {
+				validations.incrementAndGet();
+			}
+		});
+		Path sample = Paths.get(CLASS_LOADER.getResource("sample/models/test/rng/book-valid-rng.xml").toURI());
+
+		SchemaWarmup.forSchemas(BOOK_RNG).sample(sample).sample(new byte[] {'<', 'a', '/', '>'}).iterations(3).run();
+
+		assertEquals(6, validations.get());
+	}
+
+	@Test
+	void GIVEN_unknown_schema_WHEN_run_warmup_THEN_exception() {
+		assertThrows(XmlValidationException.class, () -> SchemaWarmup.forSchemas("cp:/unknown/schema.rng").iterations(1).run());
+	}
+}
@@ -0,0 +1,58 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static eu.els.sie.xml.validation.TestResources.getResourceContent;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchematronCompilerTest {
+
+	private static final String BOOK_NO_XSLT_SCH = "cp:/xml-multi-models-sample/main/grammars/sch/book-no-xslt.sch";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void GIVEN_precompiled_schematron_WHEN_validate_valid_xml_THEN_success() throws Exception {
+		Path artifact = tempDir.resolve("book-no-xslt" + SchematronCompiler.PRECOMPILED_EXTENSION);
+		SchematronCompiler.precompile(BOOK_NO_XSLT_SCH, artifact);
+
+		assertTrue(Files.size(artifact) > 0);
+		XmlValidator validator = XmlValidator.forSchema(artifact.toUri().toString()).build();
+		assertTrue(validator.validate(getResourceContent("sample/models/test/sch/book-valid-sch.xml")));
+	}
+
+	@Test
+	void GIVEN_precompiled_schematron_WHEN_validate_invalid_xml_THEN_exception() throws Exception {
+		Path artifact = tempDir.resolve("book-no-xslt" + SchematronCompiler.PRECOMPILED_EXTENSION);
+		SchematronCompiler.precompile(BOOK_NO_XSLT_SCH, artifact);
+		XmlValidator validator = XmlValidator.forSchema(artifact.toUri().toString()).build();
+		byte[] xml = getResourceContent("sample/models/test/sch/book-invalid-sch.xml");
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(xml));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid against model"));
+		assertEquals(3, expThatWasThrown.getReport().get(XmlValidationErrorHandler.LEVEL.ERROR).size());
+	}
+
+	@Test
+	void GIVEN_schema_which_is_not_schematron_WHEN_precompile_THEN_exception() {
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class,
+				() -> SchematronCompiler.precompile("cp:/xml-multi-models-sample/main/grammars/xsd/simple-book.xsd", tempDir.resolve("simple-book.sch.xsl")));
+		assertTrue(expThatWasThrown.getMessage().contains("Not a Schematron schema"));
+	}
+
+	@Test
+	void GIVEN_broken_precompiled_schematron_WHEN_build_THEN_exception_with_cause() throws Exception {
+		Path artifact = tempDir.resolve("broken" + SchematronCompiler.PRECOMPILED_EXTENSION);
+		Files.writeString(artifact, "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\"><xsl:template>");
+
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class, () -> XmlValidator.forSchema(artifact.toUri().toString()).build());
+		assertTrue(expThatWasThrown.getMessage().startsWith("Error while parsing schema " + artifact.toUri()), expThatWasThrown.getMessage());
+		// the cause locates the error in the artifact
+		assertTrue(expThatWasThrown.getMessage().contains("lineNumber: 1"), expThatWasThrown.getMessage());
+	}
+}
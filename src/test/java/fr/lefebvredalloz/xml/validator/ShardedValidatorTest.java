@@ -0,0 +1,85 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static eu.els.sie.xml.validation.TestResources.assertSameResultsAsValidator;
+import static eu.els.sie.xml.validation.TestResources.getResourceContent;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedValidatorTest {
+
+	private static final String BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng";
+	private static final String SIMPLE_BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/simple-book/simple-book.rng";
+
+	/**
+	 * A book with many pages, every tenth page has an unknown element and every 25th page an unknown attribute
+	 */
+	private static byte[] createBook(int pages) {
+		StringBuilder book = new StringBuilder("<book>\n  <title>Big <bold>book</bold></title>\n");
+		for (int i = 0; i < pages; i++) {
+			book.append("  <page id=\"p").append(i).append('"').append(i % 25 == 0 ? " style=\"x\"" : "").append(">\n")
+					.append("    Page <italic>").append(i).append("</italic>").append(i % 10 == 0 ? " <foo/>" : "").append("\n  </page>\n");
+		}
+		return book.append("</book>\n").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void assertSameResult(ValidationResult expected, ValidationResult actual) {
+		assertEquals(expected.getStatus(), actual.getStatus());
+		List<ValidationIssue> expectedIssues = expected.getValidationReport().getIssues();
+		List<ValidationIssue> actualIssues = actual.getValidationReport().getIssues();
+		assertEquals(expectedIssues.size(), actualIssues.size(), actualIssues.toString());
+		for (int i = 0; i < expectedIssues.size(); i++) {
+			assertEquals(expectedIssues.get(i).getLineNumber(), actualIssues.get(i).getLineNumber());
+			assertEquals(expectedIssues.get(i).getColumnNumber(), actualIssues.get(i).getColumnNumber());
+		}
+	}
+
+	@Test
+	void GIVEN_documents_WHEN_check_THEN_same_results_as_validator() throws Exception {
+		assertSameResultsAsValidator(List.of(BOOK_RNG, SIMPLE_BOOK_RNG), schemaUri -> ShardedValidator.forSchema(schemaUri).build()::check,
+				(expected, actual, message) -> assertSameResult(expected, actual));
+	}
+
+	@Test
+	void GIVEN_large_document_WHEN_check_in_small_batches_THEN_errors_merged_in_document_order() throws Exception {
+		byte[] xml = createBook(500);
+		ValidationResult expected = XmlValidator.forSchema(BOOK_RNG).build().check(xml);
+
+		ValidationResult actual = ShardedValidator.forSchema(BOOK_RNG).batchSize(50).maxInFlight(3).build().check(xml);
+
+		assertEquals(70, expected.getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR));
+		assertSameResult(expected, actual);
+	}
+
+	@Test
+	void GIVEN_split_elements_WHEN_check_THEN_same_results_as_validator() throws Exception {
+		byte[] xml = createBook(100);
+
+		ValidationResult actual = ShardedValidator.forSchema(BOOK_RNG).splitAt("italic", "title").batchSize(10).build().check(xml);
+
+		assertSameResult(XmlValidator.forSchema(BOOK_RNG).build().check(xml), actual);
+	}
+
+	@Test
+	void GIVEN_error_policy_WHEN_check_THEN_first_errors_in_document_order_kept() throws Exception {
+		byte[] xml = createBook(200);
+		ErrorPolicy errorPolicy = ErrorPolicy.maxErrors(5);
+
+		ValidationResult expected = XmlValidator.forSchema(BOOK_RNG).errorPolicy(errorPolicy).build().check(xml);
+		ValidationResult actual = ShardedValidator.forSchema(BOOK_RNG).errorPolicy(errorPolicy).batchSize(20).build().check(xml);
+
+		assertSameResult(expected, actual);
+	}
+
+	@Test
+	void GIVEN_not_wellformed_document_WHEN_check_THEN_not_well_formed_result() throws Exception {
+		byte[] xml = getResourceContent("sample/models/test/book-not-wellformed.xml");
+
+		ValidationResult result = ShardedValidator.forSchema(BOOK_RNG).build().check(xml);
+
+		assertEquals(ValidationResult.Status.NOT_WELL_FORMED, result.getStatus());
+	}
+}
@@ -0,0 +1,66 @@
+package eu.els.sie.xml.validation;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Helpers shared by the tests : test resources, error counts and comparison of a validator with {@link XmlValidator}
+ */
+final class TestResources {
+
+	// sample documents for the comparisons with XmlValidator, valid and invalid against the sample RELAX NG schemas
+	private static final List<String> RNG_DOCUMENTS = List.of("sample/models/test/rng/book-valid-rng.xml", "sample/models/test/rng/book-invalid-rng.xml",
+			"sample/models/test/rng/simple-book-valid-rng.xml", "sample/models/test/rng/simple-book-invalid-rng.xml");
+
+	/**
+	 * Validator under test, built for a schema
+	 */
+	@FunctionalInterface
+	interface ValidatorFactory {
+		Checker create(String schemaUri) throws Exception;
+	}
+
+	@FunctionalInterface
+	interface Checker {
+		ValidationResult check(byte[] xml) throws Exception;
+	}
+
+	/**
+	 * Compare the result of {@link XmlValidator} with the result of the validator under test
+	 */
+	@FunctionalInterface
+	interface ResultAssertion {
+		void assertSame(ValidationResult expected, ValidationResult actual, String message);
+	}
+
+	private TestResources() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	static byte[] getResourceContent(String resourcePath) throws Exception {
+		try (InputStream in = TestResources.class.getClassLoader().getResourceAsStream(resourcePath)) {
+			return in.readAllBytes();
+		}
+	}
+
+	static int getErrorCount(ValidationResult result) {
+		return result.getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR);
+	}
+
+	/**
+	 * Check the sample RELAX NG documents with the validator under test, one validator per schema for every document,
+	 * and compare the results with the results of {@link XmlValidator}
+	 * @param schemaUris RELAX NG schemas the documents are checked against
+	 */
+	static void assertSameResultsAsValidator(List<String> schemaUris, ValidatorFactory factory, ResultAssertion assertion) throws Exception {
+		for (String schemaUri : schemaUris) {
+			Checker checker = factory.create(schemaUri);
+			for (String document : RNG_DOCUMENTS) {
+				byte[] xml = getResourceContent(document);
+				ValidationResult expected = XmlValidator.forSchema(schemaUri).build().check(xml);
+
+				assertion.assertSame(expected, checker.check(xml), document + " " + schemaUri);
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package eu.els.sie.xml.validation;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static eu.els.sie.xml.validation.TestResources.getResourceContent;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidationMetricsTest {
+
+	private static final String BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng";
+	private static final String BOOK_XSD = "cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd";
+
+	@TempDir
+	Path tempDir;
+
+	/**
+	 * Metrics keeping a line per event
+	 */
+	private static class RecordingMetrics implements ValidationMetrics {
+		private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+		private final List<Long> documentSizes = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void schemaLoaded(String schemaUri, String grammar, long nanos) {
+			events.add("loaded " + grammar);
+		}
+
+		@Override
+		public void schemaCacheHit(String schemaUri, String grammar) {
+			events.add("hit " + grammar);
+		}
+
+		@Override
+		public void schemaCacheMiss(String schemaUri, String grammar) {
+			events.add("miss " + grammar);
+		}
+
+		@Override
+		public void schemaCacheEviction(String schemaUri, String grammar) {
+			events.add("eviction " + grammar);
+		}
+
+		@Override
+		public void validationStarted(String schemaUri, String grammar) {
+			events.add("started " + grammar);
+		}
+
+		@Override
+		public void validationCompleted(String schemaUri, String grammar, ValidationResult result, long nanos, long documentBytes) {
+			events.add("completed " + grammar + " " + result.getStatus());
+			documentSizes.add(documentBytes);
+		}
+
+		@Override
+		public void wellFormednessChecked(boolean wellFormed, long nanos, long documentBytes) {
+			events.add("wellFormed " + wellFormed);
+			documentSizes.add(documentBytes);
+		}
+	}
+
+	@AfterEach
+	void resetMetrics() {
+		XmlValidator.setMetrics(ValidationMetrics.NOOP);
+	}
+
+	@Test
+	void GIVEN_metrics_WHEN_validate_THEN_schema_load_and_validation_recorded() throws Exception {
+		RecordingMetrics metrics = new RecordingMetrics();
+		XmlValidator.setMetrics(metrics);
+		SchemaCache schemaCache = new SchemaCache(4);
+		byte[] xml = getResourceContent("sample/models/test/rng/book-invalid-rng.xml");
+
+		XmlValidator.forSchema(BOOK_RNG).schemaCache(schemaCache).build();
+		XmlValidator.forSchema(BOOK_RNG).schemaCache(schemaCache).build().check(xml);
+
+		assertEquals(List.of("miss rng", "loaded rng", "hit rng", "started rng", "completed rng INVALID"), metrics.events);
+		assertEquals(List.of((long) xml.length), metrics.documentSizes);
+		assertEquals(1, schemaCache.getHitCount());
+		assertEquals(1, schemaCache.getMissCount());
+	}
+
+	@Test
+	void GIVEN_full_schema_cache_WHEN_new_schema_THEN_eviction_recorded() throws Exception {
+		RecordingMetrics metrics = new RecordingMetrics();
+		XmlValidator.setMetrics(metrics);
+		SchemaCache schemaCache = new SchemaCache(1);
+
+		XmlValidator.forSchema(BOOK_RNG).schemaCache(schemaCache).build();
+		XmlValidator.forSchema(BOOK_XSD).schemaCache(schemaCache).build();
+
+		assertTrue(metrics.events.contains("eviction rng"));
+		assertEquals(1, schemaCache.getEvictionCount());
+	}
+
+	@Test
+	void GIVEN_metrics_WHEN_check_wellformedness_THEN_parse_recorded() throws Exception {
+		RecordingMetrics metrics = new RecordingMetrics();
+		XmlValidator.setMetrics(metrics);
+		byte[] xml = getResourceContent("sample/models/test/book-not-wellformed.xml");
+
+		assertThrows(XmlValidationException.class, () -> XmlValidator.checkXmlWellFormedness(xml));
+
+		assertEquals(List.of("wellFormed false"), metrics.events);
+	}
+
+	@Test
+	void GIVEN_jfr_metrics_WHEN_validate_during_recording_THEN_validation_event_written() throws Exception {
+		Path dump = tempDir.resolve("validation.jfr");
+		try (JfrValidationMetrics metrics = new JfrValidationMetrics(); Recording recording = new Recording()) {
+			XmlValidator.setMetrics(metrics);
+			recording.enable("eu.els.sie.xml.validation.Validation");
+			recording.start();
+			XmlValidator.forSchema(BOOK_RNG).build().check(getResourceContent("sample/models/test/rng/book-valid-rng.xml"));
+			recording.stop();
+			recording.dump(dump);
+			assertEquals(0, metrics.getInFlight());
+		}
+
+		List<RecordedEvent> events = new ArrayList<>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+			if (event.getEventType().getName().equals("eu.els.sie.xml.validation.Validation")) {
+				events.add(event);
+			}
+		}
+		assertEquals(1, events.size(), events.toString());
+		assertEquals(BOOK_RNG, events.get(0).getString("schemaUri"));
+		assertEquals("VALID", events.get(0).getString("status"));
+	}
+}
@@ -0,0 +1,100 @@
+package eu.els.sie.xml.validation;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidationServerTest {
+
+	private static final ClassLoader CLASS_LOADER = ValidationServerTest.class.getClassLoader();
+	private static final String BOOK_RNG = "cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng";
+
+	private static ValidationServer server;
+	private static final HttpClient client = HttpClient.newHttpClient();
+
+	@BeforeAll
+	static void startServer() throws Exception {
+		server = ValidationServer.start(0, 2);
+	}
+
+	@AfterAll
+	static void stopServer() {
+		server.stop();
+	}
+
+	private HttpResponse<String> post(String query, String xmlResourcePath) throws Exception {
+		byte[] xml = CLASS_LOADER.getResourceAsStream(xmlResourcePath).readAllBytes();
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/validate" + query))
+				.POST(HttpRequest.BodyPublishers.ofByteArray(xml))
+				.build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static String schemaQuery(String schemaUri) {
+		return "?schema=" + URLEncoder.encode(schemaUri, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void GIVEN_valid_xml_WHEN_post_validate_THEN_valid_report() throws Exception {
+		HttpResponse<String> response = post(schemaQuery(BOOK_RNG), "sample/models/test/rng/book-valid-rng.xml");
+
+		assertEquals(200, response.statusCode());
+		assertTrue(response.body().contains("\"valid\":true"));
+	}
+
+	@Test
+	void GIVEN_invalid_xml_WHEN_post_validate_THEN_invalid_report_with_errors() throws Exception {
+		HttpResponse<String> response = post(schemaQuery(BOOK_RNG), "sample/models/test/rng/book-invalid-rng.xml");
+
+		assertEquals(200, response.statusCode());
+		assertTrue(response.body().contains("\"valid\":false"));
+		assertTrue(response.body().contains("\"severity\":\"ERROR\""));
+		assertTrue(response.body().contains("\"line\":"));
+	}
+
+	@Test
+	void GIVEN_invalid_xml_WHEN_post_validate_with_svrl_format_THEN_svrl_report() throws Exception {
+		HttpResponse<String> response = post(schemaQuery(BOOK_RNG) + "&format=svrl", "sample/models/test/rng/book-invalid-rng.xml");
+
+		assertEquals(200, response.statusCode());
+		assertTrue(response.body().contains("svrl:failed-assert"));
+	}
+
+	@Test
+	void GIVEN_no_schema_WHEN_post_validate_THEN_bad_request() throws Exception {
+		HttpResponse<String> response = post("", "sample/models/test/rng/book-valid-rng.xml");
+
+		assertEquals(400, response.statusCode());
+	}
+
+	@Test
+	void GIVEN_started_server_WHEN_get_health_THEN_ok() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/health")).build();
+
+		assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+	}
+
+	@Test
+	void GIVEN_server_started_with_warmup_WHEN_started_THEN_ready_with_schema_compiled() throws Exception {
+		SchemaCache schemaCache = new SchemaCache(4);
+		ValidationServer warmServer = ValidationServer.start(0, 1, SchemaWarmup.forSchemas(BOOK_RNG).schemaCache(schemaCache).iterations(2).build());
+		try {
+			HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + warmServer.getPort() + "/health")).build();
+
+			assertTrue(warmServer.isReady());
+			assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+			assertEquals(1, schemaCache.size());
+		} finally {
+			warmServer.stop();
+		}
+	}
+}
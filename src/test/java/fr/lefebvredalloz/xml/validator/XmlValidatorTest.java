@@ -5,12 +5,23 @@ import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import javax.xml.transform.stream.StreamSource;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.lang.reflect.Constructor;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -89,10 +100,9 @@ class XmlValidatorTest {
 	/* ================================== */
 
 	@Test
-	@Disabled("RNC not working")
 	void GIVEN_xml_and_simple_rnc_and_no_catalog_WHEN_validate_THEN_success() {
 		try {
-			String xmlResourcePath = "sample/models/test/rng/simple-book-valid-rnc.xml";
+			String xmlResourcePath = "sample/models/test/rnc/simple-book-valid-rnc.xml";
 			byte[] xmlResourceContent = getResourceContentFromResourcePath(xmlResourcePath);
 
 			XmlValidator.validate(xmlResourceContent, "cp:/xml-multi-models-sample/main/grammars/rnc/simple-book.rnc", null);
@@ -101,6 +111,16 @@ class XmlValidatorTest {
 		}
 	}
 
+	@Test
+	void GIVEN_invalid_xml_and_simple_rnc_and_no_catalog_WHEN_validate_THEN_exception() throws IOException {
+		String xmlResourcePath = "sample/models/test/rnc/simple-book-invalid-rnc.xml";
+		byte[] xmlResourceContent = getResourceContentFromResourcePath(xmlResourcePath);
+
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class,
+				() -> XmlValidator.validate(xmlResourceContent, "cp:/xml-multi-models-sample/main/grammars/rnc/simple-book.rnc", null));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid against model"));
+	}
+
 	/* ================================== */
 	/* RELAX NG XML */
 	/* ================================== */
@@ -228,6 +248,25 @@ class XmlValidatorTest {
 		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid"));
 	}
 
+	@Test
+	@DisplayName("DTD Validation : valid XML without doctype - Simple DTD - no Catalog")
+	void GIVEN_valid_xml_without_doctype_and_simple_dtd_WHEN_validate_THEN_success() throws XmlValidationException {
+		byte[] xml = "<book><page id=\"page1\">page one</page></book>".getBytes(StandardCharsets.UTF_8);
+
+		assertTrue(XmlValidator.validate(xml, "cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd", null));
+	}
+
+	@Test
+	@DisplayName("DTD Validation : invalid XML with doctype to another DTD - Simple DTD - no Catalog")
+	void GIVEN_invalid_xml_with_other_doctype_and_simple_dtd_WHEN_validate_THEN_exception() {
+		byte[] xml = ("<!DOCTYPE book SYSTEM \"cp:/not/existing.dtd\">"
+				+ "<book><page>page <bold>one</bold></page></book>").getBytes(StandardCharsets.UTF_8);
+
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class,
+				() -> XmlValidator.validate(xml, "cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd", null));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid"));
+	}
+
 	/* ================================== */
 	/* XSD */
 	/* ================================== */
@@ -277,6 +316,35 @@ class XmlValidatorTest {
 		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid against model"));
 	}
 
+	@Test
+	void GIVEN_xsd_validator_WHEN_validate_invalid_then_valid_xml_THEN_pooled_validator_is_reset() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd").build();
+		byte[] validXml = getResourceContentFromResourcePath("sample/models/test/xsd/book-valid-xsd.xml");
+		byte[] invalidXml = getResourceContentFromResourcePath("sample/models/test/xsd/book-invalid-xsd.xml");
+
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(invalidXml));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid against model"));
+		assertTrue(validator.validate(validXml));
+	}
+
+	@Test
+	void GIVEN_valid_xml_with_doctype_and_xsd_and_catalog_WHEN_validate_THEN_entities_resolved_with_catalog() throws Exception {
+		byte[] xml = getResourceContentFromResourcePath("sample/models/test/rng/book-with-doctype-needs-catalog-with-entities-valid-rng.xml");
+
+		assertTrue(XmlValidator.validate(xml, "cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd", xmlCatalogsPathLoadedFromDependency));
+	}
+
+	@Test
+	void GIVEN_xsd_WHEN_build_two_validators_THEN_schema_compiled_once() throws Exception {
+		SchemaCache schemaCache = new SchemaCache(4);
+		String schemaUri = "cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd";
+
+		XmlValidator.forSchema(schemaUri).schemaCache(schemaCache).build();
+		XmlValidator.forSchema(schemaUri).schemaCache(schemaCache).build();
+
+		assertEquals(1, schemaCache.size());
+	}
+
 	/* ================================== */
 	/* Schematron */
 	/* ================================== */
@@ -407,6 +475,294 @@ class XmlValidatorTest {
 		}
 	}
 
+	/* ================================== */
+	/* REUSABLE VALIDATOR */
+	/* ================================== */
+
+	@Test
+	void GIVEN_validator_built_once_WHEN_validate_several_documents_THEN_each_result_is_independent() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng").build();
+		byte[] validXml = getResourceContentFromResourcePath("sample/models/test/rng/book-valid-rng.xml");
+		byte[] invalidXml = getResourceContentFromResourcePath("sample/models/test/rng/book-invalid-rng.xml");
+
+		assertTrue(validator.validate(validXml));
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(invalidXml));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid against model"));
+		assertTrue(validator.validate(validXml));
+	}
+
+	@Test
+	void GIVEN_validator_shared_between_threads_WHEN_validate_THEN_success() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd").build();
+		byte[] xml = getResourceContentFromResourcePath("sample/models/test/xsd/book-valid-xsd.xml");
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(() -> validator.validate(xml)));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void GIVEN_dtd_validator_WHEN_validate_THEN_success() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd").build();
+
+		assertTrue(validator.validate(getResourceContentFromResourcePath("sample/models/test/dtd/book-valid-dtd.xml")));
+	}
+
+	@Test
+	void GIVEN_incorrect_schema_WHEN_build_validator_THEN_exception() {
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class,
+				() -> XmlValidator.forSchema("cp:/xml-multi-models-sample/test/book-not-wellformed.xml").build());
+		assertTrue(expThatWasThrown.getMessage().contains("Error while parsing schema"));
+	}
+
+	/* ================================== */
+	/* ERROR POLICY */
+	/* ================================== */
+
+	private static final byte[] BOOK_WITH_THREE_ERRORS = ("<book>"
+			+ "<page id=\"p1\" foo=\"1\">one</page>"
+			+ "<page id=\"p2\" foo=\"2\">two</page>"
+			+ "<page id=\"p3\" foo=\"3\">three</page>"
+			+ "</book>").getBytes(StandardCharsets.UTF_8);
+
+	private static final String BOOK_XSD = "cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd";
+
+	@Test
+	void GIVEN_default_error_policy_WHEN_validate_THEN_every_error_reported() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_XSD).build();
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(BOOK_WITH_THREE_ERRORS));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid against model"));
+		assertEquals(3, expThatWasThrown.getReport().get(XmlValidationErrorHandler.LEVEL.ERROR).size());
+	}
+
+	@Test
+	void GIVEN_max_errors_policy_WHEN_validate_THEN_validation_stopped_when_budget_used_up() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_XSD).errorPolicy(ErrorPolicy.maxErrors(2)).build();
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(BOOK_WITH_THREE_ERRORS));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid"));
+		assertEquals(2, expThatWasThrown.getReport().get(XmlValidationErrorHandler.LEVEL.ERROR).size());
+	}
+
+	@Test
+	void GIVEN_fail_fast_policy_WHEN_validate_rng_THEN_first_error_only() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng")
+				.errorPolicy(ErrorPolicy.failFast())
+				.build();
+		byte[] xml = getResourceContentFromResourcePath("sample/models/test/rng/book-invalid-rng.xml");
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(xml));
+		assertEquals(1, expThatWasThrown.getReport().get(XmlValidationErrorHandler.LEVEL.ERROR).size());
+	}
+
+	@Test
+	void GIVEN_count_only_policy_WHEN_validate_THEN_invalid_without_messages() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_XSD).errorPolicy(ErrorPolicy.countOnly()).build();
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(BOOK_WITH_THREE_ERRORS));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid against model"));
+		assertTrue(expThatWasThrown.getReport().get(XmlValidationErrorHandler.LEVEL.ERROR).isEmpty());
+	}
+
+	@Test
+	void GIVEN_dtd_and_collect_all_policy_WHEN_validate_THEN_validation_not_stopped_at_first_error() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd")
+				.errorPolicy(ErrorPolicy.collectAll())
+				.build();
+		byte[] xml = getResourceContentFromResourcePath("sample/models/test/dtd/book-invalid-dtd.xml");
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(xml));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid against model"));
+		assertFalse(expThatWasThrown.getReport().get(XmlValidationErrorHandler.LEVEL.ERROR).isEmpty());
+	}
+
+	/* ================================== */
+	/* STREAMING INPUTS */
+	/* ================================== */
+
+	@Test
+	void GIVEN_xml_input_stream_WHEN_validate_THEN_success() throws Exception {
+		try (InputStream in = CLASS_LOADER.getResourceAsStream("sample/models/test/rng/simple-book-valid-rng.xml")) {
+			assertTrue(XmlValidator.validate(in, "cp:/xml-multi-models-sample/main/grammars/rng/simple-book/simple-book.rng", null));
+		}
+	}
+
+	@Test
+	void GIVEN_xml_path_WHEN_validate_THEN_success() throws Exception {
+		Path xml = Paths.get(CLASS_LOADER.getResource("sample/models/test/xsd/book-valid-xsd.xml").toURI());
+
+		assertTrue(XmlValidator.validate(xml, "cp:/xml-multi-models-sample/main/grammars/xsd/book/book.xsd", null));
+	}
+
+	@Test
+	void GIVEN_invalid_xml_path_WHEN_validate_THEN_exception() throws Exception {
+		Path xml = Paths.get(CLASS_LOADER.getResource("sample/models/test/dtd/book-invalid-dtd.xml").toURI());
+
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class,
+				() -> XmlValidator.validate(xml, "cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd", null));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not valid"));
+	}
+
+	@Test
+	void GIVEN_xml_channel_and_source_WHEN_validate_THEN_success() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema("cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng").build();
+		Path xml = Paths.get(CLASS_LOADER.getResource("sample/models/test/rng/book-valid-rng.xml").toURI());
+
+		try (ReadableByteChannel channel = Files.newByteChannel(xml)) {
+			assertTrue(validator.validate(channel));
+		}
+		assertTrue(validator.validate(new StreamSource(xml.toFile())));
+	}
+
+	@Test
+	void GIVEN_not_wellformed_xml_path_WHEN_check_wellFormedness_THEN_exception() throws Exception {
+		Path xml = Paths.get(CLASS_LOADER.getResource("sample/models/test/book-not-wellformed.xml").toURI());
+
+		Throwable expThatWasThrown = assertThrows(XmlValidationException.class,
+				() -> XmlValidator.checkXmlWellFormedness(xml));
+		assertTrue(expThatWasThrown.getMessage().contains("XML is not well formed"));
+	}
+
+	/* ================================== */
+	/* VALIDATION REPORT */
+	/* ================================== */
+
+	@Test
+	void GIVEN_invalid_xml_WHEN_validate_THEN_report_with_locations() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_XSD).build();
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(BOOK_WITH_THREE_ERRORS));
+		ValidationReport report = expThatWasThrown.getValidationReport();
+		assertEquals(BOOK_XSD, report.getSource());
+		assertEquals(3, report.getCount(XmlValidationErrorHandler.LEVEL.ERROR));
+		for (ValidationIssue issue : report.getIssues()) {
+			assertEquals(1, issue.getLineNumber());
+			assertTrue(issue.getColumnNumber() > 0);
+		}
+	}
+
+	@Test
+	void GIVEN_repeated_message_WHEN_validate_THEN_message_stored_once() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_XSD).build();
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(BOOK_WITH_THREE_ERRORS));
+		List<ValidationIssue> issues = expThatWasThrown.getValidationReport().getIssues();
+		assertSame(issues.get(0).getMessage(), issues.get(2).getMessage());
+	}
+
+	@Test
+	void GIVEN_invalid_xml_WHEN_write_report_THEN_json_and_svrl() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_XSD).build();
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(BOOK_WITH_THREE_ERRORS));
+		StringWriter json = new StringWriter();
+		expThatWasThrown.getValidationReport().writeJson(json);
+		assertTrue(json.toString().contains("\"ERROR\":3"));
+		assertTrue(json.toString().contains("\"severity\":\"ERROR\""));
+		StringWriter svrl = new StringWriter();
+		expThatWasThrown.getValidationReport().writeSvrl(svrl);
+		assertTrue(svrl.toString().contains("<svrl:failed-assert role=\"error\""));
+	}
+
+	/* ================================== */
+	/* VALIDATION RESULT */
+	/* ================================== */
+
+	@Test
+	void GIVEN_invalid_xml_WHEN_check_THEN_invalid_result_without_exception() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_XSD).build();
+
+		ValidationResult result = validator.check(BOOK_WITH_THREE_ERRORS);
+		assertFalse(result.isValid());
+		assertTrue(result.getMessage().contains("XML is not valid against model"));
+		assertEquals(3, result.getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR));
+	}
+
+	@Test
+	void GIVEN_valid_xml_WHEN_check_with_schema_THEN_valid_result() throws Exception {
+		byte[] xml = CLASS_LOADER.getResourceAsStream("sample/models/test/rng/simple-book-valid-rng.xml").readAllBytes();
+
+		ValidationResult result = XmlValidator.checkXmlWithSchema(xml, "cp:/xml-multi-models-sample/main/grammars/rng/simple-book/simple-book.rng", null);
+		assertTrue(result.isValid());
+		assertNull(result.toException());
+	}
+
+	@Test
+	void GIVEN_invalid_xml_WHEN_check_with_dtd_THEN_invalid_result() throws Exception {
+		byte[] xml = CLASS_LOADER.getResourceAsStream("sample/models/test/dtd/book-invalid-dtd.xml").readAllBytes();
+
+		assertFalse(XmlValidator.checkXmlWithDTD(xml).isValid());
+	}
+
+	@Test
+	void GIVEN_invalid_xml_WHEN_validate_THEN_exception_without_stack_trace() throws Exception {
+		XmlValidator validator = XmlValidator.forSchema(BOOK_XSD).build();
+
+		XmlValidationException expThatWasThrown = assertThrows(XmlValidationException.class, () -> validator.validate(BOOK_WITH_THREE_ERRORS));
+		assertEquals(0, expThatWasThrown.getStackTrace().length);
+	}
+
+	@Test
+	void GIVEN_not_wellformed_xml_WHEN_check_THEN_not_well_formed_result() throws Exception {
+		byte[] xml = getResourceContentFromResourcePath("sample/models/test/book-not-wellformed.xml");
+
+		for (String schemaUri : List.of(BOOK_XSD, "cp:/xml-multi-models-sample/main/grammars/rng/simple-book/simple-book.rng",
+				"cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd")) {
+			ValidationResult result = XmlValidator.forSchema(schemaUri).errorPolicy(ErrorPolicy.collectAll()).build().check(xml);
+			assertEquals(ValidationResult.Status.NOT_WELL_FORMED, result.getStatus(), schemaUri);
+			assertFalse(result.isWellFormed());
+			assertTrue(result.getMessage().contains("XML is not well formed"));
+		}
+	}
+
+	@Test
+	void GIVEN_xml_invalid_then_not_wellformed_WHEN_check_fail_fast_THEN_not_well_formed_result() throws Exception {
+		byte[] xml = ("<book>"
+				+ "<page id=\"p1\" foo=\"1\">one</page>"
+				+ "<page id=\"p2\">two</pag>"
+				+ "</book>").getBytes(StandardCharsets.UTF_8);
+
+		for (String schemaUri : List.of(BOOK_XSD, "cp:/xml-multi-models-sample/main/grammars/rng/book/book.rng",
+				"cp:/xml-multi-models-sample/main/grammars/rnc/simple-book.rnc", "cp:/xml-multi-models-sample/main/grammars/dtd/book/book.dtd",
+				"cp:/xml-multi-models-sample/main/grammars/nvdl/book-and-schematron.nvdl")) {
+			ValidationResult result = XmlValidator.forSchema(schemaUri).errorPolicy(ErrorPolicy.failFast()).build().check(xml);
+			assertEquals(ValidationResult.Status.NOT_WELL_FORMED, result.getStatus(), schemaUri);
+			assertEquals(1, result.getValidationReport().getCount(XmlValidationErrorHandler.LEVEL.ERROR), schemaUri);
+		}
+	}
+
+	@Test
+	void GIVEN_wellformed_invalid_xml_WHEN_check_THEN_invalid_result() throws Exception {
+		ValidationResult result = XmlValidator.forSchema(BOOK_XSD).errorPolicy(ErrorPolicy.failFast()).build().check(BOOK_WITH_THREE_ERRORS);
+
+		assertEquals(ValidationResult.Status.INVALID, result.getStatus());
+		assertTrue(result.isWellFormed());
+	}
+
+	@Test
+	void GIVEN_same_thread_WHEN_check_wellFormedness_several_times_THEN_parser_reused_after_errors() throws Exception {
+		byte[] notWellFormed = getResourceContentFromResourcePath("sample/models/test/book-not-wellformed.xml");
+
+		assertThrows(XmlValidationException.class, () -> XmlValidator.checkXmlWellFormedness(notWellFormed));
+		XmlValidator.checkXmlWellFormedness(BOOK_WITH_THREE_ERRORS);
+		assertThrows(XmlValidationException.class, () -> XmlValidator.checkXmlWellFormedness(notWellFormed));
+	}
+
+	@Test
+	void GIVEN_not_existing_schema_WHEN_check_THEN_exception() {
+		assertThrows(XmlValidationException.class, () -> XmlValidator.checkXmlWithSchema(BOOK_WITH_THREE_ERRORS, Paths.get("not-existing.rng").toUri().toString(), null));
+	}
+
 	@Test
 	void GIVEN_instantiate_new_class_THEN_throw_Exception() throws NoSuchMethodException, SecurityException {
 